@@ -0,0 +1,117 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.WritableMap;
+import com.sensor.SensorData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The path of one notification from onSensorNotifyData to a GOT_DATA payload:
+ * SamplePacket.from, the PacketQueue hand off, SensorStream append, then packing and consuming a batch.
+ *
+ * Each invocation moves SAMPLES_PER_OP samples per channel, so the reported time and gc.alloc.rate.norm
+ * are per sample of all channels, divide by channelCount for one channel.
+ * backlog is the number of packages merged into one event, as with setEventRate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SendSensorDataBenchmark {
+  private static final int SAMPLES_PER_OP = 1024;
+
+  @Param({"1", "8", "32"})
+  public int channelCount;
+
+  @Param({"8", "32", "128"})
+  public int minPackageSampleCount;
+
+  @Param({"1", "8"})
+  public int backlog;
+
+  @Param({"false", "true"})
+  public boolean impedance;
+
+  @Param({"columnar", "samples"})
+  public String format;
+
+  private SensorData sensorData;
+  private Vector<Vector<SensorData.Sample>> notification;
+  private PacketQueue queue;
+  private SensorStream stream;
+  private boolean columnar;
+
+  @Setup
+  public void setup(){
+    int dataType = impedance ? SensorData.NTF_IMPEDANCE : SensorData.NTF_EEG;
+    sensorData = new SensorData();
+    sensorData.deviceMac = "00:11:22:33:44:55";
+    sensorData.dataType = dataType;
+    sensorData.sampleRate = 250;
+    sensorData.channelCount = channelCount;
+    sensorData.minPackageSampleCount = minPackageSampleCount;
+
+    Random random = new Random(42);
+    notification = new Vector<>();
+    for (int channel = 0; channel < channelCount; ++channel){
+      Vector<SensorData.Sample> samples = new Vector<>();
+      for (int i = 0; i < minPackageSampleCount; ++i){
+        SensorData.Sample sample = new SensorData.Sample();
+        sample.channelIndex = channel;
+        sample.sampleIndex = i;
+        sample.data = (float) random.nextGaussian() * 50;
+        sample.impedance = random.nextFloat() * 1000;
+        sample.saturation = random.nextFloat();
+        sample.isLost = random.nextInt(100) == 0;
+        samples.add(sample);
+      }
+      notification.add(samples);
+    }
+
+    queue = new PacketQueue(PacketQueue.DEFAULT_CAPACITY, PacketQueue.DROP_OLDEST, 0);
+    stream = new SensorStream(sensorData.deviceMac, dataType);
+    columnar = "columnar".equals(format);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SAMPLES_PER_OP)
+  public void sendSensorData(Blackhole blackhole){
+    int batchSampleCount = minPackageSampleCount * backlog;
+    for (int batch = SAMPLES_PER_OP / batchSampleCount; batch > 0; --batch){
+      for (int i = 0; i < backlog; ++i){
+        sensorData.channelSamples = notification;
+        queue.offer(SamplePacket.from(sensorData));
+        SamplePacket packet = queue.poll();
+        stream.update(packet);
+        stream.samples.append(packet);
+      }
+      WritableMap result;
+      if (columnar){
+        result = SamplePacker.packColumnar(stream, batchSampleCount);
+      }else{
+        result = SamplePacker.packSamples(stream, batchSampleCount);
+      }
+      result.putInt("packageCount", backlog);
+      stream.samples.consume(batchSampleCount);
+      blackhole.consume(result);
+    }
+  }
+}
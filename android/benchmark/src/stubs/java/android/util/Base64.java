@@ -0,0 +1,12 @@
+package android.util;
+
+/**
+ * JVM stand in for android.util.Base64, only what the library uses.
+ */
+public class Base64 {
+  public static final int NO_WRAP = 2;
+
+  public static String encodeToString(byte[] input, int flags){
+    return java.util.Base64.getEncoder().encodeToString(input);
+  }
+}
@@ -0,0 +1,11 @@
+package com.facebook.react.bridge;
+
+public class Arguments {
+  public static WritableMap createMap(){
+    return new JavaOnlyMap();
+  }
+
+  public static WritableArray createArray(){
+    return new JavaOnlyArray();
+  }
+}
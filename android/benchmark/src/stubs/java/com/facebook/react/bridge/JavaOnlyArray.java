@@ -0,0 +1,48 @@
+package com.facebook.react.bridge;
+
+import java.util.ArrayList;
+
+/**
+ * Boxes values into an ArrayList like React Native's JavaOnlyArray.
+ */
+public class JavaOnlyArray implements WritableArray {
+  private final ArrayList<Object> values = new ArrayList<>();
+
+  public Object get(int index){
+    return values.get(index);
+  }
+
+  public int size(){
+    return values.size();
+  }
+
+  @Override
+  public void pushString(String value) {
+    values.add(value);
+  }
+
+  @Override
+  public void pushInt(int value) {
+    values.add((double) value);
+  }
+
+  @Override
+  public void pushDouble(double value) {
+    values.add(value);
+  }
+
+  @Override
+  public void pushBoolean(boolean value) {
+    values.add(value);
+  }
+
+  @Override
+  public void pushArray(WritableArray value) {
+    values.add(value);
+  }
+
+  @Override
+  public void pushMap(WritableMap value) {
+    values.add(value);
+  }
+}
@@ -0,0 +1,48 @@
+package com.facebook.react.bridge;
+
+import java.util.HashMap;
+
+/**
+ * Boxes values into a HashMap like React Native's JavaOnlyMap, close to the cost of filling a WritableNativeMap.
+ */
+public class JavaOnlyMap implements WritableMap {
+  private final HashMap<String, Object> values = new HashMap<>();
+
+  public Object get(String key){
+    return values.get(key);
+  }
+
+  public int size(){
+    return values.size();
+  }
+
+  @Override
+  public void putString(String key, String value) {
+    values.put(key, value);
+  }
+
+  @Override
+  public void putInt(String key, int value) {
+    values.put(key, (double) value);
+  }
+
+  @Override
+  public void putDouble(String key, double value) {
+    values.put(key, value);
+  }
+
+  @Override
+  public void putBoolean(String key, boolean value) {
+    values.put(key, value);
+  }
+
+  @Override
+  public void putArray(String key, WritableArray value) {
+    values.put(key, value);
+  }
+
+  @Override
+  public void putMap(String key, WritableMap value) {
+    values.put(key, value);
+  }
+}
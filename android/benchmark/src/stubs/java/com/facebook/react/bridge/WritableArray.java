@@ -0,0 +1,15 @@
+package com.facebook.react.bridge;
+
+public interface WritableArray {
+  void pushString(String value);
+
+  void pushInt(int value);
+
+  void pushDouble(double value);
+
+  void pushBoolean(boolean value);
+
+  void pushArray(WritableArray value);
+
+  void pushMap(WritableMap value);
+}
@@ -0,0 +1,34 @@
+package com.synchronisdk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalescing limits of one device, whole packages are merged into one GOT_DATA until one of them is reached.
+ */
+final class BatchPolicy {
+  final long minIntervalNanos;
+  final long maxLatencyNanos;
+
+  BatchPolicy(double maxEventsPerSecond, double maxLatencyMs) {
+    minIntervalNanos = maxEventsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / maxEventsPerSecond) : 0;
+    maxLatencyNanos = maxLatencyMs > 0 ? (long) (maxLatencyMs * TimeUnit.MILLISECONDS.toNanos(1)) : 0;
+  }
+
+  boolean isEnabled(){
+    return minIntervalNanos > 0 || maxLatencyNanos > 0;
+  }
+
+  /**
+   * Time the pending packages of the stream have to be sent at.
+   */
+  long dueNanos(SensorStream stream){
+    long due = Long.MAX_VALUE;
+    if (minIntervalNanos > 0){
+      due = stream.lastEmitNanos + minIntervalNanos;
+    }
+    if (maxLatencyNanos > 0){
+      due = Math.min(due, stream.pendingSinceNanos + maxLatencyNanos);
+    }
+    return due;
+  }
+}
@@ -0,0 +1,401 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.sensor.BLEDevice;
+import com.sensor.SensorData;
+import com.sensor.SensorProfile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Connects and inits a group of devices, all devices in parallel.
+ * Within one device, device info and the data type inits are sent together once the feature map is known,
+ * the SDK matches responses by command type, so they don't wait for each other.
+ * Steps of a device: connect, features, configure, transfer, notify.
+ */
+final class BringUp {
+  interface Commands {
+    BLEDevice.State getDeviceState(String deviceMac);
+
+    boolean connect(String deviceMac);
+
+    void initDataTransfer(String deviceMac, boolean isGetFeature, SensorProfile.Callback callback);
+
+    /**
+     * Inits one of NTF_EEG, NTF_ECG, NTF_ACC_DATA for IMU, NTF_BRTH, the result is the channel count.
+     */
+    void initData(String deviceMac, int dataType, int packageSampleCount, SensorProfile.Callback callback);
+
+    /**
+     * Result is the device info, or null on failure.
+     */
+    void fetchDeviceInfo(String deviceMac, DeviceInfoCallback callback);
+
+    /**
+     * Result is 1 if data notification is on.
+     */
+    void startDataNotification(String deviceMac, SensorProfile.Callback callback);
+  }
+
+  interface DeviceInfoCallback {
+    void gotResult(WritableMap deviceInfo, String errorMsg);
+  }
+
+  interface Listener {
+    void onDone(BringUp bringUp, WritableArray results);
+  }
+
+  private static final int[] DATA_TYPES = {SensorData.NTF_EEG, SensorData.NTF_ECG, SensorData.NTF_ACC_DATA, SensorData.NTF_BRTH};
+  private static final int[] FEATURES = {ReplaySensor.FEATURE_EEG, ReplaySensor.FEATURE_ECG, ReplaySensor.FEATURE_IMU, ReplaySensor.FEATURE_BRTH};
+  private static final String[] CHANNEL_COUNT_KEYS = {"eegChannelCount", "ecgChannelCount", "imuChannelCount", "brthChannelCount"};
+
+  static final class Plan {
+    int packageSampleCount;
+    // bits of DATA_TYPES, all by default
+    int dataTypes = (1 << DATA_TYPES.length) - 1;
+    boolean deviceInfo = true;
+    boolean startDataNotification;
+    long connectTimeoutMs = 10000;
+    int retryCount = 3;
+
+    static Plan parse(ReadableMap map){
+      Plan plan = new Plan();
+      plan.packageSampleCount = (int) getDouble(map, "packageSampleCount", 0);
+      if (plan.packageSampleCount <= 0 || plan.packageSampleCount >= 100){
+        throw new IllegalArgumentException("packageSampleCount needs 0 < packageSampleCount < 100");
+      }
+      if (map.hasKey("dataTypes") && !map.isNull("dataTypes")){
+        ReadableArray dataTypes = map.getArray("dataTypes");
+        plan.dataTypes = 0;
+        for (int i = 0; i < dataTypes.size(); ++i){
+          int dataType = dataTypes.getInt(i);
+          if (dataType == SensorData.NTF_GYO_DATA){
+            dataType = SensorData.NTF_ACC_DATA;
+          }
+          int bit = indexOf(dataType);
+          if (bit < 0){
+            throw new IllegalArgumentException("unsupported dataType: " + dataType);
+          }
+          plan.dataTypes |= 1 << bit;
+        }
+      }
+      if (map.hasKey("deviceInfo") && !map.isNull("deviceInfo")){
+        plan.deviceInfo = map.getBoolean("deviceInfo");
+      }
+      if (map.hasKey("startDataNotification") && !map.isNull("startDataNotification")){
+        plan.startDataNotification = map.getBoolean("startDataNotification");
+      }
+      plan.connectTimeoutMs = (long) getDouble(map, "connectTimeoutMs", plan.connectTimeoutMs);
+      plan.retryCount = Math.max(1, (int) getDouble(map, "retryCount", plan.retryCount));
+      return plan;
+    }
+
+    private static double getDouble(ReadableMap map, String key, double defaultValue){
+      return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : defaultValue;
+    }
+
+    private static int indexOf(int dataType){
+      for (int i = 0; i < DATA_TYPES.length; ++i){
+        if (DATA_TYPES[i] == dataType){
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private final Plan plan;
+  private final Commands commands;
+  private final Scheduler scheduler;
+  private final Listener listener;
+  private final LinkedHashMap<String, Task> tasks = new LinkedHashMap<>();
+  private int remaining;
+
+  BringUp(String[] deviceMacs, Plan plan, Commands commands, Scheduler scheduler, Listener listener) {
+    this.plan = plan;
+    this.commands = commands;
+    this.scheduler = scheduler;
+    this.listener = listener;
+    for (String deviceMac : deviceMacs){
+      if (!tasks.containsKey(deviceMac)){
+        tasks.put(deviceMac, new Task(deviceMac));
+      }
+    }
+    remaining = tasks.size();
+  }
+
+  Iterable<String> deviceMacs(){
+    return tasks.keySet();
+  }
+
+  void start(){
+    if (tasks.isEmpty()){
+      listener.onDone(this, Arguments.createArray());
+      return;
+    }
+    for (Task task : tasks.values()){
+      task.start();
+    }
+  }
+
+  void onStateChange(String deviceMac, BLEDevice.State newState){
+    Task task = tasks.get(deviceMac);
+    if (task != null){
+      task.onStateChange(newState);
+    }
+  }
+
+  private void onTaskDone(){
+    WritableArray results;
+    synchronized (this){
+      if (--remaining > 0){
+        return;
+      }
+      results = Arguments.createArray();
+      for (Map.Entry<String, Task> entry : tasks.entrySet()){
+        results.pushMap(entry.getValue().result);
+      }
+    }
+    listener.onDone(this, results);
+  }
+
+  private final class Task {
+    final String deviceMac;
+    final WritableMap result = Arguments.createMap();
+    final long startNanos = SystemClock.elapsedRealtimeNanos();
+    String step = "connect";
+    boolean done;
+    ScheduledFuture<?> connectTimeout;
+    int featureMap;
+    int pendingConfigure;
+    int channelCounts;
+
+    abstract class Command {
+      abstract void send(SensorProfile.Callback callback);
+
+      abstract void onSuccess(int result);
+
+      void onFailure(String errorMsg){
+        fail(errorMsg);
+      }
+    }
+
+    Task(String deviceMac) {
+      this.deviceMac = deviceMac;
+      result.putString("deviceMac", deviceMac);
+    }
+
+    synchronized void start(){
+      BLEDevice.State state = commands.getDeviceState(deviceMac);
+      if (state == null || state == BLEDevice.State.Invalid){
+        fail("invalid device");
+        return;
+      }
+      if (state == BLEDevice.State.Ready){
+        readFeatures();
+        return;
+      }
+      if (state != BLEDevice.State.Connecting && state != BLEDevice.State.Connected && !commands.connect(deviceMac)){
+        fail("connect failed");
+        return;
+      }
+      if (!"connect".equals(step) || done){
+        // a replay is Ready as soon as connect returns
+        return;
+      }
+      Runnable timeout = new Runnable() {
+        @Override
+        public void run() {
+          synchronized (Task.this){
+            if ("connect".equals(step)){
+              fail("connect timeout");
+            }
+          }
+        }
+      };
+      connectTimeout = scheduler.schedule(timeout, plan.connectTimeoutMs);
+    }
+
+    synchronized void onStateChange(BLEDevice.State newState){
+      if (done){
+        return;
+      }
+      if (newState == BLEDevice.State.Disconnected){
+        fail("disconnected");
+      }else if (newState == BLEDevice.State.Ready && "connect".equals(step)){
+        if (connectTimeout != null){
+          connectTimeout.cancel(false);
+        }
+        readFeatures();
+      }
+    }
+
+    private void readFeatures(){
+      step = "features";
+      run(0, new Command() {
+        @Override
+        void send(SensorProfile.Callback callback) {
+          commands.initDataTransfer(deviceMac, true, callback);
+        }
+
+        @Override
+        void onSuccess(int result) {
+          featureMap = result;
+          Task.this.result.putInt("featureMap", result);
+          configure();
+        }
+      });
+    }
+
+    private void configure(){
+      step = "configure";
+      pendingConfigure = 1;
+      if (plan.deviceInfo){
+        ++pendingConfigure;
+        commands.fetchDeviceInfo(deviceMac, new DeviceInfoCallback() {
+          @Override
+          public void gotResult(WritableMap deviceInfo, String errorMsg) {
+            synchronized (Task.this){
+              if (done){
+                return;
+              }
+              if (deviceInfo == null){
+                fail(errorMsg);
+                return;
+              }
+              result.putMap("deviceInfo", deviceInfo);
+              onConfigured();
+            }
+          }
+        });
+      }
+      for (int i = 0; i < DATA_TYPES.length; ++i){
+        final int index = i;
+        if ((plan.dataTypes & (1 << i)) == 0 || (featureMap & FEATURES[i]) == 0){
+          result.putInt(CHANNEL_COUNT_KEYS[i], 0);
+          continue;
+        }
+        ++pendingConfigure;
+        run(0, new Command() {
+          @Override
+          void send(SensorProfile.Callback callback) {
+            commands.initData(deviceMac, DATA_TYPES[index], plan.packageSampleCount, callback);
+          }
+
+          @Override
+          void onSuccess(int channelCount) {
+            result.putInt(CHANNEL_COUNT_KEYS[index], channelCount);
+            channelCounts += channelCount;
+            onConfigured();
+          }
+
+          @Override
+          void onFailure(String errorMsg) {
+            result.putInt(CHANNEL_COUNT_KEYS[index], 0);
+            onConfigured();
+          }
+        });
+      }
+      onConfigured();
+    }
+
+    private void onConfigured(){
+      if (--pendingConfigure > 0){
+        return;
+      }
+      if (channelCounts == 0){
+        fail("no data type inited");
+        return;
+      }
+      step = "transfer";
+      run(0, new Command() {
+        @Override
+        void send(SensorProfile.Callback callback) {
+          commands.initDataTransfer(deviceMac, false, callback);
+        }
+
+        @Override
+        void onSuccess(int notifyFlag) {
+          result.putInt("notifyFlag", notifyFlag);
+          if (plan.startDataNotification){
+            startNotification();
+          }else{
+            succeed();
+          }
+        }
+      });
+    }
+
+    private void startNotification(){
+      step = "notify";
+      run(0, new Command() {
+        @Override
+        void send(SensorProfile.Callback callback) {
+          commands.startDataNotification(deviceMac, callback);
+        }
+
+        @Override
+        void onSuccess(int result) {
+          succeed();
+        }
+      });
+    }
+
+    /**
+     * Sends the command, retried while the result is not positive.
+     */
+    private void run(final int attempt, final Command command){
+      command.send(new SensorProfile.Callback() {
+        @Override
+        public void gotResult(int value, String errorMsg) {
+          synchronized (Task.this){
+            if (done){
+              return;
+            }
+            if (value > 0){
+              command.onSuccess(value);
+            }else if (attempt + 1 < plan.retryCount){
+              run(attempt + 1, command);
+            }else{
+              command.onFailure(errorMsg);
+            }
+          }
+        }
+      });
+    }
+
+    private void succeed(){
+      finish(true, null);
+    }
+
+    private void fail(String errorMsg){
+      finish(false, errorMsg != null && !errorMsg.isEmpty() ? errorMsg : step + " failed");
+    }
+
+    private void finish(boolean success, String errorMsg){
+      if (done){
+        return;
+      }
+      done = true;
+      if (connectTimeout != null){
+        connectTimeout.cancel(false);
+      }
+      result.putBoolean("success", success);
+      result.putString("step", success ? "done" : step);
+      if (errorMsg != null){
+        result.putString("errMsg", errorMsg);
+      }
+      result.putBoolean("notifying", success && plan.startDataNotification);
+      result.putDouble("elapsedMs", (SystemClock.elapsedRealtimeNanos() - startNanos) / 1e6);
+      onTaskDone();
+    }
+  }
+}
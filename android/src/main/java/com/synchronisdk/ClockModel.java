@@ -0,0 +1,150 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host time of a sampleIndex, from an exponentially weighted linear fit of packet arrival time against the
+ * sampleIndex of its last sample. Old points fade out over TIME_CONSTANT so the sensor clock drift is tracked.
+ * Arrivals further from the fit than 4 times the mean deviation (plus MIN_JITTER) are BLE latency, not clock,
+ * and are left out. A jump of sampleIndex by more than 10 seconds, a change of sample rate or REFIT_AFTER
+ * rejected packets in a row start a new fit. Only used on the serializer thread.
+ */
+final class ClockModel {
+  private static final double TIME_CONSTANT_SECONDS = 60;
+  private static final double MIN_JITTER_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+  private static final int REFIT_AFTER = 20;
+  private static final int MIN_POINTS = 8;
+  // the fitted period never moves further from the nominal one
+  private static final double MAX_DRIFT = 0.01;
+
+  private int sampleRate;
+  private double nominalPeriodNanos;
+  private boolean started;
+  private int lastIndex;
+  private long lastX;
+  private long originNanos;
+  private long wallOffsetNanos;
+  private int points;
+  private int rejectedInRow;
+  private double sw;
+  private double sx;
+  private double sy;
+  private double sxx;
+  private double sxy;
+  private double deviation;
+  private double periodNanos;
+  private double interceptNanos;
+
+  /**
+   * Adds the arrival of the last sample of the packet.
+   */
+  void update(SamplePacket packet){
+    if (packet.sampleRate <= 0 || packet.sampleCount == 0){
+      return;
+    }
+    int sampleIndex = packet.sampleIndex[packet.sampleCount - 1];
+    if (packet.sampleRate != sampleRate){
+      sampleRate = packet.sampleRate;
+      nominalPeriodNanos = (double) TimeUnit.SECONDS.toNanos(1) / sampleRate;
+      started = false;
+    }
+    int delta = sampleIndex - lastIndex;
+    long maxJump = 10L * sampleRate;
+    if (started && delta <= 0 && -delta <= maxJump){
+      // a duplicate or late packet says nothing new about the clock
+      return;
+    }
+    long x = started ? lastX + delta : 0;
+    if (started && delta > maxJump){
+      started = false;
+      x = 0;
+    }
+    if (!started){
+      start(packet.receivedNanos);
+    }
+    double y = packet.receivedNanos - originNanos;
+    if (points > 0){
+      double residual = Math.abs(y - (interceptNanos + periodNanos * x));
+      // x stays counted from the last accepted packet, which the decay of the next one is measured from
+      if (points >= MIN_POINTS && residual > 4 * deviation + MIN_JITTER_NANOS){
+        if (++rejectedInRow >= REFIT_AFTER){
+          started = false;
+        }
+        return;
+      }
+      deviation += (residual - deviation) / MIN_POINTS;
+    }
+    rejectedInRow = 0;
+    double decay = Math.exp(-(x - lastX) * nominalPeriodNanos / (TIME_CONSTANT_SECONDS * TimeUnit.SECONDS.toNanos(1)));
+    lastIndex = sampleIndex;
+    lastX = x;
+    sw = sw * decay + 1;
+    sx = sx * decay + x;
+    sy = sy * decay + y;
+    sxx = sxx * decay + (double) x * x;
+    sxy = sxy * decay + x * y;
+    ++points;
+    fit();
+  }
+
+  void reset(){
+    started = false;
+  }
+
+  private void start(long receivedNanos){
+    started = true;
+    originNanos = receivedNanos;
+    wallOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - SystemClock.elapsedRealtimeNanos();
+    lastX = 0;
+    points = rejectedInRow = 0;
+    sw = sx = sy = sxx = sxy = 0;
+    deviation = 0;
+    periodNanos = nominalPeriodNanos;
+    interceptNanos = 0;
+  }
+
+  private void fit(){
+    double mean = sx / sw;
+    double spread = sxx / sw - mean * mean;
+    double period = nominalPeriodNanos;
+    // a second of samples at least before the slope is trusted
+    if (spread > (double) sampleRate * sampleRate / 12){
+      period = (sxy / sw - mean * sy / sw) / spread;
+      if (Math.abs(period - nominalPeriodNanos) > MAX_DRIFT * nominalPeriodNanos){
+        period = nominalPeriodNanos;
+      }
+    }
+    periodNanos = period;
+    interceptNanos = (sy - period * sx) / sw;
+  }
+
+  boolean isReady(){
+    return started && points > 0;
+  }
+
+  /**
+   * Wall clock time of sampleIndex in milliseconds since the epoch, on the host elapsed realtime clock.
+   */
+  double timeMsOf(int sampleIndex){
+    long x = lastX + (sampleIndex - lastIndex);
+    double nanos = originNanos + wallOffsetNanos + interceptNanos + periodNanos * x;
+    return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+  /**
+   * The sampleIndex nearest to the host elapsed realtime elapsedNanos.
+   */
+  int sampleIndexAt(long elapsedNanos){
+    long x = Math.round((elapsedNanos - originNanos - interceptNanos) / periodNanos);
+    return lastIndex + (int) (x - lastX);
+  }
+
+  /**
+   * Milliseconds from one sampleIndex to the next.
+   */
+  double periodMs(){
+    return periodNanos / TimeUnit.MILLISECONDS.toNanos(1);
+  }
+}
@@ -0,0 +1,148 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Scans in windows of windowMs every intervalMs on the shared scheduler, instead of the SDK scanning without a break.
+ * Known devices seen in a window are reconnected if they are disconnected, at most once per window.
+ */
+final class ContinuousScan {
+  interface Scanner {
+    boolean startScan(int windowMs);
+
+    void stopScan();
+
+    /**
+     * Connects deviceMac if it is disconnected.
+     */
+    void reconnect(String deviceMac);
+  }
+
+  // the SDK scans at least this long, a shorter window is stopped early
+  private static final int MIN_SDK_PERIOD = 6000;
+  // Android 7+ blocks an app starting more than 5 scans in 30 s, without reporting an error
+  static final long MIN_INTERVAL_MS = 6000;
+
+  static final class Options {
+    long windowMs = 5000;
+    long intervalMs = 30000;
+    final HashMap<String, Long> reconnect = new HashMap<>();
+
+    static Options parse(ReadableMap map){
+      Options options = new Options();
+      options.windowMs = (long) getDouble(map, "windowMs", options.windowMs);
+      options.intervalMs = (long) getDouble(map, "intervalMs", options.intervalMs);
+      if (options.windowMs < 1000){
+        throw new IllegalArgumentException("windowMs needs >= 1000");
+      }
+      if (options.intervalMs < options.windowMs || options.intervalMs < MIN_INTERVAL_MS){
+        throw new IllegalArgumentException("intervalMs needs >= windowMs and >= " + MIN_INTERVAL_MS);
+      }
+      if (map.hasKey("reconnectDeviceMacs") && !map.isNull("reconnectDeviceMacs")){
+        ReadableArray macs = map.getArray("reconnectDeviceMacs");
+        for (int i = 0; i < macs.size(); ++i){
+          options.reconnect.put(macs.getString(i), 0L);
+        }
+      }
+      return options;
+    }
+
+    private static double getDouble(ReadableMap map, String key, double defaultValue){
+      return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : defaultValue;
+    }
+  }
+
+  private final Options options;
+  private final Scanner scanner;
+  private final Scheduler scheduler;
+  private ScheduledFuture<?> task;
+  private boolean running;
+  private boolean inWindow;
+  private long windowStartMs;
+
+  ContinuousScan(Options options, Scanner scanner, Scheduler scheduler) {
+    this.options = options;
+    this.scanner = scanner;
+    this.scheduler = scheduler;
+  }
+
+  synchronized void start(){
+    running = true;
+    startWindow();
+  }
+
+  synchronized void stop(){
+    running = false;
+    if (task != null){
+      task.cancel(false);
+      task = null;
+    }
+    if (inWindow){
+      inWindow = false;
+      scanner.stopScan();
+    }
+  }
+
+  synchronized boolean isRunning(){
+    return running;
+  }
+
+  /**
+   * Called with each scan result, reconnects known devices.
+   */
+  void onDeviceSeen(String deviceMac){
+    synchronized (this){
+      Long lastAttemptMs = options.reconnect.get(deviceMac);
+      if (!running || lastAttemptMs == null || lastAttemptMs >= windowStartMs){
+        return;
+      }
+      options.reconnect.put(deviceMac, SystemClock.elapsedRealtime());
+    }
+    scanner.reconnect(deviceMac);
+  }
+
+  private void startWindow(){
+    if (!running){
+      return;
+    }
+    windowStartMs = SystemClock.elapsedRealtime();
+    inWindow = scanner.startScan((int) Math.max(options.windowMs, MIN_SDK_PERIOD));
+    task = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (ContinuousScan.this){
+          endWindow();
+        }
+      }
+    }, options.windowMs);
+  }
+
+  private void endWindow(){
+    if (!running){
+      return;
+    }
+    if (inWindow){
+      inWindow = false;
+      scanner.stopScan();
+    }
+    long idleMs = options.intervalMs - options.windowMs;
+    if (idleMs == 0){
+      startWindow();
+      return;
+    }
+    task = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (ContinuousScan.this){
+          startWindow();
+        }
+      }
+    }, idleMs);
+  }
+}
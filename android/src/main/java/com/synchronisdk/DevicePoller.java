@@ -0,0 +1,145 @@
+package com.synchronisdk;
+
+import com.sensor.BLEDevice;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Polls device state and battery level of all devices on the shared Scheduler, and reports only values that changed.
+ * States reported by the SensorProfile delegate go through onStateReported, so they are not sent twice.
+ */
+final class DevicePoller {
+  interface Listener {
+    /**
+     * Returns null for an unknown device.
+     */
+    BLEDevice.State getDeviceState(String deviceMac);
+
+    /**
+     * Starts reading the battery level, the result is passed to onBatteryLevel.
+     */
+    void fetchBatteryLevel(String deviceMac);
+
+    void onStateChanged(String deviceMac, BLEDevice.State newState);
+
+    void onPowerChanged(String deviceMac, int power);
+  }
+
+  private static final class Poll {
+    ScheduledFuture<?> stateTask;
+    ScheduledFuture<?> batteryTask;
+    final AtomicBoolean fetchingBattery = new AtomicBoolean();
+    volatile int lastPower = -1;
+  }
+
+  private final Listener listener;
+  private final Scheduler scheduler;
+  private final ConcurrentHashMap<String, Poll> polls = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, BLEDevice.State> lastStates = new ConcurrentHashMap<>();
+
+  DevicePoller(Listener listener, Scheduler scheduler) {
+    this.listener = listener;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Replaces the intervals of deviceMac, 0 stops that poll.
+   */
+  synchronized void setIntervals(final String deviceMac, long stateIntervalMs, long batteryIntervalMs){
+    Poll poll = polls.get(deviceMac);
+    if (poll == null){
+      poll = new Poll();
+      polls.put(deviceMac, poll);
+    }
+    if (poll.stateTask != null){
+      poll.stateTask.cancel(false);
+      poll.stateTask = null;
+    }
+    if (poll.batteryTask != null){
+      poll.batteryTask.cancel(false);
+      poll.batteryTask = null;
+    }
+    if (stateIntervalMs > 0){
+      poll.stateTask = scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          pollState(deviceMac);
+        }
+      }, stateIntervalMs, stateIntervalMs);
+    }
+    if (batteryIntervalMs > 0){
+      final Poll current = poll;
+      poll.batteryTask = scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          pollBattery(deviceMac, current);
+        }
+      }, 0, batteryIntervalMs);
+    }
+    if (poll.stateTask == null && poll.batteryTask == null){
+      polls.remove(deviceMac);
+    }
+  }
+
+  void onStateReported(String deviceMac, BLEDevice.State newState){
+    lastStates.put(deviceMac, newState);
+    if (newState != BLEDevice.State.Ready){
+      Poll poll = polls.get(deviceMac);
+      if (poll != null){
+        poll.lastPower = -1;
+        // the pending read fails with the connection
+        poll.fetchingBattery.set(false);
+      }
+    }
+  }
+
+  void onBatteryLevel(String deviceMac, int power){
+    Poll poll = polls.get(deviceMac);
+    if (poll == null){
+      return;
+    }
+    poll.fetchingBattery.set(false);
+    if (power > 0 && power != poll.lastPower){
+      poll.lastPower = power;
+      listener.onPowerChanged(deviceMac, power);
+    }
+  }
+
+  synchronized void stop(){
+    for (Poll poll : polls.values()){
+      if (poll.stateTask != null){
+        poll.stateTask.cancel(false);
+      }
+      if (poll.batteryTask != null){
+        poll.batteryTask.cancel(false);
+      }
+    }
+    polls.clear();
+  }
+
+  private void pollState(String deviceMac){
+    BLEDevice.State state = listener.getDeviceState(deviceMac);
+    if (state == null){
+      return;
+    }
+    BLEDevice.State last = lastStates.get(deviceMac);
+    if (last == null){
+      if (lastStates.putIfAbsent(deviceMac, state) == null && state != BLEDevice.State.Disconnected){
+        listener.onStateChanged(deviceMac, state);
+      }
+    }else if (last != state && lastStates.replace(deviceMac, last, state)){
+      listener.onStateChanged(deviceMac, state);
+    }
+  }
+
+  private void pollBattery(String deviceMac, Poll poll){
+    if (listener.getDeviceState(deviceMac) != BLEDevice.State.Ready){
+      return;
+    }
+    if (poll.fetchingBattery.compareAndSet(false, true)){
+      listener.fetchBatteryLevel(deviceMac);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.sensor.BLEDevice;
+import com.sensor.SensorController;
+import com.sensor.SensorProfile;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last known handle, state, device info and battery of each device, read without locks.
+ * Device info and battery are only valid while the device is Ready, any other state drops them.
+ */
+final class DeviceRegistry {
+  static final class Info {
+    final String deviceName;
+    final String modelName;
+    final String hardwareVersion;
+    final String firmwareVersion;
+
+    Info(String deviceName, String modelName, String hardwareVersion, String firmwareVersion) {
+      this.deviceName = deviceName;
+      this.modelName = modelName;
+      this.hardwareVersion = hardwareVersion;
+      this.firmwareVersion = firmwareVersion;
+    }
+  }
+
+  static final class Entry {
+    final String deviceMac;
+    // null for a replay
+    final SensorProfile sensor;
+    volatile BLEDevice.State state;
+    volatile Info info;
+    volatile int mtu = -1;
+    volatile int battery = -1;
+    volatile long updatedMs;
+
+    Entry(String deviceMac, SensorProfile sensor) {
+      this.deviceMac = deviceMac;
+      this.sensor = sensor;
+    }
+  }
+
+  private final SensorController sensorScaner;
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  DeviceRegistry(SensorController sensorScaner) {
+    this.sensorScaner = sensorScaner;
+  }
+
+  /**
+   * The SensorProfile of deviceMac, looked up in the SDK once.
+   */
+  SensorProfile getSensor(String deviceMac){
+    Entry entry = entries.get(deviceMac);
+    if (entry != null && entry.sensor != null){
+      return entry.sensor;
+    }
+    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
+    if (sensor == null){
+      return null;
+    }
+    entry = new Entry(deviceMac, sensor);
+    Entry existing = entries.putIfAbsent(deviceMac, entry);
+    if (existing != null && existing.sensor == null){
+      // a replay closed and a real device took its mac
+      entries.replace(deviceMac, existing, entry);
+    }
+    return sensor;
+  }
+
+  Entry get(String deviceMac){
+    return entries.get(deviceMac);
+  }
+
+  void remove(String deviceMac){
+    entries.remove(deviceMac);
+  }
+
+  void onStateChange(String deviceMac, BLEDevice.State newState){
+    Entry entry = entries.get(deviceMac);
+    if (entry == null){
+      entry = new Entry(deviceMac, null);
+      Entry existing = entries.putIfAbsent(deviceMac, entry);
+      if (existing != null){
+        entry = existing;
+      }
+    }
+    entry.state = newState;
+    if (newState != BLEDevice.State.Ready){
+      entry.info = null;
+      entry.mtu = -1;
+      entry.battery = -1;
+    }
+    entry.updatedMs = SystemClock.elapsedRealtime();
+  }
+
+  void onDeviceInfo(String deviceMac, SensorProfile.DeviceInfo deviceInfo, boolean onlyMTU){
+    Entry entry = entries.get(deviceMac);
+    if (entry == null){
+      return;
+    }
+    entry.mtu = deviceInfo.MTUSize;
+    if (!onlyMTU){
+      entry.info = new Info(deviceInfo.deviceName, deviceInfo.modelName, deviceInfo.hardwareVersion, deviceInfo.firmwareVersion);
+    }
+    entry.updatedMs = SystemClock.elapsedRealtime();
+  }
+
+  void onBattery(String deviceMac, int battery){
+    Entry entry = entries.get(deviceMac);
+    if (entry == null || battery <= 0){
+      return;
+    }
+    entry.battery = battery;
+    entry.updatedMs = SystemClock.elapsedRealtime();
+  }
+
+  /**
+   * Cached device info as getDeviceInfo returns it, null if not known.
+   */
+  static WritableMap deviceInfo(Entry entry, boolean onlyMTU){
+    Info info = entry.info;
+    int mtu = entry.mtu;
+    if (mtu < 0 || (!onlyMTU && info == null) || entry.state != BLEDevice.State.Ready){
+      return null;
+    }
+    WritableMap result = Arguments.createMap();
+    result.putInt("MTUSize", mtu);
+    if (!onlyMTU){
+      result.putString("DeviceName", info.deviceName);
+      result.putString("ModelName", info.modelName);
+      result.putString("HardwareVersion", info.hardwareVersion);
+      result.putString("FirmwareVersion", info.firmwareVersion);
+    }
+    return result;
+  }
+
+  WritableArray snapshots(){
+    long nowMs = SystemClock.elapsedRealtime();
+    WritableArray result = Arguments.createArray();
+    for (Entry entry : entries.values()){
+      BLEDevice.State state = entry.state;
+      if (state == null && entry.sensor != null){
+        state = entry.sensor.getDeviceState();
+      }
+      WritableMap snapshot = Arguments.createMap();
+      snapshot.putString("deviceMac", entry.deviceMac);
+      snapshot.putInt("state", state != null ? state.ordinal() : BLEDevice.State.Invalid.ordinal());
+      snapshot.putInt("battery", entry.battery);
+      snapshot.putInt("MTUSize", entry.mtu);
+      WritableMap info = deviceInfo(entry, false);
+      if (info != null){
+        snapshot.putMap("deviceInfo", info);
+      }
+      snapshot.putDouble("ageMs", entry.updatedMs > 0 ? nowMs - entry.updatedMs : -1);
+      result.pushMap(snapshot);
+    }
+    return result;
+  }
+}
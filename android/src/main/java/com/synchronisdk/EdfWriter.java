@@ -0,0 +1,738 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.sensor.SensorData;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the raw packets of one device into an EDF+ or BDF+ file on its own thread, the BLE callback thread only
+ * enqueues like for SampleRecorder.
+ *
+ * Each data type is a group of signals, one per channel. The groups are laid out SETTLE_NANOS after the first
+ * packet, or as soon as every requested data type arrived, and the header is written then with the number of data
+ * records left at -1. Data records are written as soon as every group has a record of samples, the number of
+ * records is patched in at close. Memory stays bounded: a group stalled for BACKLOG_SECONDS is padded with lost
+ * samples so the others can go on, and its late samples are dropped.
+ *
+ * The file is EDF+C: skipped sampleIndices up to MAX_GAP_SECONDS and samples reported lost hold the last value
+ * and get a "Lost" annotation, larger jumps of sampleIndex get a "Discontinuity" annotation.
+ */
+final class EdfWriter {
+  interface Listener {
+    void onClosed(EdfWriter writer, IOException error);
+  }
+
+  static final int FORMAT_EDF = 0;
+  static final int FORMAT_BDF = 1;
+
+  static final class Options {
+    int format = FORMAT_EDF;
+    int[] dataTypes = {SensorData.NTF_EEG, SensorData.NTF_ECG, SensorData.NTF_ACC_DATA, SensorData.NTF_GYO_DATA,
+      SensorData.NTF_BRTH};
+    double recordSeconds = 1;
+    String patientCode = "X";
+    String patientName = "X";
+    // dataType to {physicalMin, physicalMax}
+    final HashMap<Integer, double[]> ranges = new HashMap<>();
+
+    static Options parse(ReadableMap map){
+      Options options = new Options();
+      if (map == null){
+        return options;
+      }
+      if (map.hasKey("format") && !map.isNull("format")){
+        options.format = map.getInt("format");
+        if (options.format != FORMAT_EDF && options.format != FORMAT_BDF){
+          throw new IllegalArgumentException("invalid format");
+        }
+      }
+      if (map.hasKey("dataTypes") && !map.isNull("dataTypes")){
+        ReadableArray dataTypes = map.getArray("dataTypes");
+        if (dataTypes.size() == 0){
+          throw new IllegalArgumentException("dataTypes is empty");
+        }
+        int[] requested = new int[dataTypes.size()];
+        int count = 0;
+        for (int i = 0; i < dataTypes.size(); ++i){
+          int dataType = dataTypes.getInt(i);
+          if (name(dataType) == null){
+            throw new IllegalArgumentException("invalid dataType " + dataType);
+          }
+          if (indexOf(requested, count, dataType) < 0){
+            requested[count++] = dataType;
+          }
+        }
+        options.dataTypes = Arrays.copyOf(requested, count);
+      }
+      if (map.hasKey("recordSeconds") && !map.isNull("recordSeconds")){
+        options.recordSeconds = map.getDouble("recordSeconds");
+        if (!(options.recordSeconds > 0 && options.recordSeconds <= 60)){
+          throw new IllegalArgumentException("recordSeconds needs > 0 and <= 60");
+        }
+      }
+      if (map.hasKey("patientCode") && !map.isNull("patientCode")){
+        options.patientCode = map.getString("patientCode");
+      }
+      if (map.hasKey("patientName") && !map.isNull("patientName")){
+        options.patientName = map.getString("patientName");
+      }
+      if (map.hasKey("ranges") && !map.isNull("ranges")){
+        ReadableArray ranges = map.getArray("ranges");
+        for (int i = 0; i < ranges.size(); ++i){
+          ReadableMap range = ranges.getMap(i);
+          double min = range.getDouble("physicalMin");
+          double max = range.getDouble("physicalMax");
+          if (!(max > min)){
+            throw new IllegalArgumentException("physicalMax needs > physicalMin");
+          }
+          options.ranges.put(range.getInt("dataType"), new double[]{min, max});
+        }
+      }
+      return options;
+    }
+  }
+
+  private static final class Group {
+    final int dataType;
+    final int sampleRate;
+    final int channelCount;
+    final int samplesPerRecord;
+    final double physicalMin;
+    final double physicalMax;
+    final float[][] samples;
+    final float[] last;
+    int count;
+    // samples put so far, the position of the next one
+    long position;
+    // samples padded ahead of the stream, its next samples are dropped
+    long overdue;
+    boolean started;
+    int expectedIndex;
+    long lostStart;
+    long lostLength;
+
+    Group(int dataType, int sampleRate, int channelCount, int samplesPerRecord, int capacity, double[] range) {
+      this.dataType = dataType;
+      this.sampleRate = sampleRate;
+      this.channelCount = channelCount;
+      this.samplesPerRecord = samplesPerRecord;
+      this.physicalMin = range[0];
+      this.physicalMax = range[1];
+      samples = new float[channelCount][capacity];
+      last = new float[channelCount];
+    }
+  }
+
+  private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long STOP_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long SETTLE_NANOS = TimeUnit.SECONDS.toNanos(2);
+  private static final int QUEUE_CAPACITY = 4096;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final double BACKLOG_SECONDS = 4;
+  private static final double MAX_GAP_SECONDS = 10;
+  private static final int ANNOTATION_BYTES = 240;
+  private static final int MAX_PENDING_ANNOTATIONS = 4096;
+  private static final int NUMBER_OF_RECORDS_OFFSET = 236;
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final String[] MONTHS = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT",
+    "NOV", "DEC"};
+
+  final String deviceMac;
+  final File file;
+  final AtomicLong droppedPackets = new AtomicLong();
+  private volatile long writtenRecords;
+  private volatile long writtenBytes;
+  private volatile long clippedSamples;
+  private volatile long lostSamples;
+
+  private final Options options;
+  private final String equipment;
+  private final long wallOffsetNanos;
+  private final int bytesPerSample;
+  private final int digitalMin;
+  private final int digitalMax;
+  private final LinkedBlockingQueue<SamplePacket> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+  private final FileChannel channel;
+  private ByteBuffer buffer;
+  private volatile boolean stopping;
+  private volatile Listener listener;
+
+  // the fields below are only used on the writer thread
+  private final ArrayList<Group> groups = new ArrayList<>();
+  private final ArrayList<String> annotations = new ArrayList<>();
+  private boolean laidOut;
+  private long firstPacketNanos;
+  private long startWallNanos;
+  // onset of the first data record after the start second of the header
+  private double startFraction;
+
+  EdfWriter(String deviceMac, File file, Options options, DeviceRegistry.Info info) throws IOException {
+    this.deviceMac = deviceMac;
+    this.file = file;
+    this.options = options;
+    equipment = info != null ? info.modelName + "_" + info.firmwareVersion : deviceMac;
+    wallOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - SystemClock.elapsedRealtimeNanos();
+    bytesPerSample = options.format == FORMAT_BDF ? 3 : 2;
+    // symmetric, so a physical 0 is a digital 0
+    digitalMax = options.format == FORMAT_BDF ? 8388607 : Short.MAX_VALUE;
+    digitalMin = -digitalMax;
+    channel = new FileOutputStream(file).getChannel();
+    buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  void start(){
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "SynchronisdkEdfWriter");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Never blocks, a full queue drops the packet from the file only.
+   */
+  boolean offer(SamplePacket packet){
+    if (stopping || !queue.offer(packet)){
+      droppedPackets.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Writes what is queued, pads the last data record, patches the header and closes the file, then calls
+   * listener on the writer thread.
+   */
+  void stop(Listener listener){
+    this.listener = listener;
+    stopping = true;
+  }
+
+  long writtenRecords(){
+    return writtenRecords;
+  }
+
+  long writtenBytes(){
+    return writtenBytes;
+  }
+
+  long clippedSamples(){
+    return clippedSamples;
+  }
+
+  long lostSamples(){
+    return lostSamples;
+  }
+
+  private void loop(){
+    IOException error = null;
+    long lastFlushNanos = SystemClock.elapsedRealtimeNanos();
+    try {
+      while (true){
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        long waitNanos = Math.min(STOP_POLL_NANOS, lastFlushNanos + FLUSH_INTERVAL_NANOS - nowNanos);
+        SamplePacket packet = waitNanos > 0 ? queue.poll(waitNanos, TimeUnit.NANOSECONDS) : queue.poll();
+        if (packet != null){
+          append(packet);
+        }else if (stopping && queue.isEmpty()){
+          break;
+        }
+        nowNanos = SystemClock.elapsedRealtimeNanos();
+        if (!laidOut && firstPacketNanos != 0 && nowNanos - firstPacketNanos >= SETTLE_NANOS){
+          layOut();
+        }
+        writeRecords();
+        if (nowNanos - lastFlushNanos >= FLUSH_INTERVAL_NANOS){
+          flush(true);
+          lastFlushNanos = nowNanos;
+        }
+      }
+      close();
+    } catch (IOException e){
+      error = e;
+    } catch (InterruptedException e){
+      Thread.currentThread().interrupt();
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e){
+        if (error == null){
+          error = e;
+        }
+      }
+    }
+    Listener current = listener;
+    if (current != null){
+      current.onClosed(this, error);
+    }
+  }
+
+  private void append(SamplePacket packet) throws IOException {
+    if (packet.hasImpedance() || packet.sampleRate <= 0){
+      return;
+    }
+    Group group = getGroup(packet);
+    if (group == null){
+      return;
+    }
+    int sampleCount = packet.sampleCount;
+    int maxGap = (int) (group.sampleRate * MAX_GAP_SECONDS);
+    float[] values = new float[group.channelCount];
+    for (int i = 0; i < sampleCount; ++i){
+      int sampleIndex = packet.sampleIndex[i];
+      if (group.started){
+        int delta = sampleIndex - group.expectedIndex;
+        if (delta > 0 && delta <= maxGap){
+          for (int k = 0; k < delta; ++k){
+            put(group, group.last, true);
+          }
+        }else if (delta < 0 && delta >= -maxGap){
+          continue;
+        }else if (delta != 0){
+          annotate(group, group.position, 0, "Discontinuity");
+        }
+      }
+      group.started = true;
+      group.expectedIndex = sampleIndex + 1;
+      boolean lost = false;
+      for (int channel = 0; channel < group.channelCount; ++channel){
+        int position = channel * sampleCount + i;
+        float value = packet.data[position];
+        if (packet.lost[position] || Float.isNaN(value)){
+          lost = true;
+        }
+        values[channel] = value;
+      }
+      put(group, lost ? group.last : values, lost);
+    }
+  }
+
+  /**
+   * The group of the packet, created for a requested data type arriving before the layout. Null if the packet is
+   * not exported.
+   */
+  private Group getGroup(SamplePacket packet) throws IOException {
+    for (Group group : groups){
+      if (group.dataType == packet.dataType){
+        if (group.sampleRate != packet.sampleRate || group.channelCount != packet.channelCount){
+          droppedPackets.incrementAndGet();
+          return null;
+        }
+        return group;
+      }
+    }
+    if (laidOut || indexOf(options.dataTypes, options.dataTypes.length, packet.dataType) < 0){
+      return null;
+    }
+    double samplesPerRecord = packet.sampleRate * options.recordSeconds;
+    if (Math.abs(samplesPerRecord - Math.rint(samplesPerRecord)) > 1e-6 || samplesPerRecord < 1){
+      // a data record has to hold a whole number of samples of every signal
+      return null;
+    }
+    int perRecord = (int) Math.rint(samplesPerRecord);
+    int capacity = perRecord * Math.max(2, (int) Math.ceil(BACKLOG_SECONDS / options.recordSeconds));
+    double[] range = options.ranges.get(packet.dataType);
+    Group group = new Group(packet.dataType, packet.sampleRate, packet.channelCount, perRecord, capacity,
+      range != null ? range : defaultRange(packet.dataType));
+    long firstSampleNanos = packet.receivedNanos + wallOffsetNanos
+      - TimeUnit.SECONDS.toNanos(packet.sampleCount) / packet.sampleRate;
+    if (groups.isEmpty()){
+      firstPacketNanos = SystemClock.elapsedRealtimeNanos();
+      startWallNanos = firstSampleNanos;
+    }else{
+      // starts later than the first group, padded to line up
+      long padding = (firstSampleNanos - startWallNanos) * packet.sampleRate / TimeUnit.SECONDS.toNanos(1);
+      for (long k = 0; k < Math.min(padding, capacity - perRecord); ++k){
+        store(group, group.last, true);
+      }
+    }
+    groups.add(group);
+    if (groups.size() == options.dataTypes.length){
+      layOut();
+    }
+    return group;
+  }
+
+  private static int indexOf(int[] values, int count, int value){
+    for (int i = 0; i < count; ++i){
+      if (values[i] == value){
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void put(Group group, float[] values, boolean lost) throws IOException {
+    if (group.overdue > 0){
+      --group.overdue;
+      return;
+    }
+    store(group, values, lost);
+  }
+
+  private void store(Group group, float[] values, boolean lost) throws IOException {
+    if (group.count == group.samples[0].length){
+      forceRecord();
+    }
+    for (int channel = 0; channel < group.channelCount; ++channel){
+      group.samples[channel][group.count] = values[channel];
+      if (!lost){
+        group.last[channel] = values[channel];
+      }
+    }
+    ++group.count;
+    if (lost){
+      ++lostSamples;
+      if (group.lostLength > 0 && group.lostStart + group.lostLength == group.position){
+        ++group.lostLength;
+      }else{
+        endLostRun(group);
+        group.lostStart = group.position;
+        group.lostLength = 1;
+      }
+    }else{
+      endLostRun(group);
+    }
+    ++group.position;
+  }
+
+  private void endLostRun(Group group){
+    if (group.lostLength > 0){
+      annotate(group, group.lostStart, group.lostLength, "Lost");
+      group.lostLength = 0;
+    }
+  }
+
+  private void annotate(Group group, long position, long length, String text){
+    if (annotations.size() == MAX_PENDING_ANNOTATIONS){
+      return;
+    }
+    StringBuilder tal = new StringBuilder();
+    tal.append('+').append(seconds(startFraction + (double) position / group.sampleRate));
+    if (length > 0){
+      tal.append('\u0015').append(seconds((double) length / group.sampleRate));
+    }
+    tal.append('\u0014').append(text).append(' ').append(name(group.dataType)).append("\u0014\u0000");
+    annotations.add(tal.toString());
+  }
+
+  /**
+   * Writes one data record now, a group short of samples is padded with lost samples it will drop later.
+   */
+  private void forceRecord() throws IOException {
+    if (!laidOut){
+      layOut();
+    }
+    for (Group group : groups){
+      int missing = group.samplesPerRecord - group.count;
+      for (int k = 0; k < missing; ++k){
+        store(group, group.last, true);
+      }
+      group.overdue += Math.max(0, missing);
+    }
+    writeRecord();
+  }
+
+  private void writeRecords() throws IOException {
+    if (!laidOut || groups.isEmpty()){
+      return;
+    }
+    while (true){
+      for (Group group : groups){
+        if (group.count < group.samplesPerRecord){
+          return;
+        }
+      }
+      writeRecord();
+    }
+  }
+
+  private void writeRecord() throws IOException {
+    int recordSize = ANNOTATION_BYTES;
+    for (Group group : groups){
+      recordSize += group.channelCount * group.samplesPerRecord * bytesPerSample;
+    }
+    reserve(recordSize);
+    for (Group group : groups){
+      double scale = (digitalMax - digitalMin) / (group.physicalMax - group.physicalMin);
+      for (int channel = 0; channel < group.channelCount; ++channel){
+        float[] samples = group.samples[channel];
+        for (int i = 0; i < group.samplesPerRecord; ++i){
+          long digital = Math.round((samples[i] - group.physicalMin) * scale) + digitalMin;
+          if (digital < digitalMin || digital > digitalMax){
+            ++clippedSamples;
+            digital = Math.max(digitalMin, Math.min(digitalMax, digital));
+          }
+          putDigital((int) digital);
+        }
+        System.arraycopy(samples, group.samplesPerRecord, samples, 0, group.count - group.samplesPerRecord);
+      }
+      group.count -= group.samplesPerRecord;
+    }
+    putAnnotations(startFraction + writtenRecords * options.recordSeconds);
+    ++writtenRecords;
+  }
+
+  private void putDigital(int digital){
+    if (bytesPerSample == 3){
+      buffer.put((byte) digital);
+      buffer.put((byte) (digital >> 8));
+      buffer.put((byte) (digital >> 16));
+    }else{
+      buffer.putShort((short) digital);
+    }
+  }
+
+  /**
+   * The time keeping TAL of the record, then the pending annotations that fit.
+   */
+  private void putAnnotations(double onset){
+    byte[] timeKeeping = ("+" + seconds(onset) + "\u0014\u0014\u0000").getBytes(ASCII);
+    int used = timeKeeping.length;
+    buffer.put(timeKeeping);
+    while (!annotations.isEmpty()){
+      byte[] tal = annotations.get(0).getBytes(ASCII);
+      if (used + tal.length > ANNOTATION_BYTES){
+        break;
+      }
+      annotations.remove(0);
+      buffer.put(tal);
+      used += tal.length;
+    }
+    for (; used < ANNOTATION_BYTES; ++used){
+      buffer.put((byte) 0);
+    }
+  }
+
+  /**
+   * Writes the header of the groups so far with -1 data records, no group is added afterwards.
+   */
+  private void layOut() throws IOException {
+    laidOut = true;
+    long startMs = TimeUnit.NANOSECONDS.toMillis(startWallNanos != 0 ? startWallNanos : wallOffsetNanos
+      + SystemClock.elapsedRealtimeNanos());
+    startFraction = (startMs % 1000) / 1000.0;
+    Calendar start = Calendar.getInstance();
+    start.setTimeInMillis(startMs);
+
+    int signalCount = 1;
+    for (Group group : groups){
+      signalCount += group.channelCount;
+    }
+    int headerSize = 256 * (signalCount + 1);
+    reserve(headerSize);
+    boolean bdf = options.format == FORMAT_BDF;
+    if (bdf){
+      buffer.put((byte) 0xff);
+      putField("BIOSEMI", 7);
+    }else{
+      putField("0", 8);
+    }
+    putField(field(options.patientCode) + " X X " + field(options.patientName), 80);
+    putField(String.format(Locale.US, "Startdate %02d-%s-%04d X X %s", start.get(Calendar.DAY_OF_MONTH),
+      MONTHS[start.get(Calendar.MONTH)], start.get(Calendar.YEAR), field(equipment)), 80);
+    putField(String.format(Locale.US, "%02d.%02d.%02d", start.get(Calendar.DAY_OF_MONTH),
+      start.get(Calendar.MONTH) + 1, start.get(Calendar.YEAR) % 100), 8);
+    putField(String.format(Locale.US, "%02d.%02d.%02d", start.get(Calendar.HOUR_OF_DAY),
+      start.get(Calendar.MINUTE), start.get(Calendar.SECOND)), 8);
+    putField(Integer.toString(headerSize), 8);
+    putField(bdf ? "BDF+C" : "EDF+C", 44);
+    putField("-1", 8);
+    putField(seconds(options.recordSeconds), 8);
+    putField(Integer.toString(signalCount), 4);
+
+    ArrayList<String[]> signals = new ArrayList<>();
+    for (Group group : groups){
+      for (int channel = 0; channel < group.channelCount; ++channel){
+        signals.add(new String[]{label(group, channel), unit(group.dataType), number(group.physicalMin),
+          number(group.physicalMax), Integer.toString(digitalMin), Integer.toString(digitalMax),
+          Integer.toString(group.samplesPerRecord)});
+      }
+    }
+    signals.add(new String[]{bdf ? "BDF Annotations" : "EDF Annotations", "", "-1", "1",
+      Integer.toString(digitalMin), Integer.toString(digitalMax), Integer.toString(ANNOTATION_BYTES / bytesPerSample)});
+    int[] widths = {16, 80, 8, 8, 8, 8, 8, 80, 8, 32};
+    for (int field = 0; field < widths.length; ++field){
+      for (String[] signal : signals){
+        String value;
+        if (field == 0){
+          value = signal[0];
+        }else if (field >= 2 && field <= 6){
+          value = signal[field - 1];
+        }else if (field == 8){
+          value = signal[6];
+        }else{
+          // transducer, prefiltering and reserved, raw samples before the processing chain
+          value = "";
+        }
+        putField(value, widths[field]);
+      }
+    }
+    // lost runs annotated before the layout did not know the start fraction yet
+    if (startFraction != 0){
+      ArrayList<String> shifted = new ArrayList<>(annotations);
+      annotations.clear();
+      for (String tal : shifted){
+        annotations.add(shiftOnset(tal, startFraction));
+      }
+    }
+  }
+
+  private void close() throws IOException {
+    if (!laidOut){
+      layOut();
+    }
+    // every group padded to the same number of whole records
+    int records = 0;
+    for (Group group : groups){
+      records = Math.max(records, (group.count + group.samplesPerRecord - 1) / group.samplesPerRecord);
+    }
+    for (Group group : groups){
+      while (group.count < records * group.samplesPerRecord){
+        store(group, group.last, true);
+      }
+      endLostRun(group);
+    }
+    writeRecords();
+    flush(true);
+    ByteBuffer count = ByteBuffer.wrap(pad(Long.toString(writtenRecords), 8));
+    channel.write(count, NUMBER_OF_RECORDS_OFFSET);
+  }
+
+  private static String shiftOnset(String tal, double offset){
+    int end = tal.indexOf('\u0015');
+    if (end < 0){
+      end = tal.indexOf('\u0014');
+    }
+    double onset = Double.parseDouble(tal.substring(1, end));
+    return "+" + seconds(onset + offset) + tal.substring(end);
+  }
+
+  private static double[] defaultRange(int dataType){
+    switch (dataType){
+      case SensorData.NTF_EEG:
+        return new double[]{-3276.7, 3276.7};
+      case SensorData.NTF_ACC_DATA:
+        return new double[]{-16, 16};
+      case SensorData.NTF_GYO_DATA:
+        return new double[]{-2000, 2000};
+      default:
+        return new double[]{-32767, 32767};
+    }
+  }
+
+  static String name(int dataType){
+    switch (dataType){
+      case SensorData.NTF_EEG:
+        return "EEG";
+      case SensorData.NTF_ECG:
+        return "ECG";
+      case SensorData.NTF_ACC_DATA:
+        return "Accel";
+      case SensorData.NTF_GYO_DATA:
+        return "Gyro";
+      case SensorData.NTF_BRTH:
+        return "Resp";
+      default:
+        return null;
+    }
+  }
+
+  private static String label(Group group, int channel){
+    if (group.channelCount == 3 && (group.dataType == SensorData.NTF_ACC_DATA
+      || group.dataType == SensorData.NTF_GYO_DATA)){
+      return name(group.dataType) + " " + "XYZ".charAt(channel);
+    }
+    return name(group.dataType) + " " + (channel + 1);
+  }
+
+  private static String unit(int dataType){
+    switch (dataType){
+      case SensorData.NTF_ACC_DATA:
+        return "g";
+      case SensorData.NTF_GYO_DATA:
+        return "deg/s";
+      default:
+        return "uV";
+    }
+  }
+
+  /**
+   * A subfield of the EDF+ patient or recording field, spaces are not allowed in one.
+   */
+  private static String field(String value){
+    return value == null || value.isEmpty() ? "X" : value.replace(' ', '_');
+  }
+
+  private static String seconds(double value){
+    String text = String.format(Locale.US, "%.4f", value);
+    int end = text.length();
+    while (text.charAt(end - 1) == '0'){
+      --end;
+    }
+    if (text.charAt(end - 1) == '.'){
+      --end;
+    }
+    return text.substring(0, end);
+  }
+
+  private static String number(double value){
+    String text = seconds(value);
+    return text.length() <= 8 ? text : text.substring(0, 8);
+  }
+
+  private void putField(String value, int width){
+    buffer.put(pad(value, width));
+  }
+
+  private static byte[] pad(String value, int width){
+    byte[] field = new byte[width];
+    byte[] bytes = value.getBytes(ASCII);
+    for (int i = 0; i < width; ++i){
+      field[i] = i < bytes.length && bytes[i] >= 32 && bytes[i] < 127 ? bytes[i] : (byte) ' ';
+    }
+    return field;
+  }
+
+  private void reserve(int size) throws IOException {
+    if (buffer.remaining() >= size){
+      return;
+    }
+    flush(false);
+    if (buffer.capacity() < size){
+      buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  private void flush(boolean force) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()){
+      writtenBytes += channel.write(buffer);
+    }
+    buffer.clear();
+    if (force){
+      channel.force(false);
+    }
+  }
+}
@@ -0,0 +1,631 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.sensor.SensorData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Derived values of one device and data type, computed on the serializer thread and sent as GOT_FEATURES
+ * every intervalMs worth of samples:
+ *   EEG: band power per channel from a Hann windowed FFT over windowMs zero-padded to a power of two, in data units squared
+ *   ECG: R-peaks and heart rate from the first channel, derivative, squaring, moving integration and adaptive threshold
+ *   BRTH: breathing rate from the first channel, upward crossings of the smoothed signal with hysteresis
+ *   ACC/GYRO: pitch, roll and yaw in degrees, gyro integrated and pulled toward the accelerometer tilt
+ * State is reset when sample rate or channel count change. Lost and NaN samples, as a SequenceTracker may leave
+ * them, never reach the state: band power leaves them out, the others hold the last valid value or skip them.
+ */
+abstract class FeatureExtractor {
+  static final class Options {
+    long intervalMs = 250;
+    long windowMs = 2000;
+    // seconds for the accelerometer to correct gyro drift
+    double timeConstant = 1;
+    boolean suppressData;
+
+    static Options parse(ReadableMap map){
+      Options options = new Options();
+      if (map == null){
+        return options;
+      }
+      options.intervalMs = (long) getDouble(map, "intervalMs", options.intervalMs);
+      options.windowMs = (long) getDouble(map, "windowMs", options.windowMs);
+      options.timeConstant = getDouble(map, "timeConstant", options.timeConstant);
+      if (options.intervalMs < 20){
+        throw new IllegalArgumentException("intervalMs needs >= 20");
+      }
+      if (options.windowMs < options.intervalMs){
+        throw new IllegalArgumentException("windowMs needs >= intervalMs");
+      }
+      if (options.timeConstant <= 0){
+        throw new IllegalArgumentException("timeConstant needs > 0");
+      }
+      if (map.hasKey("suppressData") && !map.isNull("suppressData")){
+        options.suppressData = map.getBoolean("suppressData");
+      }
+      return options;
+    }
+
+    private static double getDouble(ReadableMap map, String key, double defaultValue){
+      return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : defaultValue;
+    }
+  }
+
+  final String deviceMac;
+  final int dataType;
+  final Options options;
+  private int sampleRate;
+  private int channelCount;
+  private int pendingSamples;
+  private int lastSampleIndex;
+
+  FeatureExtractor(String deviceMac, int dataType, Options options) {
+    this.deviceMac = deviceMac;
+    this.dataType = dataType;
+    this.options = options;
+  }
+
+  static FeatureExtractor create(String deviceMac, int dataType, Options options){
+    switch (dataType){
+      case SensorData.NTF_EEG:
+        return new BandPower(deviceMac, dataType, options);
+      case SensorData.NTF_ECG:
+        return new HeartRate(deviceMac, dataType, options);
+      case SensorData.NTF_BRTH:
+        return new BreathingRate(deviceMac, dataType, options);
+      case SensorData.NTF_ACC_DATA:
+      case SensorData.NTF_GYO_DATA:
+        return new Orientation(deviceMac, dataType, options);
+      default:
+        throw new IllegalArgumentException("no features for data type " + dataType);
+    }
+  }
+
+  /**
+   * Feeds a packet, returns the GOT_FEATURES event if an interval is complete, null otherwise.
+   * Orientation takes both ACC and GYRO packets, intervals are counted on the data type it was created for.
+   */
+  final WritableMap append(SamplePacket packet){
+    if (packet.sampleRate <= 0 || packet.sampleCount == 0){
+      return null;
+    }
+    if (packet.dataType == dataType && (packet.sampleRate != sampleRate || packet.channelCount != channelCount)){
+      sampleRate = packet.sampleRate;
+      channelCount = packet.channelCount;
+      pendingSamples = 0;
+      reset(sampleRate, channelCount);
+    }
+    if (sampleRate == 0){
+      return null;
+    }
+    process(packet);
+    // a decimating chain may leave no samples
+    if (packet.dataType != dataType || packet.sampleCount == 0){
+      return null;
+    }
+    lastSampleIndex = packet.sampleIndex[packet.sampleCount - 1];
+    pendingSamples += packet.sampleCount;
+    int intervalSamples = (int) Math.max(1, sampleRate * options.intervalMs / 1000);
+    if (pendingSamples < intervalSamples){
+      return null;
+    }
+    pendingSamples %= intervalSamples;
+    WritableMap result = Arguments.createMap();
+    if (!putFeatures(result)){
+      return null;
+    }
+    result.putString("deviceMac", deviceMac);
+    result.putInt("dataType", dataType);
+    result.putInt("sampleRate", sampleRate);
+    result.putInt("sampleIndex", lastSampleIndex);
+    return result;
+  }
+
+  abstract void reset(int sampleRate, int channelCount);
+
+  abstract void process(SamplePacket packet);
+
+  /**
+   * Adds the features of the last interval, returns false if there is nothing to send yet.
+   */
+  abstract boolean putFeatures(WritableMap result);
+
+  /**
+   * True if the sample at position of packet has no valid data.
+   */
+  static boolean isMissing(SamplePacket packet, int position){
+    return packet.lost[position] || Float.isNaN(packet.data[position]);
+  }
+
+  private static double median(double[] values, int count){
+    double[] sorted = Arrays.copyOf(values, count);
+    Arrays.sort(sorted);
+    return count % 2 == 1 ? sorted[count / 2] : (sorted[count / 2 - 1] + sorted[count / 2]) / 2;
+  }
+
+  /**
+   * Keeps the last capacity intervals, in samples.
+   */
+  private static final class Intervals {
+    private final double[] values;
+    private int count;
+    private int next;
+
+    Intervals(int capacity) {
+      values = new double[capacity];
+    }
+
+    void add(double value){
+      values[next] = value;
+      next = (next + 1) % values.length;
+      count = Math.min(count + 1, values.length);
+    }
+
+    void clear(){
+      count = next = 0;
+    }
+
+    /**
+     * Events per minute from the median interval, -1 if none.
+     */
+    double perMinute(int sampleRate){
+      return count == 0 ? -1 : 60.0 * sampleRate / median(values, count);
+    }
+  }
+
+  static final class BandPower extends FeatureExtractor {
+    private static final String[] BANDS = {"delta", "theta", "alpha", "beta", "gamma"};
+    private static final double[] EDGES = {1, 4, 8, 13, 30, 45};
+
+    private int sampleRate;
+    private float[][] history;
+    // samples in the window, the FFT zero-pads them to size
+    private int length;
+    private int size;
+    private int filled;
+    private int next;
+    private double[] window;
+    private double[] re;
+    private double[] im;
+
+    BandPower(String deviceMac, int dataType, Options options) {
+      super(deviceMac, dataType, options);
+    }
+
+    @Override
+    void reset(int sampleRate, int channelCount) {
+      this.sampleRate = sampleRate;
+      length = (int) Math.max(64, sampleRate * options.windowMs / 1000);
+      size = Integer.highestOneBit(length - 1) << 1;
+      history = new float[channelCount][length];
+      filled = next = 0;
+      window = new double[length];
+      for (int i = 0; i < length; ++i){
+        window[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1));
+      }
+      re = new double[size];
+      im = new double[size];
+    }
+
+    @Override
+    void process(SamplePacket packet) {
+      int channels = Math.min(history.length, packet.channelCount);
+      for (int i = 0; i < packet.sampleCount; ++i){
+        for (int channel = 0; channel < channels; ++channel){
+          history[channel][next] = packet.data[channel * packet.sampleCount + i];
+        }
+        next = (next + 1) % length;
+      }
+      filled = Math.min(length, filled + packet.sampleCount);
+    }
+
+    @Override
+    boolean putFeatures(WritableMap result) {
+      double[][] powers = bandPower();
+      if (powers == null){
+        return false;
+      }
+      WritableMap bandPower = Arguments.createMap();
+      for (int band = 0; band < BANDS.length; ++band){
+        WritableArray values = Arguments.createArray();
+        for (double[] channel : powers){
+          values.pushDouble(channel[band]);
+        }
+        bandPower.putArray(BANDS[band], values);
+      }
+      result.putMap("bandPower", bandPower);
+      return true;
+    }
+
+    /**
+     * Power per channel and band over the last window, null until the window is full.
+     * NaN samples, as a FILL_NAN SequenceTracker leaves them, are left out and the window scale follows;
+     * a channel with more than half of the window missing gets -1.
+     */
+    double[][] bandPower(){
+      if (filled < length){
+        return null;
+      }
+      double binHz = (double) sampleRate / size;
+      double[][] powers = new double[history.length][BANDS.length];
+      for (int channel = 0; channel < history.length; ++channel){
+        float[] samples = history[channel];
+        double mean = 0;
+        int valid = 0;
+        for (float sample : samples){
+          if (!Float.isNaN(sample)){
+            mean += sample;
+            ++valid;
+          }
+        }
+        if (valid * 2 < length){
+          Arrays.fill(powers[channel], -1);
+          continue;
+        }
+        mean /= valid;
+        double sum = 0;
+        for (int i = 0; i < length; ++i){
+          // oldest sample first
+          float sample = samples[(next + i) % length];
+          if (Float.isNaN(sample)){
+            re[i] = 0;
+          }else{
+            re[i] = (sample - mean) * window[i];
+            sum += window[i] * window[i];
+          }
+        }
+        Arrays.fill(re, length, size, 0);
+        Arrays.fill(im, 0);
+        fft(re, im);
+        double windowScale = 1 / (sampleRate * sum);
+        for (int band = 0; band < BANDS.length; ++band){
+          int from = (int) Math.ceil(EDGES[band] / binHz);
+          int to = (int) Math.min(Math.ceil(EDGES[band + 1] / binHz), size / 2 + 1);
+          double power = 0;
+          for (int bin = from; bin < to; ++bin){
+            double density = (re[bin] * re[bin] + im[bin] * im[bin]) * windowScale;
+            power += (bin == 0 || bin == size / 2) ? density : 2 * density;
+          }
+          powers[channel][band] = power * binHz;
+        }
+      }
+      return powers;
+    }
+
+    /**
+     * In place radix-2 FFT, length a power of two.
+     */
+    static void fft(double[] re, double[] im){
+      int n = re.length;
+      for (int i = 1, j = 0; i < n; ++i){
+        int bit = n >> 1;
+        for (; (j & bit) != 0; bit >>= 1){
+          j ^= bit;
+        }
+        j ^= bit;
+        if (i < j){
+          double t = re[i]; re[i] = re[j]; re[j] = t;
+          t = im[i]; im[i] = im[j]; im[j] = t;
+        }
+      }
+      for (int length = 2; length <= n; length <<= 1){
+        double angle = -2 * Math.PI / length;
+        double stepRe = Math.cos(angle);
+        double stepIm = Math.sin(angle);
+        for (int start = 0; start < n; start += length){
+          double wRe = 1;
+          double wIm = 0;
+          for (int k = 0; k < length / 2; ++k){
+            int a = start + k;
+            int b = a + length / 2;
+            double bRe = re[b] * wRe - im[b] * wIm;
+            double bIm = re[b] * wIm + im[b] * wRe;
+            re[b] = re[a] - bRe;
+            im[b] = im[a] - bIm;
+            re[a] += bRe;
+            im[a] += bIm;
+            double t = wRe * stepRe - wIm * stepIm;
+            wIm = wRe * stepIm + wIm * stepRe;
+            wRe = t;
+          }
+        }
+      }
+    }
+  }
+
+  static final class HeartRate extends FeatureExtractor {
+    private int sampleRate;
+    private double[] integration;
+    private double integrationSum;
+    private int integrationNext;
+    private double previous1;
+    private double previous2;
+    private long position;
+    private double signalPeak;
+    private double learnPeak;
+    private boolean inQrs;
+    private double qrsMax;
+    private double qrsEnergy;
+    private long qrsPosition;
+    private int qrsSampleIndex;
+    private long lastPeakPosition = -1;
+    private long quietSincePosition;
+    private final Intervals rr = new Intervals(8);
+    // since the last event
+    final ArrayList<Integer> peaks = new ArrayList<>();
+    private final ArrayList<Double> rrIntervals = new ArrayList<>();
+
+    HeartRate(String deviceMac, int dataType, Options options) {
+      super(deviceMac, dataType, options);
+    }
+
+    @Override
+    void reset(int sampleRate, int channelCount) {
+      this.sampleRate = sampleRate;
+      integration = new double[Math.max(1, sampleRate * 150 / 1000)];
+      integrationSum = integrationNext = 0;
+      previous1 = previous2 = 0;
+      position = 0;
+      signalPeak = learnPeak = 0;
+      inQrs = false;
+      lastPeakPosition = -1;
+      quietSincePosition = 0;
+      rr.clear();
+    }
+
+    @Override
+    void process(SamplePacket packet) {
+      for (int i = 0; i < packet.sampleCount; ++i, ++position){
+        boolean missing = isMissing(packet, i);
+        // held, the derivative of a gap is flat and never looks like a QRS
+        double sample = missing ? previous1 : packet.data[i];
+        double derivative = sample - previous2;
+        previous2 = previous1;
+        previous1 = sample;
+        integrationSum += derivative * derivative - integration[integrationNext];
+        integration[integrationNext] = derivative * derivative;
+        integrationNext = (integrationNext + 1) % integration.length;
+        double energy = integrationSum / integration.length;
+        if (position < sampleRate){
+          // the first second only learns the QRS energy
+          learnPeak = Math.max(learnPeak, energy);
+          signalPeak = learnPeak;
+          continue;
+        }
+        if (!inQrs && position - quietSincePosition > 2 * sampleRate){
+          // no beat for 2 seconds, the amplitude dropped
+          signalPeak *= 0.5;
+          quietSincePosition = position;
+        }
+        double threshold = 0.4 * signalPeak;
+        if (energy > threshold){
+          if (!inQrs){
+            inQrs = true;
+            qrsMax = Double.NEGATIVE_INFINITY;
+            qrsEnergy = 0;
+          }
+          qrsEnergy = Math.max(qrsEnergy, energy);
+          if (!missing && Math.abs(sample) > qrsMax){
+            qrsMax = Math.abs(sample);
+            qrsPosition = position;
+            qrsSampleIndex = packet.sampleIndex[i];
+          }
+        }else if (inQrs){
+          inQrs = false;
+          onQrs();
+        }
+      }
+    }
+
+    private void onQrs(){
+      // 200ms refractory period
+      if (lastPeakPosition >= 0 && qrsPosition - lastPeakPosition < sampleRate / 5){
+        return;
+      }
+      if (lastPeakPosition >= 0){
+        long interval = qrsPosition - lastPeakPosition;
+        rr.add(interval);
+        rrIntervals.add(interval * 1000.0 / sampleRate);
+      }
+      lastPeakPosition = quietSincePosition = qrsPosition;
+      peaks.add(qrsSampleIndex);
+      signalPeak = 0.875 * signalPeak + 0.125 * qrsEnergy;
+    }
+
+    /**
+     * Beats per minute from the median RR interval, -1 if unknown.
+     */
+    double heartRate(){
+      return rr.perMinute(sampleRate);
+    }
+
+    @Override
+    boolean putFeatures(WritableMap result) {
+      result.putDouble("heartRate", heartRate());
+      WritableArray peakArray = Arguments.createArray();
+      for (int peak : peaks){
+        peakArray.pushInt(peak);
+      }
+      WritableArray intervalArray = Arguments.createArray();
+      for (double interval : rrIntervals){
+        intervalArray.pushDouble(interval);
+      }
+      result.putArray("rPeaks", peakArray);
+      result.putArray("rrIntervalsMs", intervalArray);
+      peaks.clear();
+      rrIntervals.clear();
+      return true;
+    }
+  }
+
+  static final class BreathingRate extends FeatureExtractor {
+    private int sampleRate;
+    private double smoothAlpha;
+    private double baselineAlpha;
+    private double smooth;
+    private double baseline;
+    private double amplitude;
+    private long position;
+    private boolean started;
+    private boolean high;
+    private long lastBreathPosition = -1;
+    // since the last event
+    int breaths;
+    private final Intervals intervals = new Intervals(5);
+
+    BreathingRate(String deviceMac, int dataType, Options options) {
+      super(deviceMac, dataType, options);
+    }
+
+    @Override
+    void reset(int sampleRate, int channelCount) {
+      this.sampleRate = sampleRate;
+      // 0.5 second smoothing, 8 second baseline and amplitude
+      smoothAlpha = 1 / (0.5 * sampleRate + 1);
+      baselineAlpha = 1 / (8.0 * sampleRate + 1);
+      position = 0;
+      started = high = false;
+      lastBreathPosition = -1;
+      intervals.clear();
+    }
+
+    @Override
+    void process(SamplePacket packet) {
+      for (int i = 0; i < packet.sampleCount; ++i, ++position){
+        boolean missing = isMissing(packet, i);
+        if (!started){
+          if (missing){
+            continue;
+          }
+          smooth = baseline = packet.data[i];
+          amplitude = 0;
+          started = true;
+        }
+        // held at the smoothed value
+        double sample = missing ? smooth : packet.data[i];
+        smooth += smoothAlpha * (sample - smooth);
+        baseline += baselineAlpha * (smooth - baseline);
+        double value = smooth - baseline;
+        amplitude += baselineAlpha * (Math.abs(value) - amplitude);
+        double hysteresis = 0.3 * amplitude;
+        if (!high && value > hysteresis && amplitude > 0){
+          high = true;
+          // at most 40 breaths per minute
+          if (lastBreathPosition < 0 || position - lastBreathPosition >= sampleRate * 3 / 2){
+            if (lastBreathPosition >= 0){
+              intervals.add(position - lastBreathPosition);
+            }
+            lastBreathPosition = position;
+            ++breaths;
+          }
+        }else if (high && value < -hysteresis){
+          high = false;
+        }
+      }
+      if (lastBreathPosition >= 0 && position - lastBreathPosition > 20L * sampleRate){
+        // no breath for 20 seconds, the last rate is stale
+        intervals.clear();
+      }
+    }
+
+    /**
+     * Breaths per minute from the median interval, -1 if unknown.
+     */
+    double breathingRate(){
+      return intervals.perMinute(sampleRate);
+    }
+
+    @Override
+    boolean putFeatures(WritableMap result) {
+      result.putDouble("breathingRate", breathingRate());
+      result.putInt("breaths", breaths);
+      breaths = 0;
+      return true;
+    }
+  }
+
+  static final class Orientation extends FeatureExtractor {
+    private double pitch;
+    private double roll;
+    private double yaw;
+    private boolean hasTilt;
+
+    Orientation(String deviceMac, int dataType, Options options) {
+      super(deviceMac, dataType, options);
+    }
+
+    @Override
+    void reset(int sampleRate, int channelCount) {
+      pitch = roll = yaw = 0;
+      hasTilt = false;
+    }
+
+    @Override
+    void process(SamplePacket packet) {
+      if (packet.channelCount < 3){
+        return;
+      }
+      int count = packet.sampleCount;
+      double dt = 1.0 / packet.sampleRate;
+      if (packet.dataType == SensorData.NTF_GYO_DATA){
+        // deg/s
+        for (int i = 0; i < count; ++i){
+          if (isMissing(packet, i) || isMissing(packet, count + i) || isMissing(packet, 2 * count + i)){
+            continue;
+          }
+          roll += packet.data[i] * dt;
+          pitch += packet.data[count + i] * dt;
+          yaw += packet.data[2 * count + i] * dt;
+        }
+        return;
+      }
+      double alpha = options.timeConstant / (options.timeConstant + dt);
+      for (int i = 0; i < count; ++i){
+        if (isMissing(packet, i) || isMissing(packet, count + i) || isMissing(packet, 2 * count + i)){
+          continue;
+        }
+        double x = packet.data[i];
+        double y = packet.data[count + i];
+        double z = packet.data[2 * count + i];
+        if (x == 0 && y == 0 && z == 0){
+          continue;
+        }
+        double tiltPitch = Math.toDegrees(Math.atan2(-x, Math.sqrt(y * y + z * z)));
+        double tiltRoll = Math.toDegrees(Math.atan2(y, z));
+        if (!hasTilt){
+          pitch = tiltPitch;
+          roll = tiltRoll;
+          hasTilt = true;
+          continue;
+        }
+        pitch = alpha * pitch + (1 - alpha) * tiltPitch;
+        roll = alpha * unwrap(roll, tiltRoll) + (1 - alpha) * tiltRoll;
+      }
+    }
+
+    /**
+     * angle moved by whole turns to within 180 degrees of reference.
+     */
+    private static double unwrap(double angle, double reference){
+      while (angle - reference > 180){
+        angle -= 360;
+      }
+      while (angle - reference < -180){
+        angle += 360;
+      }
+      return angle;
+    }
+
+    @Override
+    boolean putFeatures(WritableMap result) {
+      result.putDouble("pitch", pitch);
+      result.putDouble("roll", unwrap(roll, 0));
+      result.putDouble("yaw", unwrap(yaw, 0));
+      return true;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Credit based delivery of one device: every GOT_DATA carries a seq that JS acks once handled, the events sent
+ * and not acked yet are the consumer lag. Above maxInFlight the delivery steps down one mode at a time, at or
+ * below resumeInFlight for recoverMs it steps back up. Beyond 4 * maxInFlight batches are dropped, not queued,
+ * until an ack comes in. Events left unacked for ackTimeoutMs, or whose listener is gone, are taken as handled.
+ * Only what is sent to JS is degraded, recording and sample streams get every packet.
+ */
+final class FlowControl {
+  static final int MODE_FULL = 0;
+  // packages merged into one event every coalesceMs
+  static final int MODE_COALESCED = 1;
+  // coalesced, every decimate-th sample
+  static final int MODE_DECIMATED = 2;
+  // coalesced, min/max/mean per channel only
+  static final int MODE_SUMMARY = 3;
+
+  static final class Options {
+    int maxInFlight = 4;
+    int resumeInFlight = 1;
+    long recoverNanos = TimeUnit.SECONDS.toNanos(1);
+    long coalesceNanos = TimeUnit.MILLISECONDS.toNanos(250);
+    long ackTimeoutNanos = TimeUnit.SECONDS.toNanos(5);
+    int decimate = 4;
+    int maxMode = MODE_SUMMARY;
+
+    static Options parse(ReadableMap map){
+      Options options = new Options();
+      options.maxInFlight = (int) getDouble(map, "maxInFlight", options.maxInFlight);
+      options.resumeInFlight = (int) getDouble(map, "resumeInFlight", options.resumeInFlight);
+      options.recoverNanos = (long) (getDouble(map, "recoverMs", 1000) * TimeUnit.MILLISECONDS.toNanos(1));
+      options.coalesceNanos = (long) (getDouble(map, "coalesceMs", 250) * TimeUnit.MILLISECONDS.toNanos(1));
+      options.ackTimeoutNanos = (long) (getDouble(map, "ackTimeoutMs", 5000) * TimeUnit.MILLISECONDS.toNanos(1));
+      options.decimate = (int) getDouble(map, "decimate", options.decimate);
+      options.maxMode = (int) getDouble(map, "maxMode", options.maxMode);
+      if (options.maxInFlight < 1 || options.resumeInFlight < 0 || options.resumeInFlight >= options.maxInFlight){
+        throw new IllegalArgumentException("needs 0 <= resumeInFlight < maxInFlight");
+      }
+      if (options.coalesceNanos <= 0 || options.recoverNanos < 0){
+        throw new IllegalArgumentException("coalesceMs needs > 0 and recoverMs >= 0");
+      }
+      if (options.ackTimeoutNanos <= 0){
+        throw new IllegalArgumentException("ackTimeoutMs needs > 0");
+      }
+      if (options.decimate < 1){
+        throw new IllegalArgumentException("decimate needs >= 1");
+      }
+      if (options.maxMode < MODE_FULL || options.maxMode > MODE_SUMMARY){
+        throw new IllegalArgumentException("invalid maxMode");
+      }
+      return options;
+    }
+
+    private static double getDouble(ReadableMap map, String key, double defaultValue){
+      return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : defaultValue;
+    }
+  }
+
+  final Options options;
+  // written by the JS thread
+  private final AtomicLong acked = new AtomicLong();
+  // the fields below are only used on the serializer thread
+  private long sent;
+  private int mode = MODE_FULL;
+  private long changedNanos;
+  private long calmSinceNanos;
+  private long saturatedSinceNanos;
+  private long saturatedAcked;
+
+  FlowControl(Options options) {
+    this.options = options;
+  }
+
+  /**
+   * Seq of the next event, call sent once it is delivered.
+   */
+  long nextSeq(){
+    return sent + 1;
+  }
+
+  void sent(long seq){
+    sent = seq;
+  }
+
+  void ack(long seq){
+    long current = acked.get();
+    while (seq > current && !acked.compareAndSet(current, seq)){
+      current = acked.get();
+    }
+  }
+
+  int inFlight(){
+    return (int) Math.max(0, sent - acked.get());
+  }
+
+  int mode(){
+    return mode;
+  }
+
+  /**
+   * True while 4 * maxInFlight events are not acked. With no ack for ackTimeoutMs they are taken as handled.
+   */
+  boolean isSaturated(long nowNanos){
+    if (inFlight() < 4 * options.maxInFlight){
+      saturatedSinceNanos = 0;
+      return false;
+    }
+    long current = acked.get();
+    if (saturatedSinceNanos == 0 || current != saturatedAcked){
+      saturatedSinceNanos = nowNanos;
+      saturatedAcked = current;
+      return true;
+    }
+    if (nowNanos - saturatedSinceNanos < options.ackTimeoutNanos){
+      return true;
+    }
+    reset();
+    return false;
+  }
+
+  /**
+   * Takes every event sent as acked, for when JS won't ack them anymore.
+   */
+  void reset(){
+    ack(sent);
+    saturatedSinceNanos = 0;
+  }
+
+  /**
+   * Moves the mode by at most one step, returns true if it changed.
+   * A step down waits for the previous mode to have been tried for coalesceMs.
+   */
+  boolean update(long nowNanos){
+    int inFlight = inFlight();
+    if (inFlight > options.maxInFlight){
+      calmSinceNanos = 0;
+      if (mode < options.maxMode && nowNanos - changedNanos >= options.coalesceNanos){
+        ++mode;
+        changedNanos = nowNanos;
+        return true;
+      }
+      return false;
+    }
+    if (inFlight > options.resumeInFlight || mode == MODE_FULL){
+      calmSinceNanos = 0;
+      return false;
+    }
+    if (calmSinceNanos == 0){
+      calmSinceNanos = nowNanos;
+    }
+    if (nowNanos - calmSinceNanos < options.recoverNanos){
+      return false;
+    }
+    --mode;
+    changedNanos = calmSinceNanos = nowNanos;
+    return true;
+  }
+}
@@ -0,0 +1,189 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges one data type of several devices into GOT_FRAME events on a shared host timeline.
+ * Sample k of a device is placed at anchor + k / sampleRate, the anchor is taken from the arrival time of its first packet.
+ * Only used on the serializer thread.
+ */
+final class FrameAggregator {
+  private static final long REANCHOR_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+  private static final long MIN_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final class Member {
+    final String deviceMac;
+    SampleRingBuffer samples;
+    int sampleRate;
+    long periodNanos;
+    long firstSampleNanos;
+
+    Member(String deviceMac) {
+      this.deviceMac = deviceMac;
+    }
+
+    long endNanos(){
+      return samples == null ? Long.MIN_VALUE : firstSampleNanos + samples.size() * periodNanos;
+    }
+  }
+
+  interface FrameSink {
+    void onFrame(WritableMap frame);
+  }
+
+  final String groupId;
+  final int dataType;
+  private final long windowNanos;
+  private final long graceNanos;
+  private final long startNanos;
+  private final Member[] members;
+  private long frameIndex;
+
+  FrameAggregator(String groupId, String[] deviceMacs, int dataType, long windowNanos, long nowNanos) {
+    this.groupId = groupId;
+    this.dataType = dataType;
+    this.windowNanos = windowNanos;
+    this.graceNanos = Math.max(windowNanos, MIN_GRACE_NANOS);
+    this.startNanos = nowNanos;
+    members = new Member[deviceMacs.length];
+    for (int i = 0; i < deviceMacs.length; ++i){
+      members[i] = new Member(deviceMacs[i]);
+    }
+  }
+
+  void append(SamplePacket packet){
+    if (packet.dataType != dataType || packet.sampleRate <= 0){
+      return;
+    }
+    Member member = findMember(packet.deviceMac);
+    if (member == null){
+      return;
+    }
+    if (member.samples == null || member.samples.channelCount() != packet.channelCount
+      || member.sampleRate != packet.sampleRate){
+      member.samples = new SampleRingBuffer(packet.channelCount, packet.hasImpedance());
+      member.sampleRate = packet.sampleRate;
+      member.periodNanos = TimeUnit.SECONDS.toNanos(1) / packet.sampleRate;
+    }
+    long estimatedNanos = packet.receivedNanos - (packet.sampleCount - 1) * member.periodNanos;
+    if (member.samples.size() == 0 && Math.abs(estimatedNanos - member.endNanos()) > REANCHOR_NANOS){
+      member.firstSampleNanos = estimatedNanos;
+    }
+    member.samples.append(packet);
+    dropBefore(member, windowStartNanos());
+  }
+
+  /**
+   * Emits every frame that is complete or overdue, returns nanoseconds until the next frame is due.
+   */
+  long poll(long nowNanos, FrameSink sink){
+    while (true){
+      long windowEnd = windowStartNanos() + windowNanos;
+      if (nowNanos < windowEnd + graceNanos && !isComplete(windowEnd)){
+        return windowEnd + graceNanos - nowNanos;
+      }
+      if (isEmpty(windowEnd)){
+        // nothing arrived for this window, skip ahead instead of sending empty frames
+        frameIndex = Math.max(frameIndex + 1, nextDataWindow(nowNanos));
+        continue;
+      }
+      sink.onFrame(buildFrame(windowEnd));
+      ++frameIndex;
+    }
+  }
+
+  private long windowStartNanos(){
+    return startNanos + frameIndex * windowNanos;
+  }
+
+  private boolean isComplete(long windowEnd){
+    for (Member member : members){
+      if (member.endNanos() < windowEnd){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isEmpty(long windowEnd){
+    for (Member member : members){
+      if (samplesBefore(member, windowEnd) > 0){
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private long nextDataWindow(long nowNanos){
+    long window = (nowNanos - graceNanos - startNanos) / windowNanos;
+    for (Member member : members){
+      if (member.samples != null && member.samples.size() > 0){
+        window = Math.min(window, (member.firstSampleNanos - startNanos) / windowNanos);
+      }
+    }
+    return window;
+  }
+
+  private Member findMember(String deviceMac){
+    for (Member member : members){
+      if (member.deviceMac.equals(deviceMac)){
+        return member;
+      }
+    }
+    return null;
+  }
+
+  private static int samplesBefore(Member member, long nanos){
+    if (member.samples == null || nanos <= member.firstSampleNanos){
+      return 0;
+    }
+    long count = (nanos - member.firstSampleNanos + member.periodNanos - 1) / member.periodNanos;
+    return (int) Math.min(count, member.samples.size());
+  }
+
+  private static void dropBefore(Member member, long nanos){
+    int count = samplesBefore(member, nanos);
+    if (count > 0){
+      member.samples.consume(count);
+      member.firstSampleNanos += count * member.periodNanos;
+    }
+  }
+
+  private WritableMap buildFrame(long windowEnd){
+    long windowStart = windowEnd - windowNanos;
+    WritableMap frame = Arguments.createMap();
+    frame.putString("groupId", groupId);
+    frame.putInt("dataType", dataType);
+    frame.putDouble("frameIndex", frameIndex);
+    frame.putDouble("timeStampInMs", TimeUnit.NANOSECONDS.toMillis(windowStart));
+    frame.putDouble("windowMs", windowNanos / 1e6);
+
+    WritableArray devices = Arguments.createArray();
+    for (Member member : members){
+      WritableMap device = Arguments.createMap();
+      device.putString("deviceMac", member.deviceMac);
+      int sampleCount = samplesBefore(member, windowEnd);
+      device.putInt("sampleCount", sampleCount);
+      if (member.samples == null || sampleCount == 0){
+        device.putBoolean("missing", true);
+        devices.pushMap(device);
+        continue;
+      }
+      device.putInt("sampleRate", member.sampleRate);
+      device.putInt("channelCount", member.samples.channelCount());
+      device.putInt("firstSampleIndex", member.samples.sampleIndex(0, 0));
+      device.putDouble("offsetMs", (member.firstSampleNanos - windowStart) / 1e6);
+      device.putArray("gaps", SamplePacker.lostRuns(member.samples, 0, sampleCount));
+      device.putString("buffer", SamplePacker.encodeColumns(member.samples, 0, sampleCount));
+      member.samples.consume(sampleCount);
+      member.firstSampleNanos += sampleCount * member.periodNanos;
+      devices.pushMap(device);
+    }
+    frame.putArray("devices", devices);
+    return frame;
+  }
+}
@@ -0,0 +1,98 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Markers of one device and data type, on the serializer thread.
+ *
+ * A marker is stamped with the host elapsed realtime when it is pushed, and mapped to the nearest sampleIndex by
+ * the ClockModel of the stream once a packet at or after that index arrived, so the fit is as fresh as it gets.
+ * Mapped markers wait for the GOT_DATA batch holding their sampleIndex.
+ */
+final class MarkerQueue {
+  static final class Marker {
+    final int dataType;
+    final int code;
+    final long elapsedNanos;
+    int sampleIndex;
+
+    Marker(int dataType, int code, long elapsedNanos) {
+      this.dataType = dataType;
+      this.code = code;
+      this.elapsedNanos = elapsedNanos;
+    }
+  }
+
+  // markers not sent yet, oldest dropped beyond this
+  private static final int MAX_PENDING = 256;
+
+  private final ArrayList<Marker> pending = new ArrayList<>();
+  private final ArrayList<Marker> mapped = new ArrayList<>();
+
+  void add(Marker marker){
+    if (pending.size() == MAX_PENDING){
+      pending.remove(0);
+    }
+    pending.add(marker);
+  }
+
+  /**
+   * Maps the pending markers at or before lastSampleIndex, returns them or null if there are none.
+   */
+  List<Marker> map(ClockModel clock, int lastSampleIndex){
+    if (pending.isEmpty() || !clock.isReady()){
+      return null;
+    }
+    ArrayList<Marker> result = null;
+    for (int i = 0; i < pending.size(); ){
+      Marker marker = pending.get(i);
+      int sampleIndex = clock.sampleIndexAt(marker.elapsedNanos);
+      if (sampleIndex - lastSampleIndex > 0){
+        ++i;
+        continue;
+      }
+      pending.remove(i);
+      marker.sampleIndex = sampleIndex;
+      if (mapped.size() == MAX_PENDING){
+        mapped.remove(0);
+      }
+      mapped.add(marker);
+      if (result == null){
+        result = new ArrayList<>();
+      }
+      result.add(marker);
+    }
+    return result;
+  }
+
+  /**
+   * Takes the mapped markers at or before lastSampleIndex as [sampleIndex, code, sampleIndex, code, ...],
+   * null if there are none.
+   */
+  WritableArray drain(int lastSampleIndex){
+    WritableArray result = null;
+    for (int i = 0; i < mapped.size(); ){
+      Marker marker = mapped.get(i);
+      if (marker.sampleIndex - lastSampleIndex > 0){
+        ++i;
+        continue;
+      }
+      mapped.remove(i);
+      if (result == null){
+        result = Arguments.createArray();
+      }
+      result.pushInt(marker.sampleIndex);
+      result.pushInt(marker.code);
+    }
+    return result;
+  }
+
+  void clear(){
+    pending.clear();
+    mapped.clear();
+  }
+}
@@ -0,0 +1,102 @@
+package com.synchronisdk;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free single producer / single consumer queue of one device.
+ * DROP_OLDEST lets the producer advance head, so the consumer claims slots with a CAS and retries when it loses.
+ */
+final class PacketQueue {
+  static final int DROP_OLDEST = 0;
+  static final int DROP_NEWEST = 1;
+  static final int BLOCK = 2;
+
+  static final int DEFAULT_CAPACITY = 256;
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final AtomicReferenceArray<SamplePacket> slots;
+  private final int capacity;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  final AtomicLong droppedPackets;
+  volatile int overflowPolicy;
+  volatile int highWater;
+  volatile boolean closed;
+
+  PacketQueue(int capacity, int overflowPolicy, long droppedPackets) {
+    int size = 1;
+    while (size < capacity){
+      size <<= 1;
+    }
+    this.slots = new AtomicReferenceArray<>(size);
+    this.capacity = size;
+    this.mask = size - 1;
+    this.overflowPolicy = overflowPolicy;
+    this.droppedPackets = new AtomicLong(droppedPackets);
+  }
+
+  int capacity(){
+    return capacity;
+  }
+
+  int size(){
+    return (int) Math.max(0, tail.get() - head.get());
+  }
+
+  /**
+   * Producer side, returns false if the packet was dropped.
+   */
+  boolean offer(SamplePacket packet){
+    long t = tail.get();
+    while (true){
+      long h = head.get();
+      if (t - h < capacity){
+        break;
+      }
+      if (closed){
+        droppedPackets.incrementAndGet();
+        return false;
+      }
+      int policy = overflowPolicy;
+      if (policy == DROP_NEWEST){
+        droppedPackets.incrementAndGet();
+        return false;
+      }else if (policy == DROP_OLDEST){
+        if (head.compareAndSet(h, h + 1)){
+          droppedPackets.incrementAndGet();
+        }
+      }else{
+        LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+      }
+    }
+    slots.set((int) t & mask, packet);
+    tail.lazySet(t + 1);
+    int depth = (int) (t + 1 - head.get());
+    if (depth > highWater){
+      highWater = depth;
+    }
+    return true;
+  }
+
+  /**
+   * Consumer side, returns null when empty.
+   */
+  SamplePacket poll(){
+    while (true){
+      long h = head.get();
+      if (h >= tail.get()){
+        return null;
+      }
+      int slot = (int) h & mask;
+      SamplePacket packet = slots.get(slot);
+      if (head.compareAndSet(h, h + 1)){
+        slots.compareAndSet(slot, packet, null);
+        return packet;
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.sensor.SensorProfile;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Commands sent to devices whose promise is not settled yet.
+ * A command settles once: by its SDK callback, by its timeout on the scheduler, or by cancel.
+ * Whatever comes later is dropped, so a dead device never holds a promise longer than its timeout.
+ */
+final class PendingCommands {
+  static final int DEFAULT_TIMEOUT = 50000;
+  static final String DEFAULT_KEY = "default";
+
+  abstract static class Command implements SensorProfile.Callback {
+    final String method;
+    final Promise promise;
+    private final AtomicBoolean settled = new AtomicBoolean();
+    PendingCommands owner;
+    String deviceMac;
+    volatile ScheduledFuture<?> timeout;
+
+    Command(String method, Promise promise) {
+      this.method = method;
+      this.promise = promise;
+    }
+
+    @Override
+    public final void gotResult(int result, String errorMsg) {
+      if (settle()){
+        onResult(result, errorMsg);
+      }
+    }
+
+    /**
+     * Settles the promise from the SDK result, called at most once.
+     */
+    abstract void onResult(int result, String errorMsg);
+
+    void fail(String errorMsg){
+      if (settle()){
+        promise.reject(method, errorMsg);
+      }
+    }
+
+    private boolean settle(){
+      if (!settled.compareAndSet(false, true)){
+        return false;
+      }
+      if (timeout != null){
+        timeout.cancel(false);
+      }
+      if (owner != null){
+        ConcurrentLinkedQueue<Command> commands = owner.pending.get(deviceMac);
+        if (commands != null){
+          commands.remove(this);
+        }
+      }
+      return true;
+    }
+  }
+
+  private final Scheduler scheduler;
+  private final ConcurrentHashMap<String, ConcurrentLinkedQueue<Command>> pending = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, HashMap<String, Integer>> timeouts = new ConcurrentHashMap<>();
+
+  PendingCommands(Scheduler scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Replaces the timeouts of deviceMac, keyed by method name or "default", values in milliseconds.
+   */
+  void setTimeouts(String deviceMac, ReadableMap config){
+    HashMap<String, Integer> deviceTimeouts = new HashMap<>();
+    ReadableMapKeySetIterator iterator = config.keySetIterator();
+    while (iterator.hasNextKey()){
+      String key = iterator.nextKey();
+      int timeoutMs = config.isNull(key) ? 0 : (int) config.getDouble(key);
+      if (timeoutMs <= 0){
+        throw new IllegalArgumentException(key + " needs a timeout > 0");
+      }
+      deviceTimeouts.put(key, timeoutMs);
+    }
+    if (deviceTimeouts.isEmpty()){
+      timeouts.remove(deviceMac);
+    }else{
+      timeouts.put(deviceMac, deviceTimeouts);
+    }
+  }
+
+  int timeoutOf(String deviceMac, String method){
+    HashMap<String, Integer> deviceTimeouts = timeouts.get(deviceMac);
+    if (deviceTimeouts == null){
+      return DEFAULT_TIMEOUT;
+    }
+    Integer timeoutMs = deviceTimeouts.get(method);
+    if (timeoutMs == null){
+      timeoutMs = deviceTimeouts.get(DEFAULT_KEY);
+    }
+    return timeoutMs != null ? timeoutMs : DEFAULT_TIMEOUT;
+  }
+
+  /**
+   * Registers the command and starts its timeout, returns it to be passed to the SDK.
+   */
+  <T extends Command> T track(String deviceMac, int timeoutMs, final T command){
+    command.owner = this;
+    command.deviceMac = deviceMac;
+    ConcurrentLinkedQueue<Command> commands = pending.get(deviceMac);
+    if (commands == null){
+      ConcurrentLinkedQueue<Command> created = new ConcurrentLinkedQueue<>();
+      commands = pending.putIfAbsent(deviceMac, created);
+      if (commands == null){
+        commands = created;
+      }
+    }
+    commands.add(command);
+    command.timeout = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        command.fail("timeout");
+      }
+    }, timeoutMs);
+    return command;
+  }
+
+  /**
+   * Rejects the pending commands of deviceMac, only those of method if it is not empty.
+   * Returns the number of commands rejected.
+   */
+  int cancel(String deviceMac, String method, String errorMsg){
+    ConcurrentLinkedQueue<Command> commands = pending.get(deviceMac);
+    if (commands == null){
+      return 0;
+    }
+    int count = 0;
+    Iterator<Command> iterator = commands.iterator();
+    while (iterator.hasNext()){
+      Command command = iterator.next();
+      if (method == null || method.isEmpty() || method.equals(command.method)){
+        if (command.settle()){
+          command.promise.reject(command.method, errorMsg);
+          ++count;
+        }
+      }
+    }
+    return count;
+  }
+
+  void cancelAll(String errorMsg){
+    for (String deviceMac : pending.keySet()){
+      cancel(deviceMac, null, errorMsg);
+    }
+  }
+}
@@ -0,0 +1,352 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filters applied to the samples of one device and data type on the serializer thread, before packaging.
+ * Stages are built on the first packet, and rebuilt when sample rate or channel count change.
+ * Frequencies are checked against the Nyquist rate of their stage then, or earlier by check when the rate is known,
+ * and so is a decimate factor that doesn't divide the rate.
+ *
+ * Config is an array of stages:
+ *   { type: "notch", frequency: 50, q: 30 }
+ *   { type: "bandpass", low: 1, high: 40 }
+ *   { type: "dcRemoval", cutoff: 0.5 }
+ *   { type: "movingAverage", length: 5 }
+ *   { type: "decimate", factor: 4 }
+ */
+final class ProcessingChain {
+  private static final double BUTTERWORTH_Q = 0.7071;
+
+  private static final class StageConfig {
+    final String type;
+    final double frequency;
+    final double high;
+    final double q;
+    final int length;
+
+    StageConfig(String type, double frequency, double high, double q, int length) {
+      this.type = type;
+      this.frequency = frequency;
+      this.high = high;
+      this.q = q;
+      this.length = length;
+    }
+  }
+
+  private interface Stage {
+    /**
+     * Filters count samples of one channel in place, returns the number of samples kept.
+     */
+    int process(int channel, float[] data, int[] sampleIndex, boolean[] lost, int offset, int count);
+
+    int outputSampleRate(int sampleRate);
+  }
+
+  private final List<StageConfig> configs;
+  private Stage[] stages;
+  private int sampleRate;
+  private int channelCount;
+
+  private ProcessingChain(List<StageConfig> configs) {
+    this.configs = configs;
+  }
+
+  static ProcessingChain parse(ReadableArray config){
+    List<StageConfig> configs = new ArrayList<>();
+    for (int i = 0; i < config.size(); ++i){
+      ReadableMap stage = config.getMap(i);
+      String type = stage.hasKey("type") ? stage.getString("type") : null;
+      if ("notch".equals(type)){
+        double frequency = getDouble(stage, "frequency", 50);
+        double q = getDouble(stage, "q", 30);
+        if (frequency <= 0 || q <= 0){
+          throw new IllegalArgumentException("notch needs frequency > 0 and q > 0");
+        }
+        configs.add(new StageConfig(type, frequency, 0, q, 0));
+      }else if ("bandpass".equals(type)){
+        double low = getDouble(stage, "low", 0);
+        double high = getDouble(stage, "high", 0);
+        if (low <= 0 || high <= low){
+          throw new IllegalArgumentException("bandpass needs 0 < low < high");
+        }
+        configs.add(new StageConfig(type, low, high, BUTTERWORTH_Q, 0));
+      }else if ("dcRemoval".equals(type)){
+        double cutoff = getDouble(stage, "cutoff", 0.5);
+        if (cutoff <= 0){
+          throw new IllegalArgumentException("dcRemoval needs cutoff > 0");
+        }
+        configs.add(new StageConfig(type, cutoff, 0, 0, 0));
+      }else if ("movingAverage".equals(type) || "decimate".equals(type)){
+        int length = (int) getDouble(stage, "movingAverage".equals(type) ? "length" : "factor", 0);
+        if (length < 1){
+          throw new IllegalArgumentException(type + " needs a length or factor >= 1");
+        }
+        configs.add(new StageConfig(type, 0, 0, 0, length));
+      }else{
+        throw new IllegalArgumentException("unknown stage: " + type);
+      }
+    }
+    return new ProcessingChain(configs);
+  }
+
+  private static double getDouble(ReadableMap map, String key, double defaultValue){
+    return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : defaultValue;
+  }
+
+  /**
+   * Returns a filtered copy of the packet, the input packet is left untouched for recording.
+   */
+  SamplePacket process(SamplePacket packet){
+    if (configs.isEmpty() || packet.hasImpedance() || packet.sampleRate <= 0){
+      return packet;
+    }
+    if (stages == null || sampleRate != packet.sampleRate || channelCount != packet.channelCount){
+      build(packet.sampleRate, packet.channelCount);
+    }
+    int count = packet.sampleCount;
+    float[] data = packet.data.clone();
+    int[] sampleIndex = packet.sampleIndex.clone();
+    boolean[] lost = packet.lost.clone();
+
+    int outputCount = count;
+    int outputRate = packet.sampleRate;
+    for (Stage stage : stages){
+      int kept = outputCount;
+      for (int channel = 0; channel < channelCount; ++channel){
+        kept = stage.process(channel, data, sampleIndex, lost, channel * count, outputCount);
+      }
+      outputCount = kept;
+      outputRate = stage.outputSampleRate(outputRate);
+    }
+    if (outputCount != count){
+      data = compact(data, count, outputCount);
+      sampleIndex = compact(sampleIndex, count, outputCount);
+      lost = compact(lost, count, outputCount);
+    }
+    return new SamplePacket(packet, outputRate, outputCount, data, sampleIndex, lost);
+  }
+
+  /**
+   * Throws IllegalArgumentException if a stage does not fit sampleRate.
+   */
+  void check(int sampleRate){
+    createStages(configs, sampleRate, 1);
+  }
+
+  private void build(int sampleRate, int channelCount){
+    this.sampleRate = sampleRate;
+    this.channelCount = channelCount;
+    stages = createStages(configs, sampleRate, channelCount);
+  }
+
+  private static Stage[] createStages(List<StageConfig> configs, int sampleRate, int channelCount){
+    Stage[] built = new Stage[configs.size()];
+    int rate = sampleRate;
+    for (int i = 0; i < built.length; ++i){
+      built[i] = createStage(configs.get(i), rate, channelCount);
+      rate = built[i].outputSampleRate(rate);
+    }
+    return built;
+  }
+
+  private static Stage createStage(StageConfig config, int sampleRate, int channelCount){
+    double nyquist = sampleRate / 2.0;
+    if (!"movingAverage".equals(config.type) && !"decimate".equals(config.type)
+      && Math.max(config.frequency, config.high) >= nyquist){
+      throw new IllegalArgumentException(config.type + " needs frequencies < " + nyquist + " Hz at " + sampleRate + " Hz");
+    }
+    // the rate sent on is an int, it has to stay exact
+    if ("decimate".equals(config.type) && sampleRate % config.length != 0){
+      throw new IllegalArgumentException("decimate needs a factor dividing " + sampleRate + " Hz");
+    }
+    if ("notch".equals(config.type)){
+      Biquad[][] sections = new Biquad[channelCount][1];
+      for (int channel = 0; channel < channelCount; ++channel){
+        sections[channel][0] = Biquad.notch(sampleRate, config.frequency, config.q);
+      }
+      return new BiquadStage(sections);
+    }else if ("bandpass".equals(config.type)){
+      double high = Math.min(config.high, sampleRate * 0.45);
+      Biquad[][] sections = new Biquad[channelCount][2];
+      for (int channel = 0; channel < channelCount; ++channel){
+        sections[channel][0] = Biquad.highPass(sampleRate, config.frequency, config.q);
+        sections[channel][1] = Biquad.lowPass(sampleRate, high, config.q);
+      }
+      return new BiquadStage(sections);
+    }else if ("dcRemoval".equals(config.type)){
+      return new DcRemovalStage(channelCount, sampleRate, config.frequency);
+    }else if ("movingAverage".equals(config.type)){
+      return new MovingAverageStage(channelCount, config.length);
+    }else{
+      return new DecimateStage(channelCount, sampleRate, config.length);
+    }
+  }
+
+  private static float[] compact(float[] values, int stride, int count){
+    float[] result = new float[values.length / stride * count];
+    for (int channel = 0; channel * stride < values.length; ++channel){
+      System.arraycopy(values, channel * stride, result, channel * count, count);
+    }
+    return result;
+  }
+
+  private static int[] compact(int[] values, int stride, int count){
+    int[] result = new int[values.length / stride * count];
+    for (int channel = 0; channel * stride < values.length; ++channel){
+      System.arraycopy(values, channel * stride, result, channel * count, count);
+    }
+    return result;
+  }
+
+  private static boolean[] compact(boolean[] values, int stride, int count){
+    boolean[] result = new boolean[values.length / stride * count];
+    for (int channel = 0; channel * stride < values.length; ++channel){
+      System.arraycopy(values, channel * stride, result, channel * count, count);
+    }
+    return result;
+  }
+
+  /**
+   * Lost samples are fed with the previous input so they don't ring through the filter.
+   */
+  private static final class BiquadStage implements Stage {
+    private final Biquad[][] sections;
+    private final float[] lastInput;
+
+    BiquadStage(Biquad[][] sections) {
+      this.sections = sections;
+      this.lastInput = new float[sections.length];
+    }
+
+    @Override
+    public int process(int channel, float[] data, int[] sampleIndex, boolean[] lost, int offset, int count) {
+      Biquad[] channelSections = sections[channel];
+      for (int i = offset; i < offset + count; ++i){
+        double value = lost[i] ? lastInput[channel] : data[i];
+        lastInput[channel] = (float) value;
+        for (Biquad section : channelSections){
+          value = section.process(value);
+        }
+        data[i] = (float) value;
+      }
+      return count;
+    }
+
+    @Override
+    public int outputSampleRate(int sampleRate) {
+      return sampleRate;
+    }
+  }
+
+  private static final class DcRemovalStage implements Stage {
+    private final double r;
+    private final double[] lastInput;
+    private final double[] lastOutput;
+
+    DcRemovalStage(int channelCount, int sampleRate, double cutoff) {
+      r = Math.max(0, 1 - 2 * Math.PI * cutoff / sampleRate);
+      lastInput = new double[channelCount];
+      lastOutput = new double[channelCount];
+    }
+
+    @Override
+    public int process(int channel, float[] data, int[] sampleIndex, boolean[] lost, int offset, int count) {
+      for (int i = offset; i < offset + count; ++i){
+        double x = lost[i] ? lastInput[channel] : data[i];
+        double y = x - lastInput[channel] + r * lastOutput[channel];
+        lastInput[channel] = x;
+        lastOutput[channel] = y;
+        data[i] = (float) y;
+      }
+      return count;
+    }
+
+    @Override
+    public int outputSampleRate(int sampleRate) {
+      return sampleRate;
+    }
+  }
+
+  private static final class MovingAverageStage implements Stage {
+    private final float[][] history;
+    private final double[] sum;
+    private final int[] position;
+
+    MovingAverageStage(int channelCount, int length) {
+      history = new float[channelCount][length];
+      sum = new double[channelCount];
+      position = new int[channelCount];
+    }
+
+    @Override
+    public int process(int channel, float[] data, int[] sampleIndex, boolean[] lost, int offset, int count) {
+      float[] window = history[channel];
+      for (int i = offset; i < offset + count; ++i){
+        float x = lost[i] ? window[(position[channel] + window.length - 1) % window.length] : data[i];
+        sum[channel] += x - window[position[channel]];
+        window[position[channel]] = x;
+        position[channel] = (position[channel] + 1) % window.length;
+        data[i] = (float) (sum[channel] / window.length);
+      }
+      return count;
+    }
+
+    @Override
+    public int outputSampleRate(int sampleRate) {
+      return sampleRate;
+    }
+  }
+
+  /**
+   * Anti-alias low-pass at 0.4 of the output Nyquist, then keeps every factor-th sample.
+   * A kept sample is marked lost if any sample it replaces was lost.
+   */
+  private static final class DecimateStage implements Stage {
+    private final int factor;
+    private final Biquad[] antiAlias;
+    private final int[] phase;
+    private final boolean[] pendingLost;
+    private final float[] lastInput;
+
+    DecimateStage(int channelCount, int sampleRate, int factor) {
+      this.factor = factor;
+      antiAlias = new Biquad[channelCount];
+      for (int channel = 0; channel < channelCount; ++channel){
+        antiAlias[channel] = Biquad.lowPass(sampleRate, sampleRate * 0.4 / factor, BUTTERWORTH_Q);
+      }
+      phase = new int[channelCount];
+      pendingLost = new boolean[channelCount];
+      lastInput = new float[channelCount];
+    }
+
+    @Override
+    public int process(int channel, float[] data, int[] sampleIndex, boolean[] lost, int offset, int count) {
+      int kept = 0;
+      for (int i = offset; i < offset + count; ++i){
+        float x = lost[i] ? lastInput[channel] : data[i];
+        lastInput[channel] = x;
+        double y = factor > 1 ? antiAlias[channel].process(x) : x;
+        pendingLost[channel] |= lost[i];
+        if (++phase[channel] >= factor){
+          int to = offset + kept++;
+          data[to] = (float) y;
+          sampleIndex[to] = sampleIndex[i];
+          lost[to] = pendingLost[channel];
+          phase[channel] = 0;
+          pendingLost[channel] = false;
+        }
+      }
+      return kept;
+    }
+
+    @Override
+    public int outputSampleRate(int sampleRate) {
+      return Math.max(1, sampleRate / factor);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package com.synchronisdk;
+
+import com.sensor.SensorData;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Time index over the DATA records of a SampleRecorder file, packets are read back on demand.
+ * A truncated last record is ignored. Not thread safe, owned by a single ReplaySensor.
+ */
+final class RecordingIndex {
+  private static final class StreamFormat {
+    final int dataType;
+    final int sampleRate;
+    final int channelCount;
+    final boolean hasImpedance;
+    final int packageSampleCount;
+
+    StreamFormat(int dataType, int sampleRate, int channelCount, boolean hasImpedance, int packageSampleCount) {
+      this.dataType = dataType;
+      this.sampleRate = sampleRate;
+      this.channelCount = channelCount;
+      this.hasImpedance = hasImpedance;
+      this.packageSampleCount = packageSampleCount;
+    }
+  }
+
+  final String deviceMac;
+  final long startTimeMs;
+
+  private final FileChannel channel;
+  private final List<StreamFormat> formats = new ArrayList<>();
+  private long[] offsets = new long[256];
+  private long[] receivedNanos = new long[256];
+  private int[] formatIds = new int[256];
+  private int size;
+  private ByteBuffer buffer = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+
+  RecordingIndex(File file) throws IOException {
+    channel = new FileInputStream(file).getChannel();
+    try {
+      ByteBuffer header = read(0, 8);
+      if (header.getInt() != SampleRecorder.MAGIC){
+        throw new IOException("not a recording: " + file.getPath());
+      }
+      if (header.getShort() > SampleRecorder.VERSION){
+        throw new IOException("unsupported recording version");
+      }
+      int macLength = header.getShort() & 0xffff;
+      ByteBuffer rest = read(8, macLength + 16);
+      byte[] mac = new byte[macLength];
+      rest.get(mac);
+      deviceMac = new String(mac, Charset.forName("UTF-8"));
+      startTimeMs = rest.getLong();
+      scan(8 + macLength + 16);
+    } catch (IOException e){
+      channel.close();
+      throw e;
+    }
+  }
+
+  int size(){
+    return size;
+  }
+
+  long receivedNanos(int index){
+    return receivedNanos[index];
+  }
+
+  long durationNanos(){
+    return size > 0 ? receivedNanos[size - 1] - receivedNanos[0] : 0;
+  }
+
+  /**
+   * Returns the first record at or after offsetNanos from the start of the recording.
+   */
+  int find(long offsetNanos){
+    if (size == 0){
+      return 0;
+    }
+    long target = receivedNanos[0] + offsetNanos;
+    int low = 0;
+    int high = size;
+    while (low < high){
+      int middle = (low + high) >>> 1;
+      if (receivedNanos[middle] < target){
+        low = middle + 1;
+      }else{
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Recorded dataTypes with their last channel count.
+   */
+  HashMap<Integer, Integer> channelCounts(){
+    HashMap<Integer, Integer> result = new HashMap<>();
+    for (StreamFormat format : formats){
+      result.put(format.dataType, format.channelCount);
+    }
+    return result;
+  }
+
+  /**
+   * Reads record index back as a packet of deviceMac. The sample indexes are rebuilt from the first one.
+   */
+  SamplePacket read(int index, String deviceMac, long receivedNanos) throws IOException {
+    StreamFormat format = formats.get(formatIds[index]);
+    ByteBuffer record = read(offsets[index], SampleRecorder.RECORD_HEADER_SIZE);
+    record.get();
+    int payload = record.getInt();
+    record = read(offsets[index] + SampleRecorder.RECORD_HEADER_SIZE, payload);
+    record.getInt();
+    record.getLong();
+    int sampleCount = record.getInt();
+    int firstSampleIndex = record.getInt();
+    int channelCount = format.channelCount;
+
+    SamplePacket packet = new SamplePacket(deviceMac, format.dataType, format.sampleRate, channelCount,
+      format.packageSampleCount, sampleCount, receivedNanos);
+    getInterleaved(record, packet.data, sampleCount, channelCount);
+    if (packet.hasImpedance()){
+      getInterleaved(record, packet.impedance, sampleCount, channelCount);
+      getInterleaved(record, packet.saturation, sampleCount, channelCount);
+    }
+    int bits = 0;
+    int bitCount = 8;
+    for (int i = 0; i < sampleCount; ++i){
+      for (int channel = 0; channel < channelCount; ++channel){
+        if (bitCount == 8){
+          bits = record.get();
+          bitCount = 0;
+        }
+        int position = channel * sampleCount + i;
+        packet.lost[position] = (bits & (1 << bitCount++)) != 0;
+        packet.sampleIndex[position] = firstSampleIndex + i;
+      }
+    }
+    return packet;
+  }
+
+  void close(){
+    try {
+      channel.close();
+    } catch (IOException ignored){
+    }
+  }
+
+  private void scan(long position) throws IOException {
+    long fileSize = channel.size();
+    int[] currentFormat = new int[256];
+    Arrays.fill(currentFormat, -1);
+    while (position + SampleRecorder.RECORD_HEADER_SIZE <= fileSize){
+      ByteBuffer header = read(position, SampleRecorder.RECORD_HEADER_SIZE);
+      byte type = header.get();
+      int payload = header.getInt();
+      long next = position + SampleRecorder.RECORD_HEADER_SIZE + payload;
+      if (payload < 0 || next > fileSize){
+        break;
+      }
+      ByteBuffer record = read(position + SampleRecorder.RECORD_HEADER_SIZE, Math.min(payload, 32));
+      if (type == SampleRecorder.RECORD_STREAM && payload >= 13){
+        int dataType = record.getInt();
+        int sampleRate = record.getInt();
+        int channelCount = record.getInt();
+        boolean hasImpedance = record.get() != 0;
+        int packageSampleCount = payload >= SampleRecorder.STREAM_RECORD_SIZE ? record.getInt() : 0;
+        if ((dataType & 0xff) == dataType && channelCount > 0 && hasImpedance == (dataType == SensorData.NTF_IMPEDANCE)){
+          currentFormat[dataType] = formats.size();
+          formats.add(new StreamFormat(dataType, sampleRate, channelCount, hasImpedance, packageSampleCount));
+        }
+      }else if (type == SampleRecorder.RECORD_DATA && payload >= SampleRecorder.DATA_RECORD_SIZE){
+        int dataType = record.getInt();
+        long nanos = record.getLong();
+        int sampleCount = record.getInt();
+        if ((dataType & 0xff) == dataType && currentFormat[dataType] >= 0 && sampleCount > 0
+          && payload == dataSize(formats.get(currentFormat[dataType]), sampleCount)){
+          add(position, nanos, currentFormat[dataType]);
+        }
+      }
+      position = next;
+    }
+  }
+
+  private static long dataSize(StreamFormat format, int sampleCount){
+    long total = (long) sampleCount * format.channelCount;
+    return SampleRecorder.DATA_RECORD_SIZE + total * 4 * (format.hasImpedance ? 3 : 1) + (total + 7) / 8;
+  }
+
+  private void add(long offset, long nanos, int formatId){
+    if (size == offsets.length){
+      offsets = Arrays.copyOf(offsets, size * 2);
+      receivedNanos = Arrays.copyOf(receivedNanos, size * 2);
+      formatIds = Arrays.copyOf(formatIds, size * 2);
+    }
+    offsets[size] = offset;
+    receivedNanos[size] = nanos;
+    formatIds[size] = formatId;
+    ++size;
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    if (buffer.capacity() < length){
+      buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    buffer.clear();
+    buffer.limit(length);
+    while (buffer.hasRemaining()){
+      if (channel.read(buffer, position + buffer.position()) < 0){
+        throw new EOFException();
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void getInterleaved(ByteBuffer record, float[] values, int sampleCount, int channelCount){
+    for (int i = 0; i < sampleCount; ++i){
+      for (int channel = 0; channel < channelCount; ++channel){
+        values[channel * sampleCount + i] = record.getFloat();
+      }
+    }
+  }
+}
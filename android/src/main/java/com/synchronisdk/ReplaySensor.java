@@ -0,0 +1,223 @@
+package com.synchronisdk;
+
+import static com.sensor.BLEDevice.State.Connected;
+import static com.sensor.BLEDevice.State.Connecting;
+import static com.sensor.BLEDevice.State.Disconnected;
+import static com.sensor.BLEDevice.State.Disconnecting;
+import static com.sensor.BLEDevice.State.Ready;
+
+import android.os.SystemClock;
+
+import com.sensor.BLEDevice;
+import com.sensor.SensorData;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays a recording back as a sensor with no hardware, through the same packet and state paths as a SensorProfile.
+ * Packets are scheduled and stamped at start + (recorded offset / speed) on the replay thread, speed 0 sends them as
+ * fast as the pipeline takes them with their recorded stamps. Samples, sample indexes and order always come from the
+ * file.
+ */
+final class ReplaySensor {
+  interface Listener {
+    void onStateChange(ReplaySensor sensor, BLEDevice.State newState);
+
+    void onPacket(SamplePacket packet);
+
+    void onError(ReplaySensor sensor, String errorMsg);
+  }
+
+  static final int FEATURE_EEG = 0x000400000;
+  static final int FEATURE_ECG = 0x000800000;
+  static final int FEATURE_IMU = 0x002000000;
+  static final int FEATURE_BRTH = 0x008000000;
+
+  final String deviceMac;
+  final RecordingIndex index;
+  private final Listener listener;
+  private final boolean loop;
+  private final HashMap<Integer, Integer> channelCounts;
+  private final AtomicLong seekNanos = new AtomicLong(-1);
+  private volatile BLEDevice.State state = Disconnected;
+  private volatile double speed;
+  private volatile boolean notifying;
+  private volatile long positionNanos;
+  private volatile Thread thread;
+
+  ReplaySensor(String deviceMac, RecordingIndex index, double speed, boolean loop, Listener listener) {
+    this.deviceMac = deviceMac;
+    this.index = index;
+    this.speed = speed;
+    this.loop = loop;
+    this.listener = listener;
+    channelCounts = index.channelCounts();
+  }
+
+  BLEDevice.State getDeviceState(){
+    return state;
+  }
+
+  boolean hasStartDataNotification(){
+    return notifying;
+  }
+
+  int getFeatureMap(){
+    int featureMap = 0;
+    for (Integer dataType : channelCounts.keySet()){
+      if (dataType == SensorData.NTF_EEG){
+        featureMap |= FEATURE_EEG;
+      }else if (dataType == SensorData.NTF_ECG){
+        featureMap |= FEATURE_ECG;
+      }else if (dataType == SensorData.NTF_ACC_DATA || dataType == SensorData.NTF_GYO_DATA){
+        featureMap |= FEATURE_IMU;
+      }else if (dataType == SensorData.NTF_BRTH){
+        featureMap |= FEATURE_BRTH;
+      }
+    }
+    return featureMap;
+  }
+
+  /**
+   * Channel count of dataType in the recording, 0 if it wasn't recorded.
+   */
+  int getChannelCount(int dataType){
+    Integer channelCount = channelCounts.get(dataType);
+    return channelCount != null ? channelCount : 0;
+  }
+
+  Map<Integer, Integer> getChannelCounts(){
+    return channelCounts;
+  }
+
+  long getPositionNanos(){
+    return positionNanos;
+  }
+
+  synchronized boolean connect(){
+    if (state != Disconnected){
+      return state == Ready;
+    }
+    setState(Connecting);
+    setState(Connected);
+    setState(Ready);
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        play();
+      }
+    }, "SynchronisdkReplay");
+    thread.setDaemon(true);
+    thread.start();
+    return true;
+  }
+
+  synchronized void disconnect(){
+    if (state == Disconnected){
+      return;
+    }
+    notifying = false;
+    setState(Disconnecting);
+    setState(Disconnected);
+    wakeUp();
+    thread = null;
+  }
+
+  boolean setNotifying(boolean notifying){
+    if (state != Ready){
+      return false;
+    }
+    this.notifying = notifying;
+    wakeUp();
+    return true;
+  }
+
+  void setSpeed(double speed){
+    this.speed = speed;
+    wakeUp();
+  }
+
+  void seek(long offsetNanos){
+    seekNanos.set(Math.max(0, offsetNanos));
+    wakeUp();
+  }
+
+  private void wakeUp(){
+    Thread current = thread;
+    if (current != null){
+      LockSupport.unpark(current);
+    }
+  }
+
+  private void setState(BLEDevice.State newState){
+    state = newState;
+    listener.onStateChange(this, newState);
+  }
+
+  private void play(){
+    Thread current = Thread.currentThread();
+    int position = 0;
+    boolean rebase = true;
+    long baseNanos = 0;
+    long baseRecordedNanos = 0;
+    double baseSpeed = speed;
+    while (state == Ready && thread == current){
+      if (!notifying){
+        LockSupport.park(this);
+        rebase = true;
+        continue;
+      }
+      long seek = seekNanos.getAndSet(-1);
+      if (seek >= 0){
+        position = index.find(seek);
+        rebase = true;
+      }
+      if (position >= index.size()){
+        if (loop && index.size() > 0){
+          position = 0;
+          rebase = true;
+          continue;
+        }
+        disconnect();
+        break;
+      }
+
+      long recordedNanos = index.receivedNanos(position);
+      long nowNanos = SystemClock.elapsedRealtimeNanos();
+      double currentSpeed = speed;
+      if (rebase || currentSpeed != baseSpeed){
+        baseNanos = nowNanos;
+        baseRecordedNanos = recordedNanos;
+        baseSpeed = currentSpeed;
+        rebase = false;
+      }
+      // the stamp comes from the recording, never from when the packet got out, so runs are reproducible
+      long dueNanos = recordedNanos;
+      if (currentSpeed > 0){
+        dueNanos = baseNanos + (long) ((recordedNanos - baseRecordedNanos) / currentSpeed);
+        if (dueNanos > nowNanos){
+          LockSupport.parkNanos(this, dueNanos - nowNanos);
+          continue;
+        }
+      }
+
+      SamplePacket packet;
+      try {
+        packet = index.read(position, deviceMac, dueNanos);
+      } catch (IOException e){
+        if (state == Ready){
+          notifying = false;
+          listener.onError(this, "replay read failed: " + e.getMessage());
+        }
+        continue;
+      }
+      positionNanos = recordedNanos - index.receivedNanos(0);
+      ++position;
+      listener.onPacket(packet);
+    }
+  }
+}
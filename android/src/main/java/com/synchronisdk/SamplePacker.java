@@ -0,0 +1,201 @@
+package com.synchronisdk;
+
+import android.util.Base64;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Builds GOT_DATA payloads.
+ *
+ * Columnar layout of "buffer" (little endian, c = channelCount, n = packageSampleCount):
+ *   float32 data[c][n]
+ *   int32   sampleIndex[c][n]
+ *   float32 impedance[c][n], float32 saturation[c][n]   (NTF_IMPEDANCE only)
+ *   uint8   isLost bitset[(c * n + 7) / 8]               (bit c * n + s)
+ */
+final class SamplePacker {
+  static final int FORMAT_COLUMNAR = 0;
+  static final int FORMAT_SAMPLES = 1;
+
+  private SamplePacker() {
+  }
+
+  static WritableMap createHeader(SensorStream stream, int sampleCount, int format){
+    WritableMap result = Arguments.createMap();
+    result.putString("deviceMac", stream.deviceMac);
+    result.putInt("dataType", stream.dataType);
+    result.putInt("sampleRate", stream.sampleRate);
+    result.putInt("channelCount", stream.channelCount());
+    result.putInt("packageSampleCount", sampleCount);
+    result.putInt("format", format);
+    return result;
+  }
+
+  static int bufferSize(int channelCount, int sampleCount, boolean hasImpedance){
+    int total = channelCount * sampleCount;
+    int columns = hasImpedance ? 4 : 2;
+    return total * 4 * columns + (total + 7) / 8;
+  }
+
+  /**
+   * Packs the oldest sampleCount samples of the stream, the caller consumes them afterwards.
+   */
+  static WritableMap packColumnar(SensorStream stream, int sampleCount){
+    return packColumnar(stream, sampleCount, 1);
+  }
+
+  /**
+   * Packs every stride-th of the oldest sampleCount samples, sampleRate is divided by stride.
+   */
+  static WritableMap packColumnar(SensorStream stream, int sampleCount, int stride){
+    int keptCount = (sampleCount + stride - 1) / stride;
+    WritableMap result = createHeader(stream, keptCount, FORMAT_COLUMNAR);
+    if (stride > 1){
+      result.putInt("sampleRate", Math.max(1, stream.sampleRate / stride));
+    }
+    result.putString("buffer", encodeColumns(stream.samples, 0, keptCount, stride));
+    return result;
+  }
+
+  static String encodeColumns(SampleRingBuffer samples, int offset, int sampleCount){
+    return encodeColumns(samples, offset, sampleCount, 1);
+  }
+
+  /**
+   * Encodes sampleCount samples taken every stride samples from offset.
+   */
+  static String encodeColumns(SampleRingBuffer samples, int offset, int sampleCount, int stride){
+    final int channelCount = samples.channelCount();
+    final int total = channelCount * sampleCount;
+    final boolean hasImpedance = samples.hasImpedance();
+
+    ByteBuffer buffer = ByteBuffer.allocate(bufferSize(channelCount, sampleCount, hasImpedance));
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    int indexBase = total * 4;
+    int impedanceBase = indexBase + total * 4;
+    int saturationBase = impedanceBase + total * 4;
+    int lostBase = hasImpedance ? saturationBase + total * 4 : impedanceBase;
+    byte[] bytes = buffer.array();
+
+    for (int channelIndex = 0; channelIndex < channelCount; ++channelIndex){
+      for (int sampleIndex = 0; sampleIndex < sampleCount; ++sampleIndex){
+        int position = channelIndex * sampleCount + sampleIndex;
+        int from = offset + sampleIndex * stride;
+        buffer.putFloat(position * 4, samples.data(channelIndex, from));
+        buffer.putInt(indexBase + position * 4, samples.sampleIndex(channelIndex, from));
+        if (hasImpedance){
+          buffer.putFloat(impedanceBase + position * 4, samples.impedance(channelIndex, from));
+          buffer.putFloat(saturationBase + position * 4, samples.saturation(channelIndex, from));
+        }
+        if (samples.isLost(channelIndex, from)){
+          bytes[lostBase + (position >> 3)] |= (byte) (1 << (position & 7));
+        }
+      }
+    }
+    return Base64.encodeToString(bytes, Base64.NO_WRAP);
+  }
+
+  /**
+   * Runs of lost samples of the first channel as [start, length, start, length, ...].
+   */
+  static WritableArray lostRuns(SampleRingBuffer samples, int offset, int sampleCount){
+    WritableArray result = Arguments.createArray();
+    int runStart = -1;
+    for (int i = 0; i < sampleCount; ++i){
+      boolean isLost = samples.isLost(0, offset + i);
+      if (isLost && runStart < 0){
+        runStart = i;
+      }else if (!isLost && runStart >= 0){
+        result.pushInt(runStart);
+        result.pushInt(i - runStart);
+        runStart = -1;
+      }
+    }
+    if (runStart >= 0){
+      result.pushInt(runStart);
+      result.pushInt(sampleCount - runStart);
+    }
+    return result;
+  }
+
+  static WritableMap packSamples(SensorStream stream, int sampleCount){
+    return packSamples(stream, sampleCount, 1);
+  }
+
+  static WritableMap packSamples(SensorStream stream, int sampleCount, int stride){
+    final SampleRingBuffer samples = stream.samples;
+    final int keptCount = (sampleCount + stride - 1) / stride;
+    WritableArray channelsResult = Arguments.createArray();
+    for (int channelIndex = 0; channelIndex < samples.channelCount(); ++channelIndex){
+      WritableArray samplesResult = Arguments.createArray();
+
+      for (int sampleIndex = 0; sampleIndex < sampleCount; sampleIndex += stride){
+        WritableMap sampleResult = Arguments.createMap();
+        sampleResult.putInt("sampleIndex", samples.sampleIndex(channelIndex, sampleIndex));
+        sampleResult.putDouble("data", samples.data(channelIndex, sampleIndex));
+        if (samples.hasImpedance()){
+          sampleResult.putDouble("impedance", samples.impedance(channelIndex, sampleIndex));
+          sampleResult.putDouble("saturation", samples.saturation(channelIndex, sampleIndex));
+        }
+        sampleResult.putBoolean("isLost", samples.isLost(channelIndex, sampleIndex));
+        samplesResult.pushMap(sampleResult);
+      }
+      channelsResult.pushArray(samplesResult);
+    }
+
+    WritableMap result = createHeader(stream, keptCount, FORMAT_SAMPLES);
+    if (stride > 1){
+      result.putInt("sampleRate", Math.max(1, stream.sampleRate / stride));
+    }
+    result.putArray("channelSamples", channelsResult);
+    return result;
+  }
+
+  /**
+   * Min, max and mean per channel of the oldest sampleCount samples, lost samples left out, 0 if all are lost.
+   */
+  static WritableMap packSummary(SensorStream stream, int sampleCount){
+    final SampleRingBuffer samples = stream.samples;
+    WritableArray min = Arguments.createArray();
+    WritableArray max = Arguments.createArray();
+    WritableArray mean = Arguments.createArray();
+    int lostSamples = 0;
+    for (int channelIndex = 0; channelIndex < samples.channelCount(); ++channelIndex){
+      double low = 0;
+      double high = 0;
+      double sum = 0;
+      int count = 0;
+      for (int sampleIndex = 0; sampleIndex < sampleCount; ++sampleIndex){
+        if (samples.isLost(channelIndex, sampleIndex)){
+          ++lostSamples;
+          continue;
+        }
+        double value = samples.data(channelIndex, sampleIndex);
+        low = count == 0 ? value : Math.min(low, value);
+        high = count == 0 ? value : Math.max(high, value);
+        sum += value;
+        ++count;
+      }
+      min.pushDouble(low);
+      max.pushDouble(high);
+      mean.pushDouble(count > 0 ? sum / count : 0);
+    }
+    WritableMap result = Arguments.createMap();
+    result.putString("deviceMac", stream.deviceMac);
+    result.putInt("dataType", stream.dataType);
+    result.putInt("sampleRate", stream.sampleRate);
+    result.putInt("channelCount", samples.channelCount());
+    result.putInt("sampleCount", sampleCount);
+    result.putInt("firstSampleIndex", samples.sampleIndex(0, 0));
+    result.putInt("lostSamples", lostSamples);
+    result.putArray("min", min);
+    result.putArray("max", max);
+    result.putArray("mean", mean);
+    return result;
+  }
+}
@@ -0,0 +1,106 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+
+import com.sensor.SensorData;
+
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * Primitive copy of one sensor notification, handed from the BLE callback thread to the serializer thread.
+ * Arrays are channel major: sample s of channel c is at c * sampleCount + s.
+ */
+final class SamplePacket {
+  final String deviceMac;
+  final int dataType;
+  final int sampleRate;
+  final int channelCount;
+  final int packageSampleCount;
+  final int sampleCount;
+  final float[] data;
+  final int[] sampleIndex;
+  final boolean[] lost;
+  final float[] impedance;
+  final float[] saturation;
+  final long receivedNanos;
+
+  SamplePacket(String deviceMac, int dataType, int sampleRate, int channelCount, int packageSampleCount,
+               int sampleCount, long receivedNanos) {
+    this.deviceMac = deviceMac;
+    this.dataType = dataType;
+    this.sampleRate = sampleRate;
+    this.channelCount = channelCount;
+    this.packageSampleCount = packageSampleCount;
+    this.sampleCount = sampleCount;
+    this.receivedNanos = receivedNanos;
+    int total = channelCount * sampleCount;
+    data = new float[total];
+    sampleIndex = new int[total];
+    lost = new boolean[total];
+    if (dataType == SensorData.NTF_IMPEDANCE){
+      impedance = new float[total];
+      saturation = new float[total];
+    }else{
+      impedance = null;
+      saturation = null;
+    }
+  }
+
+  SamplePacket(SamplePacket source, int sampleRate, int sampleCount, float[] data, int[] sampleIndex, boolean[] lost) {
+    this.deviceMac = source.deviceMac;
+    this.dataType = source.dataType;
+    this.sampleRate = sampleRate;
+    this.channelCount = source.channelCount;
+    this.packageSampleCount = source.packageSampleCount;
+    this.sampleCount = sampleCount;
+    this.receivedNanos = source.receivedNanos;
+    this.data = data;
+    this.sampleIndex = sampleIndex;
+    this.lost = lost;
+    this.impedance = null;
+    this.saturation = null;
+  }
+
+  boolean hasImpedance(){
+    return impedance != null;
+  }
+
+  /**
+   * Takes the pending samples out of sensorData, returns null if there is nothing to send.
+   */
+  static SamplePacket from(SensorData sensorData){
+    Vector<Vector<SensorData.Sample>> channelSamples = sensorData.channelSamples;
+    if (channelSamples == null){
+      return null;
+    }
+    sensorData.channelSamples = null;
+
+    int channelCount = Math.min(sensorData.channelCount, channelSamples.size());
+    int sampleCount = Integer.MAX_VALUE;
+    for (int channel = 0; channel < channelCount; ++channel){
+      sampleCount = Math.min(sampleCount, channelSamples.get(channel).size());
+    }
+    if (channelCount <= 0 || sampleCount <= 0){
+      return null;
+    }
+
+    SamplePacket packet = new SamplePacket(sensorData.deviceMac, sensorData.dataType, sensorData.sampleRate,
+      channelCount, sensorData.minPackageSampleCount, sampleCount, SystemClock.elapsedRealtimeNanos());
+    for (int channel = 0; channel < channelCount; ++channel){
+      List<SensorData.Sample> samples = channelSamples.get(channel);
+      int position = channel * sampleCount;
+      for (int i = 0; i < sampleCount; ++i, ++position){
+        SensorData.Sample sample = samples.get(i);
+        packet.data[position] = sample.data;
+        packet.sampleIndex[position] = sample.sampleIndex;
+        packet.lost[position] = sample.isLost;
+        if (packet.impedance != null){
+          packet.impedance[position] = sample.impedance;
+          packet.saturation[position] = sample.saturation;
+        }
+      }
+    }
+    return packet;
+  }
+}
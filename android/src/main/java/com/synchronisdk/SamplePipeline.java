@@ -0,0 +1,178 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands SamplePackets from the BLE callback threads to one serializer thread through a PacketQueue per device.
+ * Tasks posted with post() run on the serializer thread too, so SensorStream state is never shared.
+ */
+final class SamplePipeline {
+  interface Handler {
+    void onPacket(SamplePacket packet);
+
+    /**
+     * Called after each drain round, returns nanoseconds until it needs to run again.
+     */
+    long onIdle(long nowNanos);
+  }
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final Handler handler;
+  private final ConcurrentHashMap<String, PacketQueue> queues = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<PacketQueue> retiredQueues = new ConcurrentLinkedQueue<>();
+  private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean sleeping = new AtomicBoolean(false);
+  private volatile boolean running;
+  private Thread thread;
+
+  SamplePipeline(Handler handler) {
+    this.handler = handler;
+  }
+
+  synchronized void start(){
+    if (running){
+      return;
+    }
+    running = true;
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "SynchronisdkSerializer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  synchronized void stop(){
+    running = false;
+    for (PacketQueue queue : queues.values()){
+      queue.closed = true;
+    }
+    if (thread != null){
+      LockSupport.unpark(thread);
+      thread = null;
+    }
+  }
+
+  boolean offer(SamplePacket packet){
+    PacketQueue queue = getQueue(packet.deviceMac);
+    boolean ret = queue.offer(packet);
+    wakeUp();
+    return ret;
+  }
+
+  void post(Runnable task){
+    tasks.add(task);
+    wakeUp();
+  }
+
+  void setOverflowPolicy(String deviceMac, int overflowPolicy, int capacity){
+    PacketQueue queue = queues.get(deviceMac);
+    if (queue != null && (capacity <= 0 || queue.capacity() == capacity)){
+      queue.overflowPolicy = overflowPolicy;
+      return;
+    }
+    long dropped = queue != null ? queue.droppedPackets.get() : 0;
+    PacketQueue newQueue = new PacketQueue(capacity > 0 ? capacity : PacketQueue.DEFAULT_CAPACITY, overflowPolicy, dropped);
+    queues.put(deviceMac, newQueue);
+    if (queue != null){
+      retiredQueues.add(queue);
+      wakeUp();
+    }
+  }
+
+  PacketQueue getQueue(String deviceMac){
+    PacketQueue queue = queues.get(deviceMac);
+    if (queue == null){
+      queue = new PacketQueue(PacketQueue.DEFAULT_CAPACITY, PacketQueue.DROP_OLDEST, 0);
+      PacketQueue existing = queues.putIfAbsent(deviceMac, queue);
+      if (existing != null){
+        queue = existing;
+      }
+    }
+    return queue;
+  }
+
+  private void wakeUp(){
+    if (sleeping.get() && sleeping.compareAndSet(true, false)){
+      Thread current = thread;
+      if (current != null){
+        LockSupport.unpark(current);
+      }
+    }
+  }
+
+  private boolean drain(){
+    boolean busy = false;
+    Runnable task;
+    while ((task = tasks.poll()) != null){
+      busy = true;
+      runSafely(task, null);
+    }
+    PacketQueue retired;
+    while ((retired = retiredQueues.poll()) != null){
+      busy |= drainQueue(retired, Integer.MAX_VALUE);
+    }
+    for (PacketQueue queue : queues.values()){
+      busy |= drainQueue(queue, queue.capacity());
+    }
+    return busy;
+  }
+
+  private boolean drainQueue(PacketQueue queue, int limit){
+    boolean busy = false;
+    SamplePacket packet;
+    for (int i = 0; i < limit && (packet = queue.poll()) != null; ++i){
+      busy = true;
+      runSafely(null, packet);
+    }
+    return busy;
+  }
+
+  private void runSafely(Runnable task, SamplePacket packet){
+    try {
+      if (task != null){
+        task.run();
+      }else{
+        handler.onPacket(packet);
+      }
+    } catch (Exception e){
+      Log.e(SynchronisdkModule.TAG, "serializer error", e);
+    }
+  }
+
+  private long idle(){
+    try {
+      return handler.onIdle(SystemClock.elapsedRealtimeNanos());
+    } catch (Exception e){
+      Log.e(SynchronisdkModule.TAG, "serializer error", e);
+      return IDLE_PARK_NANOS;
+    }
+  }
+
+  private void loop(){
+    while (running){
+      boolean busy = drain();
+      long waitNanos = Math.min(IDLE_PARK_NANOS, idle());
+      if (busy || waitNanos <= 0){
+        continue;
+      }
+      sleeping.set(true);
+      if (drain()){
+        sleeping.set(false);
+        continue;
+      }
+      LockSupport.parkNanos(this, waitNanos);
+      sleeping.set(false);
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package com.synchronisdk;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the raw packets of one device to a file on its own thread, the BLE callback thread only enqueues.
+ *
+ * File layout, little endian:
+ *   header:  int32 magic "SYNR", int16 version, int16 mac length, mac UTF-8, int64 wall clock ms, int64 elapsed nanos
+ *   records: int8 type, int32 payload length, payload
+ *     STREAM: int32 dataType, int32 sampleRate, int32 channelCount, int8 hasImpedance, int32 packageSampleCount
+ *     DATA:   int32 dataType, int64 elapsed nanos when received, int32 sampleCount, int32 first sampleIndex,
+ *             float32 data[sample][channel], for impedance data float32 impedance and saturation [sample][channel],
+ *             then a lost bitset in the same interleaved order
+ *     MARKER: int32 dataType, int32 sampleIndex, int32 code, int64 elapsed nanos when pushed
+ * A STREAM record precedes the first DATA record of a dataType, and is written again when its format changes.
+ * A MARKER record follows the DATA record holding its sampleIndex, readers skip record types they do not know.
+ * The file is forced to storage every FLUSH_INTERVAL_NANOS, a truncated last record means the app died in between.
+ */
+final class SampleRecorder {
+  interface Listener {
+    void onClosed(SampleRecorder recorder, IOException error);
+  }
+
+  static final int MAGIC = 0x524e5953;
+  static final short VERSION = 1;
+  static final byte RECORD_STREAM = 1;
+  static final byte RECORD_DATA = 2;
+  static final byte RECORD_MARKER = 3;
+  static final int RECORD_HEADER_SIZE = 5;
+  static final int STREAM_RECORD_SIZE = 17;
+  static final int DATA_RECORD_SIZE = 20;
+  static final int MARKER_RECORD_SIZE = 20;
+
+  private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long STOP_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final int QUEUE_CAPACITY = 4096;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  final String deviceMac;
+  final File file;
+  final AtomicLong droppedPackets = new AtomicLong();
+  private volatile long writtenPackets;
+  private volatile long writtenBytes;
+
+  // SamplePackets and MarkerQueue.Markers
+  private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+  private final HashMap<Integer, int[]> streamFormats = new HashMap<>();
+  private final FileChannel channel;
+  private ByteBuffer buffer;
+  private volatile boolean stopping;
+  private volatile Listener listener;
+
+  SampleRecorder(String deviceMac, File file) throws IOException {
+    this.deviceMac = deviceMac;
+    this.file = file;
+    channel = new FileOutputStream(file).getChannel();
+    buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    byte[] mac = deviceMac.getBytes(Charset.forName("UTF-8"));
+    buffer.putInt(MAGIC);
+    buffer.putShort(VERSION);
+    buffer.putShort((short) mac.length);
+    buffer.put(mac);
+    buffer.putLong(System.currentTimeMillis());
+    buffer.putLong(SystemClock.elapsedRealtimeNanos());
+  }
+
+  void start(){
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "SynchronisdkRecorder");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Never blocks, a full queue drops the packet from the recording only.
+   */
+  boolean offer(SamplePacket packet){
+    if (stopping || !queue.offer(packet)){
+      droppedPackets.incrementAndGet();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Never blocks like offer, a full queue drops the marker.
+   */
+  boolean offerMarker(MarkerQueue.Marker marker){
+    return !stopping && queue.offer(marker);
+  }
+
+  /**
+   * Writes what is queued, then closes the file and calls listener on the recorder thread.
+   */
+  void stop(Listener listener){
+    this.listener = listener;
+    stopping = true;
+  }
+
+  long writtenPackets(){
+    return writtenPackets;
+  }
+
+  long writtenBytes(){
+    return writtenBytes;
+  }
+
+  private void loop(){
+    IOException error = null;
+    long lastFlushNanos = SystemClock.elapsedRealtimeNanos();
+    try {
+      while (true){
+        long nowNanos = SystemClock.elapsedRealtimeNanos();
+        long waitNanos = Math.min(STOP_POLL_NANOS, lastFlushNanos + FLUSH_INTERVAL_NANOS - nowNanos);
+        Object item = waitNanos > 0 ? queue.poll(waitNanos, TimeUnit.NANOSECONDS) : queue.poll();
+        if (item instanceof SamplePacket){
+          write((SamplePacket) item);
+        }else if (item != null){
+          writeMarker((MarkerQueue.Marker) item);
+        }else if (stopping && queue.isEmpty()){
+          break;
+        }
+        nowNanos = SystemClock.elapsedRealtimeNanos();
+        if (nowNanos - lastFlushNanos >= FLUSH_INTERVAL_NANOS){
+          flush(true);
+          lastFlushNanos = nowNanos;
+        }
+      }
+      flush(true);
+    } catch (IOException e){
+      error = e;
+    } catch (InterruptedException e){
+      Thread.currentThread().interrupt();
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e){
+        if (error == null){
+          error = e;
+        }
+      }
+    }
+    Listener current = listener;
+    if (current != null){
+      current.onClosed(this, error);
+    }
+  }
+
+  private void write(SamplePacket packet) throws IOException {
+    if (packet.sampleCount == 0){
+      return;
+    }
+    int[] format = streamFormats.get(packet.dataType);
+    if (format == null || format[0] != packet.sampleRate || format[1] != packet.channelCount
+      || format[2] != packet.packageSampleCount){
+      streamFormats.put(packet.dataType, new int[]{packet.sampleRate, packet.channelCount, packet.packageSampleCount});
+      reserve(RECORD_HEADER_SIZE + STREAM_RECORD_SIZE);
+      buffer.put(RECORD_STREAM);
+      buffer.putInt(STREAM_RECORD_SIZE);
+      buffer.putInt(packet.dataType);
+      buffer.putInt(packet.sampleRate);
+      buffer.putInt(packet.channelCount);
+      buffer.put((byte) (packet.hasImpedance() ? 1 : 0));
+      buffer.putInt(packet.packageSampleCount);
+    }
+
+    int sampleCount = packet.sampleCount;
+    int channelCount = packet.channelCount;
+    int total = sampleCount * channelCount;
+    int payload = DATA_RECORD_SIZE + total * 4 * (packet.hasImpedance() ? 3 : 1) + (total + 7) / 8;
+    reserve(RECORD_HEADER_SIZE + payload);
+    buffer.put(RECORD_DATA);
+    buffer.putInt(payload);
+    buffer.putInt(packet.dataType);
+    buffer.putLong(packet.receivedNanos);
+    buffer.putInt(sampleCount);
+    buffer.putInt(packet.sampleIndex[0]);
+    putInterleaved(packet.data, sampleCount, channelCount);
+    if (packet.hasImpedance()){
+      putInterleaved(packet.impedance, sampleCount, channelCount);
+      putInterleaved(packet.saturation, sampleCount, channelCount);
+    }
+    int bits = 0;
+    int bitCount = 0;
+    for (int i = 0; i < sampleCount; ++i){
+      for (int channel = 0; channel < channelCount; ++channel){
+        if (packet.lost[channel * sampleCount + i]){
+          bits |= 1 << bitCount;
+        }
+        if (++bitCount == 8){
+          buffer.put((byte) bits);
+          bits = 0;
+          bitCount = 0;
+        }
+      }
+    }
+    if (bitCount > 0){
+      buffer.put((byte) bits);
+    }
+    ++writtenPackets;
+  }
+
+  private void writeMarker(MarkerQueue.Marker marker) throws IOException {
+    reserve(RECORD_HEADER_SIZE + MARKER_RECORD_SIZE);
+    buffer.put(RECORD_MARKER);
+    buffer.putInt(MARKER_RECORD_SIZE);
+    buffer.putInt(marker.dataType);
+    buffer.putInt(marker.sampleIndex);
+    buffer.putInt(marker.code);
+    buffer.putLong(marker.elapsedNanos);
+  }
+
+  private void putInterleaved(float[] values, int sampleCount, int channelCount){
+    for (int i = 0; i < sampleCount; ++i){
+      for (int channel = 0; channel < channelCount; ++channel){
+        buffer.putFloat(values[channel * sampleCount + i]);
+      }
+    }
+  }
+
+  private void reserve(int size) throws IOException {
+    if (buffer.remaining() >= size){
+      return;
+    }
+    flush(false);
+    if (buffer.capacity() < size){
+      buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  private void flush(boolean force) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()){
+      writtenBytes += channel.write(buffer);
+    }
+    buffer.clear();
+    if (force){
+      channel.force(false);
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package com.synchronisdk;
+
+/**
+ * Per channel primitive ring buffer, indexes passed to the accessors are relative to the oldest sample.
+ * Not thread safe, owned by a single SensorStream.
+ */
+final class SampleRingBuffer {
+  private static final int MIN_CAPACITY = 64;
+
+  private final int channelCount;
+  private final boolean hasImpedance;
+  private float[][] data;
+  private int[][] sampleIndex;
+  private float[][] impedance;
+  private float[][] saturation;
+  private boolean[][] lost;
+  private int mask;
+  private int head;
+  private int size;
+
+  SampleRingBuffer(int channelCount, boolean hasImpedance) {
+    this.channelCount = channelCount;
+    this.hasImpedance = hasImpedance;
+    allocate(MIN_CAPACITY);
+  }
+
+  int channelCount(){
+    return channelCount;
+  }
+
+  boolean hasImpedance(){
+    return hasImpedance;
+  }
+
+  int size(){
+    return size;
+  }
+
+  float data(int channel, int index){
+    return data[channel][(head + index) & mask];
+  }
+
+  int sampleIndex(int channel, int index){
+    return sampleIndex[channel][(head + index) & mask];
+  }
+
+  float impedance(int channel, int index){
+    return hasImpedance ? impedance[channel][(head + index) & mask] : 0;
+  }
+
+  float saturation(int channel, int index){
+    return hasImpedance ? saturation[channel][(head + index) & mask] : 0;
+  }
+
+  boolean isLost(int channel, int index){
+    return lost[channel][(head + index) & mask];
+  }
+
+  void append(SamplePacket packet){
+    int count = packet.sampleCount;
+    if (packet.channelCount != channelCount || count <= 0){
+      return;
+    }
+    ensureCapacity(size + count);
+
+    for (int channel = 0; channel < channelCount; ++channel){
+      int from = channel * count;
+      int position = head + size;
+      for (int i = 0; i < count; ++i, ++from, ++position){
+        int slot = position & mask;
+        data[channel][slot] = packet.data[from];
+        sampleIndex[channel][slot] = packet.sampleIndex[from];
+        lost[channel][slot] = packet.lost[from];
+        if (hasImpedance){
+          impedance[channel][slot] = packet.impedance[from];
+          saturation[channel][slot] = packet.saturation[from];
+        }
+      }
+    }
+    size += count;
+  }
+
+  void consume(int count){
+    count = Math.min(count, size);
+    head = (head + count) & mask;
+    size -= count;
+  }
+
+  void clear(){
+    head = 0;
+    size = 0;
+  }
+
+  private void ensureCapacity(int required){
+    int capacity = mask + 1;
+    if (required <= capacity){
+      return;
+    }
+    while (capacity < required){
+      capacity <<= 1;
+    }
+    float[][] oldData = data;
+    int[][] oldSampleIndex = sampleIndex;
+    float[][] oldImpedance = impedance;
+    float[][] oldSaturation = saturation;
+    boolean[][] oldLost = lost;
+    int oldMask = mask;
+    allocate(capacity);
+
+    for (int channel = 0; channel < channelCount; ++channel){
+      for (int i = 0; i < size; ++i){
+        int from = (head + i) & oldMask;
+        data[channel][i] = oldData[channel][from];
+        sampleIndex[channel][i] = oldSampleIndex[channel][from];
+        lost[channel][i] = oldLost[channel][from];
+        if (hasImpedance){
+          impedance[channel][i] = oldImpedance[channel][from];
+          saturation[channel][i] = oldSaturation[channel][from];
+        }
+      }
+    }
+    head = 0;
+  }
+
+  private void allocate(int capacity){
+    data = new float[channelCount][capacity];
+    sampleIndex = new int[channelCount][capacity];
+    lost = new boolean[channelCount][capacity];
+    if (hasImpedance){
+      impedance = new float[channelCount][capacity];
+      saturation = new float[channelCount][capacity];
+    }
+    mask = capacity - 1;
+  }
+}
@@ -0,0 +1,62 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Bounded history of one device and data type that JS pulls from with a read cursor.
+ * Written by the serializer thread, read by the JS thread through readSamples.
+ */
+final class SampleWindow {
+  private final int capacity;
+  private SampleRingBuffer samples;
+  private int sampleRate;
+  private long firstCursor;
+
+  SampleWindow(int capacity) {
+    this.capacity = Math.max(1, capacity);
+  }
+
+  synchronized void append(SamplePacket packet){
+    if (samples == null || samples.channelCount() != packet.channelCount){
+      firstCursor += samples != null ? samples.size() : 0;
+      samples = new SampleRingBuffer(packet.channelCount, packet.hasImpedance());
+    }
+    sampleRate = packet.sampleRate;
+    samples.append(packet);
+    int overflow = samples.size() - capacity;
+    if (overflow > 0){
+      samples.consume(overflow);
+      firstCursor += overflow;
+    }
+  }
+
+  /**
+   * Returns up to maxSamples samples from cursor on, samples already overwritten are reported as skipped.
+   */
+  synchronized WritableMap read(long cursor, int maxSamples){
+    WritableMap result = Arguments.createMap();
+    int available = samples != null ? samples.size() : 0;
+    long endCursor = firstCursor + available;
+    if (cursor < 0 || cursor > endCursor){
+      cursor = endCursor;
+    }
+    long skipped = 0;
+    if (cursor < firstCursor){
+      skipped = firstCursor - cursor;
+      cursor = firstCursor;
+    }
+    int offset = (int) (cursor - firstCursor);
+    int sampleCount = (int) Math.min(endCursor - cursor, maxSamples > 0 ? maxSamples : Integer.MAX_VALUE);
+
+    result.putDouble("cursor", cursor + sampleCount);
+    result.putDouble("skipped", skipped);
+    result.putInt("sampleRate", sampleRate);
+    result.putInt("channelCount", samples != null ? samples.channelCount() : 0);
+    result.putInt("sampleCount", sampleCount);
+    if (sampleCount > 0){
+      result.putString("buffer", SamplePacker.encodeColumns(samples, offset, sampleCount));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,175 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.sensor.BLEDevice;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Devices seen while scanning, keyed by mac, with the RSSI smoothed by an EMA.
+ * Each scan result is turned into a delta: devices added, devices whose smoothed RSSI moved by rssiDelta since
+ * last sent, and devices not seen for removeAfterMs. Filtered out devices are never added.
+ */
+final class ScanTable {
+  static final class Options {
+    boolean incremental;
+    double rssiDelta = 6;
+    // weight of a new reading, 1 keeps the raw RSSI
+    double rssiSmoothing = 0.3;
+    int minRssi = Integer.MIN_VALUE;
+    long removeAfterMs = 10000;
+    final List<String> namePrefixes = new ArrayList<>();
+
+    static Options parse(ReadableMap map){
+      Options options = new Options();
+      if (map.hasKey("incremental") && !map.isNull("incremental")){
+        options.incremental = map.getBoolean("incremental");
+      }
+      options.rssiDelta = getDouble(map, "rssiDelta", options.rssiDelta);
+      options.rssiSmoothing = getDouble(map, "rssiSmoothing", options.rssiSmoothing);
+      if (options.rssiSmoothing <= 0 || options.rssiSmoothing > 1){
+        throw new IllegalArgumentException("rssiSmoothing needs 0 < rssiSmoothing <= 1");
+      }
+      options.minRssi = (int) getDouble(map, "minRssi", options.minRssi);
+      options.removeAfterMs = (long) getDouble(map, "removeAfterMs", options.removeAfterMs);
+      if (map.hasKey("namePrefixes") && !map.isNull("namePrefixes")){
+        ReadableArray prefixes = map.getArray("namePrefixes");
+        for (int i = 0; i < prefixes.size(); ++i){
+          String prefix = prefixes.getString(i);
+          if (prefix != null && !prefix.isEmpty()){
+            options.namePrefixes.add(prefix.toLowerCase(Locale.ROOT));
+          }
+        }
+      }
+      return options;
+    }
+
+    private static double getDouble(ReadableMap map, String key, double defaultValue){
+      return map.hasKey(key) && !map.isNull(key) ? map.getDouble(key) : defaultValue;
+    }
+
+    boolean accept(BLEDevice device){
+      if (device.mac == null || device.mac.isEmpty() || device.rssi < minRssi){
+        return false;
+      }
+      if (namePrefixes.isEmpty()){
+        return true;
+      }
+      if (device.name == null){
+        return false;
+      }
+      String name = device.name.toLowerCase(Locale.ROOT);
+      for (String prefix : namePrefixes){
+        if (name.startsWith(prefix)){
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  private static final class Seen {
+    String name;
+    double rssi;
+    int sentRssi;
+    long lastSeenMs;
+  }
+
+  private volatile Options options = new Options();
+  private final HashMap<String, Seen> entries = new HashMap<>();
+
+  Options options(){
+    return options;
+  }
+
+  synchronized void setOptions(Options options){
+    this.options = options;
+    entries.clear();
+  }
+
+  /**
+   * Devices of the scan result that pass the filters, as GOT_DEVICE_LIST sends them.
+   */
+  WritableArray filter(List<BLEDevice> devices){
+    Options current = options;
+    WritableArray result = Arguments.createArray();
+    for (BLEDevice device : devices){
+      if (current.accept(device)){
+        result.pushMap(toMap(device.name, device.mac, device.rssi));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Merges a scan result, returns {added, updated, removed}, or null if nothing changed.
+   */
+  synchronized WritableMap update(List<BLEDevice> devices, long nowMs){
+    Options current = options;
+    WritableArray added = Arguments.createArray();
+    WritableArray updated = Arguments.createArray();
+    WritableArray removed = Arguments.createArray();
+    int changes = 0;
+    for (BLEDevice device : devices){
+      if (!current.accept(device)){
+        continue;
+      }
+      Seen entry = entries.get(device.mac);
+      if (entry == null){
+        entry = new Seen();
+        entry.name = device.name;
+        entry.rssi = entry.sentRssi = device.rssi;
+        entry.lastSeenMs = nowMs;
+        entries.put(device.mac, entry);
+        added.pushMap(toMap(entry.name, device.mac, entry.sentRssi));
+        ++changes;
+        continue;
+      }
+      entry.lastSeenMs = nowMs;
+      entry.rssi += current.rssiSmoothing * (device.rssi - entry.rssi);
+      boolean renamed = device.name != null && !device.name.equals(entry.name);
+      if (renamed || Math.abs(entry.rssi - entry.sentRssi) >= current.rssiDelta){
+        if (renamed){
+          entry.name = device.name;
+        }
+        entry.sentRssi = (int) Math.round(entry.rssi);
+        updated.pushMap(toMap(entry.name, device.mac, entry.sentRssi));
+        ++changes;
+      }
+    }
+    Iterator<Map.Entry<String, Seen>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()){
+      Map.Entry<String, Seen> item = iterator.next();
+      if (nowMs - item.getValue().lastSeenMs >= current.removeAfterMs){
+        removed.pushString(item.getKey());
+        iterator.remove();
+        ++changes;
+      }
+    }
+    if (changes == 0){
+      return null;
+    }
+    WritableMap result = Arguments.createMap();
+    result.putArray("added", added);
+    result.putArray("updated", updated);
+    result.putArray("removed", removed);
+    return result;
+  }
+
+  private static WritableMap toMap(String name, String mac, int rssi){
+    WritableMap device = Arguments.createMap();
+    device.putString("Name", name);
+    device.putString("Address", mac);
+    device.putInt("RSSI", rssi);
+    return device;
+  }
+}
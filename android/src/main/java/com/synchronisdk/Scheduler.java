@@ -0,0 +1,57 @@
+package com.synchronisdk;
+
+import android.util.Log;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One daemon thread running the timeouts, polls and scan windows of the module.
+ * A task that throws is logged and does not take the thread down with it, a periodic task keeps its schedule.
+ */
+final class Scheduler {
+  private final ScheduledThreadPoolExecutor executor;
+
+  Scheduler(final String name) {
+    executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    // cancelled timeouts do not pile up in the queue until their delay is over
+    executor.setRemoveOnCancelPolicy(true);
+  }
+
+  ScheduledFuture<?> schedule(Runnable task, long delayMs){
+    return executor.schedule(guard(task), delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Runs task after delayMs, then periodMs after each run ends.
+   */
+  ScheduledFuture<?> schedule(Runnable task, long delayMs, long periodMs){
+    return executor.scheduleWithFixedDelay(guard(task), delayMs, periodMs, TimeUnit.MILLISECONDS);
+  }
+
+  void shutdown(){
+    executor.shutdownNow();
+  }
+
+  private static Runnable guard(final Runnable task){
+    return new Runnable() {
+      @Override
+      public void run() {
+        try {
+          task.run();
+        } catch (RuntimeException e){
+          Log.e(SynchronisdkModule.TAG, "scheduled task failed", e);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,47 @@
+package com.synchronisdk;
+
+/**
+ * Sample backlog of one device and data type, GOT_DATA batches are sliced from its ring buffer.
+ */
+final class SensorStream {
+  final String deviceMac;
+  final int dataType;
+  // sampleIndex to host time, fitted on the packets before processing
+  final ClockModel clock = new ClockModel();
+  final MarkerQueue markers = new MarkerQueue();
+  int sampleRate;
+  int packageSampleCount;
+  SampleRingBuffer samples;
+  long lastEmitNanos;
+  long pendingSinceNanos;
+
+  SensorStream(String deviceMac, int dataType) {
+    this.deviceMac = deviceMac;
+    this.dataType = dataType;
+  }
+
+  static String key(String deviceMac, int dataType){
+    return deviceMac + "/" + dataType;
+  }
+
+  int channelCount(){
+    return samples != null ? samples.channelCount() : 0;
+  }
+
+  void update(SamplePacket packet){
+    sampleRate = packet.sampleRate;
+    packageSampleCount = Math.max(1, packet.packageSampleCount);
+    if (samples == null || samples.channelCount() != packet.channelCount){
+      samples = new SampleRingBuffer(packet.channelCount, packet.hasImpedance());
+    }
+  }
+
+  void clear(){
+    if (samples != null){
+      samples.clear();
+    }
+    pendingSinceNanos = 0;
+    clock.reset();
+    markers.clear();
+  }
+}
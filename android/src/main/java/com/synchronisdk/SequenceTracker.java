@@ -0,0 +1,268 @@
+package com.synchronisdk;
+
+import java.util.Arrays;
+
+/**
+ * Continuity of one device and data type, on the serializer thread before the processing chain.
+ *
+ * A sampleIndex ahead of the expected one by up to maxGapMs is a gap, the missing samples are inserted marked
+ * lost unless the policy is FILL_NONE. Lost samples, inserted or reported lost by the SDK, get their data from
+ * the policy. An index behind by up to maxGapMs is a duplicate and dropped, any larger jump (reconnect, reset,
+ * int wraparound) starts a new sequence and counts as a discontinuity. Index arithmetic wraps like int does.
+ * Gaps are kept as [startSampleIndex, length] until the batch holding them is sent.
+ */
+final class SequenceTracker {
+  static final int FILL_NONE = 0;
+  static final int FILL_HOLD = 1;
+  static final int FILL_LINEAR = 2;
+  static final int FILL_NAN = 3;
+
+  // gaps not sent yet, oldest dropped beyond this
+  private static final int MAX_PENDING_GAPS = 512;
+
+  final int policy;
+  private final long maxGapMs;
+  private int channelCount;
+  private boolean started;
+  private int expectedIndex;
+  private float[] lastValid;
+  private boolean[] hasLastValid;
+  private int[] gaps = new int[16];
+  private int gapCount;
+  private int discontinuities;
+
+  SequenceTracker(int policy, long maxGapMs) {
+    if (policy < FILL_NONE || policy > FILL_NAN){
+      throw new IllegalArgumentException("invalid fill policy");
+    }
+    if (maxGapMs <= 0){
+      throw new IllegalArgumentException("maxGapMs needs > 0");
+    }
+    this.policy = policy;
+    this.maxGapMs = maxGapMs;
+  }
+
+  void reset(){
+    started = false;
+    channelCount = 0;
+  }
+
+  /**
+   * Returns the packet with gaps filled and duplicates dropped, the packet itself if nothing changed,
+   * or null if every sample was a duplicate.
+   */
+  SamplePacket process(SamplePacket packet){
+    if (packet.hasImpedance()){
+      return packet;
+    }
+    int sampleCount = packet.sampleCount;
+    int channels = packet.channelCount;
+    if (channels != channelCount){
+      channelCount = channels;
+      started = false;
+      lastValid = new float[channels];
+      hasLastValid = new boolean[channels];
+    }
+    int maxGap = (int) Math.max(1, packet.sampleRate * maxGapMs / 1000);
+
+    int[] insert = null;
+    boolean[] drop = null;
+    int outputCount = 0;
+    int lostStart = 0;
+    int lostLength = 0;
+    for (int i = 0; i < sampleCount; ++i){
+      int sampleIndex = packet.sampleIndex[i];
+      if (started){
+        int delta = sampleIndex - expectedIndex;
+        if (delta > 0 && delta <= maxGap){
+          // the lost run before the gap goes first, gaps stay in sampleIndex order
+          if (lostLength > 0){
+            addGap(lostStart, lostLength);
+            lostLength = 0;
+          }
+          addGap(expectedIndex, delta);
+          if (policy != FILL_NONE){
+            if (insert == null){
+              insert = new int[sampleCount];
+            }
+            insert[i] = delta;
+            outputCount += delta;
+          }
+        }else if (delta < 0 && delta >= -maxGap){
+          if (drop == null){
+            drop = new boolean[sampleCount];
+          }
+          drop[i] = true;
+          continue;
+        }else if (delta != 0){
+          ++discontinuities;
+        }
+      }
+      started = true;
+      expectedIndex = sampleIndex + 1;
+      ++outputCount;
+
+      boolean lost = false;
+      for (int channel = 0; channel < channels && !lost; ++channel){
+        lost = packet.lost[channel * sampleCount + i];
+      }
+      if (lost && lostLength > 0 && lostStart + lostLength == sampleIndex){
+        ++lostLength;
+      }else{
+        if (lostLength > 0){
+          addGap(lostStart, lostLength);
+        }
+        lostStart = sampleIndex;
+        lostLength = lost ? 1 : 0;
+      }
+    }
+    if (lostLength > 0){
+      addGap(lostStart, lostLength);
+    }
+    if (outputCount == 0){
+      return null;
+    }
+    if (insert == null && drop == null){
+      if (policy == FILL_NONE){
+        return packet;
+      }
+      if (!hasLost(packet)){
+        rememberLastValid(packet.data, sampleCount);
+        return packet;
+      }
+      // the recorder may still be reading the packet, it keeps the raw data
+      float[] data = packet.data.clone();
+      fill(data, packet.lost, sampleCount);
+      return new SamplePacket(packet, packet.sampleRate, sampleCount, data, packet.sampleIndex, packet.lost);
+    }
+
+    float[] data = new float[channels * outputCount];
+    int[] sampleIndex = new int[channels * outputCount];
+    boolean[] lost = new boolean[channels * outputCount];
+    for (int channel = 0; channel < channels; ++channel){
+      int position = channel * outputCount;
+      for (int i = 0; i < sampleCount; ++i){
+        if (drop != null && drop[i]){
+          continue;
+        }
+        int from = channel * sampleCount + i;
+        int missing = insert != null ? insert[i] : 0;
+        for (int k = missing; k > 0; --k, ++position){
+          sampleIndex[position] = packet.sampleIndex[from] - k;
+          lost[position] = true;
+        }
+        data[position] = packet.data[from];
+        sampleIndex[position] = packet.sampleIndex[from];
+        lost[position] = packet.lost[from];
+        ++position;
+      }
+    }
+    if (policy != FILL_NONE){
+      fill(data, lost, outputCount);
+    }
+    return new SamplePacket(packet, packet.sampleRate, outputCount, data, sampleIndex, lost);
+  }
+
+  /**
+   * Replaces the data of lost samples in place. A linear run not closed within the packet holds instead.
+   */
+  private void fill(float[] data, boolean[] lost, int sampleCount){
+    for (int channel = 0; channel < channelCount; ++channel){
+      int base = channel * sampleCount;
+      for (int i = 0; i < sampleCount; ++i){
+        int position = base + i;
+        if (!lost[position]){
+          lastValid[channel] = data[position];
+          hasLastValid[channel] = true;
+          continue;
+        }
+        if (policy == FILL_NAN){
+          data[position] = Float.NaN;
+          continue;
+        }
+        float hold = hasLastValid[channel] ? lastValid[channel] : 0;
+        if (policy == FILL_HOLD){
+          data[position] = hold;
+          continue;
+        }
+        int end = i;
+        while (end < sampleCount && lost[base + end]){
+          ++end;
+        }
+        if (end == sampleCount || !hasLastValid[channel]){
+          for (; i < end; ++i){
+            data[base + i] = end == sampleCount ? hold : data[base + end];
+          }
+          --i;
+          continue;
+        }
+        float next = data[base + end];
+        int length = end - i + 1;
+        for (int k = 1; i < end; ++i, ++k){
+          data[base + i] = hold + (next - hold) * k / length;
+        }
+        --i;
+      }
+    }
+  }
+
+  private void rememberLastValid(float[] data, int sampleCount){
+    for (int channel = 0; channel < channelCount; ++channel){
+      lastValid[channel] = data[channel * sampleCount + sampleCount - 1];
+      hasLastValid[channel] = true;
+    }
+  }
+
+  private static boolean hasLost(SamplePacket packet){
+    for (boolean lost : packet.lost){
+      if (lost){
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addGap(int startSampleIndex, int length){
+    if (gapCount > 0 && gaps[gapCount * 2 - 2] + gaps[gapCount * 2 - 1] == startSampleIndex){
+      gaps[gapCount * 2 - 1] += length;
+      return;
+    }
+    if (gapCount == MAX_PENDING_GAPS){
+      System.arraycopy(gaps, 2, gaps, 0, gaps.length - 2);
+      --gapCount;
+    }
+    if (gapCount * 2 == gaps.length){
+      int[] grown = new int[gaps.length * 2];
+      System.arraycopy(gaps, 0, grown, 0, gaps.length);
+      gaps = grown;
+    }
+    gaps[gapCount * 2] = startSampleIndex;
+    gaps[gapCount * 2 + 1] = length;
+    ++gapCount;
+  }
+
+  /**
+   * Takes the gaps starting at or before lastSampleIndex as [start, length, start, length, ...].
+   */
+  int[] drainGaps(int lastSampleIndex){
+    int taken = 0;
+    while (taken < gapCount && gaps[taken * 2] - lastSampleIndex <= 0){
+      ++taken;
+    }
+    int[] result = Arrays.copyOf(gaps, taken * 2);
+    if (taken > 0){
+      System.arraycopy(gaps, taken * 2, gaps, 0, (gapCount - taken) * 2);
+      gapCount -= taken;
+    }
+    return result;
+  }
+
+  /**
+   * Discontinuities since the last call.
+   */
+  int takeDiscontinuities(){
+    int count = discontinuities;
+    discontinuities = 0;
+    return count;
+  }
+}
@@ -0,0 +1,279 @@
+package com.synchronisdk;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loopback TCP server that fans the samples sent to JS out to any number of clients, reached from a desktop with
+ * adb forward. One selector thread accepts and writes without blocking, frames are encoded once on the serializer
+ * thread and shared by all clients. A client with more than maxClientBytes not written yet is dropped, it never
+ * slows the others down.
+ *
+ * Stream layout, little endian:
+ *   hello:  int32 magic "SYNO", int16 version, sent once on connect
+ *   frames: int32 length of what follows, int8 type, payload
+ *     DATA: int16 mac length, mac UTF-8, int32 dataType, int32 sampleRate, int32 channelCount, int32 sampleCount,
+ *           int32 first sampleIndex, float64 t0 ms since epoch (NaN until the clock has a fit), float64 dt ms,
+ *           float32 data[channel][sample], then a lost bitset in the same order
+ * Whatever a client sends is ignored.
+ */
+final class StreamOutlet {
+  static final int MAGIC = 0x4f4e5953;
+  static final short VERSION = 1;
+  static final byte FRAME_DATA = 1;
+  static final int DEFAULT_MAX_CLIENT_BYTES = 1024 * 1024;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final class Client {
+    final SocketChannel channel;
+    final ConcurrentLinkedQueue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+    // bytes queued and not written yet
+    final AtomicLong pendingBytes = new AtomicLong();
+    volatile boolean dropped;
+    SelectionKey key;
+
+    Client(SocketChannel channel) {
+      this.channel = channel;
+    }
+  }
+
+  final int maxClientBytes;
+  final AtomicLong sentFrames = new AtomicLong();
+  final AtomicLong sentBytes = new AtomicLong();
+  final AtomicLong acceptedClients = new AtomicLong();
+  final AtomicLong droppedClients = new AtomicLong();
+
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+  private final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+  private volatile boolean running = true;
+
+  /**
+   * Binds to 127.0.0.1, port 0 picks a free one.
+   */
+  StreamOutlet(int port, int maxClientBytes) throws IOException {
+    this.maxClientBytes = maxClientBytes;
+    selector = Selector.open();
+    server = ServerSocketChannel.open();
+    try {
+      server.socket().setReuseAddress(true);
+      server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+      server.configureBlocking(false);
+      server.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e){
+      server.close();
+      selector.close();
+      throw e;
+    }
+  }
+
+  int port(){
+    return server.socket().getLocalPort();
+  }
+
+  int clientCount(){
+    return clients.size();
+  }
+
+  boolean hasClients(){
+    return !clients.isEmpty();
+  }
+
+  void start(){
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    }, "SynchronisdkOutlet");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Closes the server and all clients on the outlet thread.
+   */
+  void stop(){
+    running = false;
+    selector.wakeup();
+  }
+
+  /**
+   * Queues frame for every client, never blocks. The frame is not copied, it must not change afterwards.
+   */
+  void publish(byte[] frame){
+    boolean queued = false;
+    for (Client client : clients){
+      if (client.dropped){
+        continue;
+      }
+      if (client.pendingBytes.get() + frame.length > maxClientBytes){
+        client.dropped = true;
+      }else{
+        client.pendingBytes.addAndGet(frame.length);
+        client.frames.add(ByteBuffer.wrap(frame));
+      }
+      queued = true;
+    }
+    if (queued){
+      selector.wakeup();
+    }
+  }
+
+  private void loop(){
+    try {
+      while (running){
+        selector.select();
+        for (SelectionKey key : selector.selectedKeys()){
+          if (!key.isValid()){
+            continue;
+          }
+          if (key.isAcceptable()){
+            accept();
+          }else if (key.isReadable()){
+            read((Client) key.attachment());
+          }
+        }
+        selector.selectedKeys().clear();
+        for (Client client : clients){
+          write(client);
+        }
+      }
+    } catch (IOException e){
+      Log.e(SynchronisdkModule.TAG, "outlet error", e);
+    } finally {
+      for (Client client : clients){
+        close(client);
+      }
+      try {
+        server.close();
+        selector.close();
+      } catch (IOException ignored){
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel = server.accept();
+    if (channel == null){
+      return;
+    }
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Client client = new Client(channel);
+    client.key = channel.register(selector, SelectionKey.OP_READ, client);
+    ByteBuffer hello = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+    hello.putInt(MAGIC);
+    hello.putShort(VERSION);
+    hello.flip();
+    client.pendingBytes.addAndGet(hello.remaining());
+    client.frames.add(hello);
+    clients.add(client);
+    acceptedClients.incrementAndGet();
+  }
+
+  private void read(Client client){
+    try {
+      readBuffer.clear();
+      if (client.channel.read(readBuffer) < 0){
+        close(client);
+      }
+    } catch (IOException e){
+      close(client);
+    }
+  }
+
+  /**
+   * Writes what the socket takes now, waits for OP_WRITE for the rest.
+   */
+  private void write(Client client){
+    if (client.dropped){
+      droppedClients.incrementAndGet();
+      close(client);
+      return;
+    }
+    try {
+      ByteBuffer frame;
+      while ((frame = client.frames.peek()) != null){
+        int written = client.channel.write(frame);
+        client.pendingBytes.addAndGet(-written);
+        sentBytes.addAndGet(written);
+        if (frame.hasRemaining()){
+          break;
+        }
+        client.frames.poll();
+        sentFrames.incrementAndGet();
+      }
+      if (client.key.isValid()){
+        client.key.interestOps(frame != null ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      }
+    } catch (IOException e){
+      close(client);
+    }
+  }
+
+  private void close(Client client){
+    clients.remove(client);
+    client.frames.clear();
+    try {
+      client.channel.close();
+    } catch (IOException ignored){
+    }
+  }
+
+  /**
+   * A DATA frame of packet, t0 and dt as from the ClockModel of its stream. The packet must hold samples.
+   */
+  static byte[] encodeData(SamplePacket packet, double t0, double dt){
+    if (packet.sampleCount == 0){
+      throw new IllegalArgumentException("empty packet");
+    }
+    byte[] mac = packet.deviceMac.getBytes(UTF8);
+    int total = packet.channelCount * packet.sampleCount;
+    int length = 1 + 2 + mac.length + 5 * 4 + 2 * 8 + total * 4 + (total + 7) / 8;
+    ByteBuffer buffer = ByteBuffer.allocate(4 + length).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(length);
+    buffer.put(FRAME_DATA);
+    buffer.putShort((short) mac.length);
+    buffer.put(mac);
+    buffer.putInt(packet.dataType);
+    buffer.putInt(packet.sampleRate);
+    buffer.putInt(packet.channelCount);
+    buffer.putInt(packet.sampleCount);
+    buffer.putInt(packet.sampleIndex[0]);
+    buffer.putDouble(t0);
+    buffer.putDouble(dt);
+    for (int i = 0; i < total; ++i){
+      buffer.putFloat(packet.data[i]);
+    }
+    int bits = 0;
+    for (int i = 0; i < total; ++i){
+      if (packet.lost[i]){
+        bits |= 1 << (i & 7);
+      }
+      if ((i & 7) == 7){
+        buffer.put((byte) bits);
+        bits = 0;
+      }
+    }
+    if ((total & 7) != 0){
+      buffer.put((byte) bits);
+    }
+    return buffer.array();
+  }
+}
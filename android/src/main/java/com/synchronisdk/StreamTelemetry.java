@@ -0,0 +1,134 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of one device and data type. Writers only do atomic adds, readers take a snapshot at any time.
+ * Latency is from onSensorNotifyData of the oldest package in a batch to its emit, in power of two microsecond buckets.
+ */
+final class StreamTelemetry {
+  private static final int LATENCY_BUCKETS = 26;
+  private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long RATE_STALE_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+  final String deviceMac;
+  final int dataType;
+  final AtomicLong packagesReceived = new AtomicLong();
+  final AtomicLong samplesReceived = new AtomicLong();
+  final AtomicLong lostSamples = new AtomicLong();
+  final AtomicLong emittedBatches = new AtomicLong();
+  final AtomicLong droppedBatches = new AtomicLong();
+  private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS);
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+  // written by the serializer thread only
+  // of the packets as received, before the processing chain
+  volatile int sampleRate;
+  private volatile double samplesPerSecond;
+  private volatile long lastPacketNanos;
+  private long rateWindowStartNanos;
+  private long rateWindowSamples;
+
+  StreamTelemetry(String deviceMac, int dataType) {
+    this.deviceMac = deviceMac;
+    this.dataType = dataType;
+  }
+
+  /**
+   * Serializer thread, counts a sample as lost if any of its channels is.
+   */
+  void onPacket(SamplePacket packet){
+    int sampleCount = packet.sampleCount;
+    int lost = 0;
+    for (int i = 0; i < sampleCount; ++i){
+      for (int position = i; position < packet.lost.length; position += sampleCount){
+        if (packet.lost[position]){
+          ++lost;
+          break;
+        }
+      }
+    }
+    sampleRate = packet.sampleRate;
+    samplesReceived.addAndGet(sampleCount);
+    if (lost > 0){
+      lostSamples.addAndGet(lost);
+    }
+
+    long nowNanos = packet.receivedNanos;
+    if (rateWindowStartNanos == 0 || nowNanos - lastPacketNanos > RATE_STALE_NANOS){
+      rateWindowStartNanos = nowNanos;
+      rateWindowSamples = 0;
+    }
+    rateWindowSamples += sampleCount;
+    long elapsed = nowNanos - rateWindowStartNanos;
+    if (elapsed >= RATE_WINDOW_NANOS){
+      samplesPerSecond = rateWindowSamples * 1e9 / elapsed;
+      rateWindowStartNanos = nowNanos;
+      rateWindowSamples = 0;
+    }
+    lastPacketNanos = nowNanos;
+  }
+
+  void onEmit(long latencyNanos, boolean delivered){
+    if (!delivered){
+      droppedBatches.incrementAndGet();
+      return;
+    }
+    emittedBatches.incrementAndGet();
+    if (latencyNanos < 0){
+      return;
+    }
+    long micros = latencyNanos / 1000;
+    int bucket = Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    latencyBuckets.incrementAndGet(bucket);
+    long max = maxLatencyNanos.get();
+    while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)){
+      max = maxLatencyNanos.get();
+    }
+  }
+
+  WritableMap snapshot(long nowNanos){
+    WritableMap result = Arguments.createMap();
+    result.putInt("dataType", dataType);
+    result.putDouble("packagesReceived", packagesReceived.get());
+    result.putDouble("samplesReceived", samplesReceived.get());
+    result.putDouble("samplesPerSecond", nowNanos - lastPacketNanos > RATE_STALE_NANOS ? 0 : samplesPerSecond);
+    result.putDouble("lostSamples", lostSamples.get());
+    result.putDouble("emittedBatches", emittedBatches.get());
+    result.putDouble("droppedBatches", droppedBatches.get());
+
+    long[] buckets = new long[LATENCY_BUCKETS];
+    long count = 0;
+    for (int i = 0; i < LATENCY_BUCKETS; ++i){
+      buckets[i] = latencyBuckets.get(i);
+      count += buckets[i];
+    }
+    result.putDouble("latencyP50Ms", percentile(buckets, count, 0.5));
+    result.putDouble("latencyP99Ms", percentile(buckets, count, 0.99));
+    result.putDouble("latencyMaxMs", maxLatencyNanos.get() / 1e6);
+    return result;
+  }
+
+  /**
+   * Upper bound of the bucket holding the percentile, in milliseconds.
+   */
+  private static double percentile(long[] buckets, long count, double percentile){
+    if (count == 0){
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * percentile);
+    long seen = 0;
+    for (int i = 0; i < buckets.length; ++i){
+      seen += buckets[i];
+      if (seen >= rank){
+        return (1L << i) / 1000.0;
+      }
+    }
+    return (1L << (buckets.length - 1)) / 1000.0;
+  }
+}
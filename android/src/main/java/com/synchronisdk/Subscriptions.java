@@ -0,0 +1,102 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.ReadableArray;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Who listens to which event, read without locks on every emit.
+ *
+ * JS listeners are counted per event name by addListener. removeListeners only tells how many went away, not
+ * which, so an event counts as listened until all listeners are gone. That is enough to skip the events nobody
+ * ever listened to.
+ * Device events (GOT_DATA and the like) are also filtered by the events each device was subscribed to, a device
+ * never subscribed gets them all. Device sets are replaced whole, never changed in place.
+ */
+final class Subscriptions {
+  static final String[] DEVICE_EVENTS = {"GOT_DATA", "GOT_DATA_SUMMARY", "GOT_FEATURES", "STREAM_STATS"};
+
+  private final AtomicInteger listenerCount = new AtomicInteger();
+  private final ConcurrentHashMap<String, AtomicInteger> eventListeners = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Set<String>> deviceEvents = new ConcurrentHashMap<>();
+
+  void addListener(String eventName){
+    AtomicInteger count = eventListeners.get(eventName);
+    if (count == null){
+      AtomicInteger created = new AtomicInteger();
+      count = eventListeners.putIfAbsent(eventName, created);
+      if (count == null){
+        count = created;
+      }
+    }
+    count.incrementAndGet();
+    listenerCount.incrementAndGet();
+  }
+
+  void removeListeners(int count){
+    int current;
+    int next;
+    do {
+      current = listenerCount.get();
+      next = Math.max(0, current - count);
+    } while (!listenerCount.compareAndSet(current, next));
+    if (next == 0){
+      eventListeners.clear();
+    }
+  }
+
+  boolean hasListeners(){
+    return listenerCount.get() > 0;
+  }
+
+  boolean hasListeners(String eventName){
+    if (listenerCount.get() <= 0){
+      return false;
+    }
+    AtomicInteger count = eventListeners.get(eventName);
+    return count != null && count.get() > 0;
+  }
+
+  /**
+   * True if eventName of deviceMac reaches a JS listener, checked before building its payload.
+   */
+  boolean wants(String deviceMac, String eventName){
+    if (!hasListeners(eventName)){
+      return false;
+    }
+    Set<String> events = deviceEvents.get(deviceMac);
+    return events == null || events.contains(eventName);
+  }
+
+  /**
+   * Replaces the device events deviceMac is subscribed to, null subscribes it to all again.
+   */
+  void setDeviceEvents(String deviceMac, ReadableArray eventNames){
+    if (eventNames == null){
+      deviceEvents.remove(deviceMac);
+      return;
+    }
+    Set<String> events = new HashSet<>();
+    for (int i = 0; i < eventNames.size(); ++i){
+      String eventName = eventNames.getString(i);
+      if (!isDeviceEvent(eventName)){
+        throw new IllegalArgumentException("not a device event: " + eventName);
+      }
+      events.add(eventName);
+    }
+    deviceEvents.put(deviceMac, Collections.unmodifiableSet(events));
+  }
+
+  private static boolean isDeviceEvent(String eventName){
+    for (String deviceEvent : DEVICE_EVENTS){
+      if (deviceEvent.equals(eventName)){
+        return true;
+      }
+    }
+    return false;
+  }
+}
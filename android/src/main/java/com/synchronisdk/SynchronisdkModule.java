@@ -5,6 +5,7 @@ import static com.sensor.BLEDevice.State.Ready;
 
 import android.annotation.SuppressLint;
 import android.bluetooth.BluetoothDevice;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -16,10 +17,10 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.bridge.WritableNativeMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.sensor.BLEDevice;
@@ -27,130 +28,578 @@ import com.sensor.SensorController;
 import com.sensor.SensorData;
 import com.sensor.SensorProfile;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
   public static final String NAME = "Synchronisdk";
   public static final String TAG = "Synchronisdk";
-  private static final int TIMEOUT = 50000;
   private SensorController sensorScaner;
-  private int listenerCount = 0;
+  private final Subscriptions subscriptions = new Subscriptions();
+
+  private final ConcurrentHashMap<String, Integer> dataFormats = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, SensorStream> streams = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, BatchPolicy> batchPolicies = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, FlowControl> flowControls = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, SampleWindow> windows = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, FrameAggregator> aggregators = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ProcessingChain> chains = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, SequenceTracker> trackers = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, FeatureExtractor> features = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, SampleRecorder> recorders = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, EdfWriter> edfWriters = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, ReplaySensor> replays = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, StreamTelemetry> telemetry = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Long> statsIntervals = new ConcurrentHashMap<>();
+  private final HashMap<String, Long> statsEmitNanos = new HashMap<>();
+
+  private final SamplePipeline pipeline;
+  private final FrameAggregator.FrameSink frameSink;
+  private final ReplaySensor.Listener replayListener;
+  private final Scheduler scheduler = new Scheduler("SynchronisdkScheduler");
+  private final DevicePoller poller;
+  private final PendingCommands pendingCommands = new PendingCommands(scheduler);
+  private final ConcurrentHashMap<String, BringUp> bringUps = new ConcurrentHashMap<>();
+  private final ScanTable scanTable = new ScanTable();
+  private volatile ContinuousScan continuousScan;
+  private volatile StreamOutlet outlet;
+  private final BringUp.Commands bringUpCommands;
+  private final DeviceRegistry registry;
 
   private SensorProfile.SensorProfileDelegate dataCallback;
   @ReactMethod
   public void addListener(String eventName) {
-    if (listenerCount == 0) {
-      // Set up any upstream listeners or background tasks as necessary
-    }
-
-    listenerCount += 1;
-//    Log.d(TAG, "add listener count: " + listenerCount);
+    subscriptions.addListener(eventName);
   }
 
   @ReactMethod
   public void removeListeners(double count) {
-    listenerCount -= count;
-    if (listenerCount == 0) {
-      // Remove upstream listeners, stop unnecessary background tasks
-    }
-//    Log.d(TAG, "remove listener count: " + listenerCount);
+    subscriptions.removeListeners((int) count);
   }
 
-  private void sendEvent(ReactContext reactContext, String eventName, @Nullable Object params)
+  private boolean sendEvent(ReactContext reactContext, String eventName, @Nullable Object params)
   {
-    if (listenerCount > 0)
+    if (subscriptions.hasListeners(eventName)){
       reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class).emit(eventName, params);
+      return true;
+    }
+    return false;
+  }
+
+  private void sendSensorData(ReactContext reactContext, SamplePacket packet){
+    if (packet.sampleCount == 0){
+      return;
+    }
+    String key = SensorStream.key(packet.deviceMac, packet.dataType);
+    getTelemetry(key, packet.deviceMac, packet.dataType).onPacket(packet);
+    SensorStream stream = getStream(key, packet.deviceMac, packet.dataType);
+    stream.clock.update(packet);
+    List<MarkerQueue.Marker> marked = stream.markers.map(stream.clock, packet.sampleIndex[packet.sampleCount - 1]);
+    SampleRecorder recorder = marked != null ? recorders.get(packet.deviceMac) : null;
+    if (recorder != null){
+      for (MarkerQueue.Marker marker : marked){
+        recorder.offerMarker(marker);
+      }
+    }
+    SequenceTracker tracker = trackers.get(key);
+    if (tracker != null){
+      packet = tracker.process(packet);
+      if (packet == null){
+        // all duplicates
+        return;
+      }
+    }
+    ProcessingChain chain = chains.get(key);
+    if (chain != null){
+      try {
+        packet = chain.process(packet);
+      } catch (IllegalArgumentException e){
+        // set before the sample rate was known, or the rate changed since
+        Log.e(TAG, "processing chain removed: " + e.getMessage());
+        chains.remove(key, chain);
+      }
+    }
+    FeatureExtractor extractor = features.get(key);
+    if (extractor != null && subscriptions.wants(packet.deviceMac, "GOT_FEATURES")){
+      WritableMap result = extractor.append(packet);
+      if (result != null){
+        sendEvent(reactContext, "GOT_FEATURES", result);
+      }
+    }
+    stream.update(packet);
+    StreamOutlet currentOutlet = outlet;
+    if (currentOutlet != null && currentOutlet.hasClients() && !packet.hasImpedance() && packet.sampleCount > 0){
+      publishToOutlet(currentOutlet, stream, packet);
+    }
+    // nothing is buffered for a device no one takes data of
+    boolean wantsData = subscriptions.wants(packet.deviceMac, "GOT_DATA") || subscriptions.wants(packet.deviceMac, "GOT_DATA_SUMMARY");
+    if (wantsData && (extractor == null || !extractor.options.suppressData)){
+      stream.samples.append(packet);
+    }
+    SampleWindow window = windows.get(key);
+    if (window != null){
+      window.append(packet);
+    }
+    for (FrameAggregator aggregator : aggregators.values()){
+      aggregator.append(packet);
+    }
+    if (stream.pendingSinceNanos == 0 && stream.samples.size() >= stream.packageSampleCount){
+      stream.pendingSinceNanos = packet.receivedNanos;
+    }
+    flushStream(reactContext, stream, SystemClock.elapsedRealtimeNanos());
+  }
+
+  /**
+   * Emits the whole packages of the stream, merged into one event if the device has a BatchPolicy
+   * or its FlowControl stepped down from full delivery.
+   * Returns nanoseconds until the stream is due again, Long.MAX_VALUE if nothing is pending.
+   */
+  private long flushStream(ReactContext reactContext, SensorStream stream, long nowNanos){
+    int packageSampleCount = stream.packageSampleCount;
+    int packageCount = stream.samples.size() / packageSampleCount;
+    if (packageCount == 0){
+      return Long.MAX_VALUE;
+    }
+    int format = getDataFormat(stream.deviceMac);
+    StreamTelemetry counters = getTelemetry(SensorStream.key(stream.deviceMac, stream.dataType), stream.deviceMac, stream.dataType);
+    long latencyNanos = stream.pendingSinceNanos > 0 ? nowNanos - stream.pendingSinceNanos : -1;
+    BatchPolicy policy = batchPolicies.get(stream.deviceMac);
+    FlowControl flow = flowControls.get(stream.deviceMac);
+    int mode = FlowControl.MODE_FULL;
+    if (flow != null){
+      if (flow.update(nowNanos)){
+        emitDeliveryMode(reactContext, stream.deviceMac, flow);
+      }
+      mode = flow.mode();
+    }
+    if (mode != FlowControl.MODE_FULL){
+      long dueNanos = stream.lastEmitNanos + flow.options.coalesceNanos;
+      if (policy != null){
+        dueNanos = Math.max(dueNanos, policy.dueNanos(stream));
+      }
+      if (nowNanos < dueNanos){
+        return dueNanos - nowNanos;
+      }
+      int sampleCount = packageSampleCount * packageCount;
+      if (mode == FlowControl.MODE_SUMMARY){
+        counters.onEmit(latencyNanos, emitSummary(reactContext, stream, sampleCount, flow, nowNanos));
+      }else{
+        int stride = mode == FlowControl.MODE_DECIMATED ? flow.options.decimate : 1;
+        counters.onEmit(latencyNanos, emitBatch(reactContext, stream, format, sampleCount, packageCount, stride, flow, nowNanos));
+      }
+    }else if (policy != null){
+      long dueNanos = policy.dueNanos(stream);
+      if (nowNanos < dueNanos){
+        return dueNanos - nowNanos;
+      }
+      counters.onEmit(latencyNanos, emitBatch(reactContext, stream, format, packageSampleCount * packageCount, packageCount, 1, flow, nowNanos));
+    }else{
+      for (int i = 0; i < packageCount; ++i){
+        counters.onEmit(latencyNanos, emitBatch(reactContext, stream, format, packageSampleCount, 1, 1, flow, nowNanos));
+      }
+    }
+    stream.lastEmitNanos = nowNanos;
+    stream.pendingSinceNanos = 0;
+    return Long.MAX_VALUE;
+  }
+
+  private boolean emitBatch(ReactContext reactContext, SensorStream stream, int format, int sampleCount, int packageCount,
+                            int stride, FlowControl flow, long nowNanos){
+    if (!isDeliverable(stream, "GOT_DATA", flow, nowNanos)){
+      putGaps(stream, sampleCount, null);
+      putMarkers(stream, sampleCount, null);
+      stream.samples.consume(sampleCount);
+      return false;
+    }
+    WritableMap result;
+    if (format == SamplePacker.FORMAT_SAMPLES){
+      result = SamplePacker.packSamples(stream, sampleCount, stride);
+    }else{
+      result = SamplePacker.packColumnar(stream, sampleCount, stride);
+    }
+    result.putInt("packageCount", packageCount);
+    putClock(stream, sampleCount, stride, result);
+    putGaps(stream, sampleCount, result);
+    putMarkers(stream, sampleCount, result);
+    stream.samples.consume(sampleCount);
+    return sendCredited(reactContext, "GOT_DATA", result, flow);
+  }
+
+  private boolean emitSummary(ReactContext reactContext, SensorStream stream, int sampleCount, FlowControl flow,
+                              long nowNanos){
+    if (!isDeliverable(stream, "GOT_DATA_SUMMARY", flow, nowNanos)){
+      putGaps(stream, sampleCount, null);
+      putMarkers(stream, sampleCount, null);
+      stream.samples.consume(sampleCount);
+      return false;
+    }
+    WritableMap result = SamplePacker.packSummary(stream, sampleCount);
+    putClock(stream, sampleCount, 1, result);
+    putGaps(stream, sampleCount, result);
+    putMarkers(stream, sampleCount, result);
+    stream.samples.consume(sampleCount);
+    return sendCredited(reactContext, "GOT_DATA_SUMMARY", result, flow);
   }
 
-  private void sendSensorData(ReactContext reactContext, SensorData sensorData){
-    Vector<Vector<SensorData.Sample>> channelSamples = sensorData.channelSamples;
-    int realSampleCount = 0;
-    if (channelSamples.size() > 0){
-      realSampleCount = channelSamples.get(0).size();
+  /**
+   * False if no one listens to eventName of the stream's device or its FlowControl is saturated.
+   * Without a listener the events in flight will never be acked, they are taken as handled.
+   */
+  private boolean isDeliverable(SensorStream stream, String eventName, FlowControl flow, long nowNanos){
+    if (!subscriptions.wants(stream.deviceMac, eventName)){
+      if (flow != null){
+        flow.reset();
+      }
+      return false;
     }
-    if (realSampleCount < sensorData.minPackageSampleCount){
+    return flow == null || !flow.isSaturated(nowNanos);
+  }
+
+  /**
+   * Adds t0, the host time of the first of the oldest sampleCount samples in ms since the epoch, and dt, the ms
+   * between two samples sent with stride, once the clock of the stream has a fit.
+   */
+  private static void putClock(SensorStream stream, int sampleCount, int stride, WritableMap result){
+    if (!stream.clock.isReady()){
       return;
     }
-    if (channelSamples == null){
+    int first = stream.samples.sampleIndex(0, 0);
+    double step = 1;
+    if (sampleCount > 1){
+      step = (double) (stream.samples.sampleIndex(0, sampleCount - 1) - first) / (sampleCount - 1);
+    }
+    result.putDouble("t0", stream.clock.timeMsOf(first));
+    result.putDouble("dt", stream.clock.periodMs() * step * stride);
+  }
+
+  /**
+   * Sends packet, as GOT_DATA gets it, to the clients of the outlet with the host time of its samples.
+   */
+  private static void publishToOutlet(StreamOutlet outlet, SensorStream stream, SamplePacket packet){
+    double t0 = Double.NaN;
+    double dt = Double.NaN;
+    if (stream.clock.isReady()){
+      int first = packet.sampleIndex[0];
+      double step = 1;
+      if (packet.sampleCount > 1){
+        step = (double) (packet.sampleIndex[packet.sampleCount - 1] - first) / (packet.sampleCount - 1);
+      }
+      t0 = stream.clock.timeMsOf(first);
+      dt = stream.clock.periodMs() * step;
+    }
+    outlet.publish(StreamOutlet.encodeData(packet, t0, dt));
+  }
+
+  /**
+   * Adds the gaps within the oldest sampleCount samples of the stream to result, drops them if result is null.
+   */
+  private void putGaps(SensorStream stream, int sampleCount, WritableMap result){
+    SequenceTracker tracker = trackers.get(SensorStream.key(stream.deviceMac, stream.dataType));
+    if (tracker == null){
       return;
     }
-    int batchCount = realSampleCount / sensorData.minPackageSampleCount;
-    int leftSampleSize = realSampleCount - sensorData.minPackageSampleCount * batchCount;
-    if (leftSampleSize > 0){
-      Vector<Vector<SensorData.Sample>> leftChannelSamples = new Vector<>();
-      for (int channelIndex = 0; channelIndex < sensorData.channelCount; ++channelIndex){
-        Vector<SensorData.Sample> samples = channelSamples.get(channelIndex);
-        Vector<SensorData.Sample> leftSamples = new Vector<>(samples.subList(sensorData.minPackageSampleCount * batchCount, realSampleCount));
-        leftChannelSamples.add(leftSamples);
+    int[] gaps = tracker.drainGaps(stream.samples.sampleIndex(0, sampleCount - 1));
+    int discontinuities = tracker.takeDiscontinuities();
+    if (result != null){
+      WritableArray gapArray = Arguments.createArray();
+      for (int value : gaps){
+        gapArray.pushInt(value);
       }
-      sensorData.channelSamples = leftChannelSamples;
-    }else{
-      sensorData.channelSamples = null;
+      result.putArray("gaps", gapArray);
+      if (discontinuities > 0){
+        result.putInt("discontinuities", discontinuities);
+      }
+    }
+  }
+
+  /**
+   * Adds the markers within the oldest sampleCount samples of the stream to result, drops them if result is null.
+   */
+  private static void putMarkers(SensorStream stream, int sampleCount, WritableMap result){
+    WritableArray markers = stream.markers.drain(stream.samples.sampleIndex(0, sampleCount - 1));
+    if (markers != null && result != null){
+      result.putArray("markers", markers);
+    }
+  }
+
+  /**
+   * Sends an event JS acks with its seq if the device has a FlowControl.
+   */
+  private boolean sendCredited(ReactContext reactContext, String eventName, WritableMap result, FlowControl flow){
+    if (flow == null){
+      return sendEvent(reactContext, eventName, result);
     }
+    long seq = flow.nextSeq();
+    result.putDouble("seq", seq);
+    result.putInt("deliveryMode", flow.mode());
+    if (!sendEvent(reactContext, eventName, result)){
+      return false;
+    }
+    flow.sent(seq);
+    return true;
+  }
 
+  private void emitDeliveryMode(ReactContext reactContext, String deviceMac, FlowControl flow){
+    WritableMap result = Arguments.createMap();
+    result.putString("deviceMac", deviceMac);
+    result.putInt("deliveryMode", flow.mode());
+    result.putInt("inFlight", flow.inFlight());
+    sendEvent(reactContext, "DELIVERY_MODE_CHANGED", result);
+  }
+
+  private long flushStreams(ReactContext reactContext, long nowNanos){
+    long waitNanos = Long.MAX_VALUE;
+    for (SensorStream stream : streams.values()){
+      if (stream.samples != null){
+        waitNanos = Math.min(waitNanos, flushStream(reactContext, stream, nowNanos));
+      }
+    }
+    for (FrameAggregator aggregator : aggregators.values()){
+      waitNanos = Math.min(waitNanos, aggregator.poll(nowNanos, frameSink));
+    }
+    return Math.min(waitNanos, emitStreamStats(reactContext, nowNanos));
+  }
 
-    for (int batchIndex = 0; batchIndex < batchCount;++batchIndex){
+  /**
+   * Sends STREAM_STATS of the devices with a stats interval, returns nanoseconds until the next one is due.
+   */
+  private long emitStreamStats(ReactContext reactContext, long nowNanos){
+    long waitNanos = Long.MAX_VALUE;
+    for (Map.Entry<String, Long> entry : statsIntervals.entrySet()){
+      String deviceMac = entry.getKey();
+      long intervalNanos = entry.getValue();
+      Long lastNanos = statsEmitNanos.get(deviceMac);
+      if (lastNanos == null || nowNanos - lastNanos >= intervalNanos){
+        if (lastNanos != null && subscriptions.wants(deviceMac, "STREAM_STATS")){
+          sendEvent(reactContext, "STREAM_STATS", buildStreamStats(deviceMac, nowNanos));
+        }
+        statsEmitNanos.put(deviceMac, nowNanos);
+        lastNanos = nowNanos;
+      }
+      waitNanos = Math.min(waitNanos, lastNanos + intervalNanos - nowNanos);
+    }
+    return waitNanos;
+  }
 
-      WritableMap result = Arguments.createMap();
-      result.putString("deviceMac", sensorData.deviceMac);
-      result.putInt("dataType", sensorData.dataType);
-//    result.putInt("resolutionBits", sensorData.resolutionBits);
-      result.putInt("sampleRate", sensorData.sampleRate);
-      result.putInt("channelCount", sensorData.channelCount);
-//    result.putInt("channelMask", (int) sensorData.channelMask);
-      result.putInt("packageSampleCount", sensorData.minPackageSampleCount);
-//    result.putDouble("K", sensorData.K);
-      WritableArray channelsResult = Arguments.createArray();
-
-      for (int channelIndex = 0; channelIndex < sensorData.channelCount; ++channelIndex){
-        Vector<SensorData.Sample> samples = channelSamples.get(channelIndex);
-        WritableArray samplesResult = Arguments.createArray();
-
-        for (int sampleIndex = 0;sampleIndex < sensorData.minPackageSampleCount;++sampleIndex){
-          SensorData.Sample sample = samples.remove(0);
-          WritableMap sampleResult = Arguments.createMap();
-//        sampleResult.putInt("rawData", sample.rawData);
-          sampleResult.putInt("sampleIndex", sample.sampleIndex);
-//        sampleResult.putInt("channelIndex", sample.channelIndex);
-//        sampleResult.putInt("timeStampInMs", sample.timeStampInMs);
-          sampleResult.putDouble("data", sample.data);
-          if (sensorData.dataType == SensorData.NTF_IMPEDANCE){
-            sampleResult.putDouble("impedance", sample.impedance);
-            sampleResult.putDouble("saturation", sample.saturation);
+  private WritableMap buildStreamStats(String deviceMac, long nowNanos){
+    WritableMap result = Arguments.createMap();
+    result.putString("deviceMac", deviceMac);
+    PacketQueue queue = pipeline.getQueue(deviceMac);
+    result.putInt("queueDepth", queue.size());
+    result.putInt("queueCapacity", queue.capacity());
+    result.putInt("queueHighWater", queue.highWater);
+    result.putDouble("droppedPackets", queue.droppedPackets.get());
+    WritableArray streamsResult = Arguments.createArray();
+    for (StreamTelemetry counters : telemetry.values()){
+      if (counters.deviceMac.equals(deviceMac)){
+        streamsResult.pushMap(counters.snapshot(nowNanos));
+      }
+    }
+    result.putArray("streams", streamsResult);
+    return result;
+  }
+
+  private StreamTelemetry getTelemetry(String key, String deviceMac, int dataType){
+    StreamTelemetry counters = telemetry.get(key);
+    if (counters == null){
+      counters = new StreamTelemetry(deviceMac, dataType);
+      StreamTelemetry existing = telemetry.putIfAbsent(key, counters);
+      if (existing != null){
+        counters = existing;
+      }
+    }
+    return counters;
+  }
+
+  private SensorStream getStream(String key, String deviceMac, int dataType){
+    SensorStream stream = streams.get(key);
+    if (stream == null){
+      stream = new SensorStream(deviceMac, dataType);
+      SensorStream existing = streams.putIfAbsent(key, stream);
+      if (existing != null){
+        stream = existing;
+      }
+    }
+    return stream;
+  }
+
+  private void clearStreams(final String deviceMac){
+    pipeline.post(new Runnable() {
+      @Override
+      public void run() {
+        FlowControl flow = flowControls.get(deviceMac);
+        if (flow != null){
+          flow.reset();
+        }
+        for (SensorStream stream : streams.values()){
+          if (stream.deviceMac.equals(deviceMac)){
+            stream.clear();
+            SequenceTracker tracker = trackers.get(SensorStream.key(deviceMac, stream.dataType));
+            if (tracker != null){
+              tracker.reset();
+            }
           }
-          sampleResult.putBoolean("isLost", sample.isLost);
-          samplesResult.pushMap(sampleResult);
         }
-        channelsResult.pushArray(samplesResult);
       }
+    });
+  }
+
+  private void onDeviceStateChange(String deviceMac, BLEDevice.State newState){
+    WritableMap result = Arguments.createMap();
+    result.putString("deviceMac", deviceMac);
+    result.putInt("newState", newState.ordinal());
+    registry.onStateChange(deviceMac, newState);
+    if (newState == Disconnected){
+      clearStreams(deviceMac);
+      pendingCommands.cancel(deviceMac, null, "device disconnected");
+    }
+    poller.onStateReported(deviceMac, newState);
+    BringUp bringUp = bringUps.get(deviceMac);
+    if (bringUp != null){
+      bringUp.onStateChange(deviceMac, newState);
+    }
+    sendEvent(getReactApplicationContext(), "STATE_CHANGED", result);
+  }
+
+  private void onDeviceError(String deviceMac, String errorMsg){
+    WritableMap result = Arguments.createMap();
+    result.putString("deviceMac", deviceMac);
+    result.putString("errMsg", errorMsg);
+    sendEvent(getReactApplicationContext(), "GOT_ERROR", result);
+  }
+
+  private void onPacket(SamplePacket packet){
+    getTelemetry(SensorStream.key(packet.deviceMac, packet.dataType), packet.deviceMac, packet.dataType)
+      .packagesReceived.incrementAndGet();
+    SampleRecorder recorder = recorders.get(packet.deviceMac);
+    if (recorder != null){
+      recorder.offer(packet);
+    }
+    EdfWriter edfWriter = edfWriters.get(packet.deviceMac);
+    if (edfWriter != null){
+      edfWriter.offer(packet);
+    }
+    pipeline.offer(packet);
+  }
+
+  private File resolveFile(String path){
+    File file = new File(path);
+    if (!file.isAbsolute()){
+      file = new File(getReactApplicationContext().getFilesDir(), path);
+    }
+    return file;
+  }
+
+  private void resolveReplayInit(ReplaySensor replay, int dataType, String method, Promise promise){
+    int channelCount = replay.getChannelCount(dataType);
+    if (channelCount > 0){
+      promise.resolve(channelCount);
+    }else{
+      promise.reject(method, "not in recording");
+    }
+  }
+
+  /**
+   * Rejects right away if the device is not Ready, a command would only wait for its timeout.
+   */
+  private static boolean checkConnected(SensorProfile sensor, String method, Promise promise){
+    if (sensor.getDeviceState() != Ready){
+      promise.reject(method, "device not connected");
+      return false;
+    }
+    return true;
+  }
+
+  private static PendingCommands.Command positiveResult(String method, Promise promise){
+    return new PendingCommands.Command(method, promise) {
+      @Override
+      void onResult(int result, String errorMsg) {
+        if (result > 0){
+          promise.resolve(result);
+        }else{
+          promise.reject(method, errorMsg);
+        }
+      }
+    };
+  }
+
+  private static WritableMap deviceInfo(SensorProfile.DeviceInfo info, boolean onlyMTU){
+    WritableMap result = new WritableNativeMap();
+    result.putInt("MTUSize", info.MTUSize);
+    if (!onlyMTU){
+      result.putString("DeviceName", info.deviceName);
+      result.putString("ModelName", info.modelName);
+      result.putString("HardwareVersion", info.hardwareVersion);
+      result.putString("FirmwareVersion", info.firmwareVersion);
+    }
+    return result;
+  }
 
-      result.putArray("channelSamples", channelsResult);
-      sendEvent(reactContext, "GOT_DATA", result);
+  private static WritableMap replayDeviceInfo(ReplaySensor replay, boolean onlyMTU){
+    WritableMap result = new WritableNativeMap();
+    result.putInt("MTUSize", 247);
+    if (!onlyMTU){
+      result.putString("DeviceName", "Replay");
+      result.putString("ModelName", replay.index.deviceMac);
+      result.putString("HardwareVersion", "");
+      result.putString("FirmwareVersion", "");
     }
+    return result;
+  }
 
+  private int getDataFormat(String deviceMac){
+    Integer format = dataFormats.get(deviceMac);
+    return format != null ? format : SamplePacker.FORMAT_COLUMNAR;
   }
 
 
   SynchronisdkModule(ReactApplicationContext context) {
     super(context);
+    pipeline = new SamplePipeline(new SamplePipeline.Handler() {
+      @Override
+      public void onPacket(SamplePacket packet) {
+        sendSensorData(context, packet);
+      }
+
+      @Override
+      public long onIdle(long nowNanos) {
+        return flushStreams(context, nowNanos);
+      }
+    });
+    pipeline.start();
+    frameSink = new FrameAggregator.FrameSink() {
+      @Override
+      public void onFrame(WritableMap frame) {
+        sendEvent(context, "GOT_FRAME", frame);
+      }
+    };
     sensorScaner = SensorController.getInstance();
+    registry = new DeviceRegistry(sensorScaner);
     sensorScaner.delegate = new SensorController.SensorControllerDelegate() {
       @Override
       public void onSensorScanResult(List<BLEDevice> bleDevices) {
-        WritableArray result = new WritableNativeArray();
-        for (BLEDevice deviceRet:
-                bleDevices) {
-          WritableMap device = new WritableNativeMap();
-          device.putString("Name", deviceRet.name);
-          device.putString("Address", deviceRet.mac);
-          device.putInt("RSSI", deviceRet.rssi);
-          result.pushMap(device);
+        ContinuousScan scan = continuousScan;
+        if (scan != null){
+          for (BLEDevice device : bleDevices){
+            scan.onDeviceSeen(device.mac);
+          }
+        }
+        if (scanTable.options().incremental){
+          WritableMap delta = scanTable.update(bleDevices, SystemClock.elapsedRealtime());
+          if (delta != null){
+            sendEvent(getReactApplicationContext(), "GOT_DEVICE_DELTA", delta);
+          }
+          return;
+        }
+        if (subscriptions.hasListeners("GOT_DEVICE_LIST")){
+          sendEvent(getReactApplicationContext(), "GOT_DEVICE_LIST", scanTable.filter(bleDevices));
         }
-        sendEvent(getReactApplicationContext(), "GOT_DEVICE_LIST", result);
       }
     };
 
@@ -158,25 +607,172 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       @Override
       public void onErrorCallback(SensorProfile profile, String errorMsg) {
         Log.d(NAME, "got error:" + errorMsg);
-        WritableMap result = Arguments.createMap();
-        result.putString("deviceMac", profile.getDevice().mac);
-        result.putString("errMsg", errorMsg);
-        sendEvent(getReactApplicationContext(), "GOT_ERROR", result);
+        onDeviceError(profile.getDevice().mac, errorMsg);
       }
 
       @Override
       public void onStateChange(SensorProfile profile, BLEDevice.State newState) {
         Log.d(NAME, "got new device state:" + newState);
+        onDeviceStateChange(profile.getDevice().mac, newState);
+      }
+
+      @Override
+      public void onSensorNotifyData(SensorProfile profile, SensorData rawData) {
+        SamplePacket packet = SamplePacket.from(rawData);
+        if (packet != null){
+          onPacket(packet);
+        }
+      }
+    };
+
+    replayListener = new ReplaySensor.Listener() {
+      @Override
+      public void onStateChange(ReplaySensor sensor, BLEDevice.State newState) {
+        onDeviceStateChange(sensor.deviceMac, newState);
+      }
+
+      @Override
+      public void onPacket(SamplePacket packet) {
+        SynchronisdkModule.this.onPacket(packet);
+      }
+
+      @Override
+      public void onError(ReplaySensor sensor, String errorMsg) {
+        onDeviceError(sensor.deviceMac, errorMsg);
+      }
+    };
+
+    poller = new DevicePoller(new DevicePoller.Listener() {
+      @Override
+      public BLEDevice.State getDeviceState(String deviceMac) {
+        ReplaySensor replay = replays.get(deviceMac);
+        if (replay != null){
+          return replay.getDeviceState();
+        }
+        SensorProfile sensor = registry.getSensor(deviceMac);
+        return sensor != null ? sensor.getDeviceState() : null;
+      }
+
+      @Override
+      public void fetchBatteryLevel(String deviceMac) {
+        if (replays.get(deviceMac) != null){
+          poller.onBatteryLevel(deviceMac, 100);
+          return;
+        }
+        SensorProfile sensor = registry.getSensor(deviceMac);
+        if (sensor == null){
+          poller.onBatteryLevel(deviceMac, -1);
+          return;
+        }
+        sensor.getBatteryLevel(pendingCommands.timeoutOf(deviceMac, "getBatteryLevel"), new SensorProfile.Callback() {
+          @Override
+          public void gotResult(int result, String errorMsg) {
+            poller.onBatteryLevel(deviceMac, result);
+          }
+        });
+      }
 
+      @Override
+      public void onStateChanged(String deviceMac, BLEDevice.State newState) {
+        Log.d(NAME, "polled new device state:" + newState);
+        onDeviceStateChange(deviceMac, newState);
+      }
+
+      @Override
+      public void onPowerChanged(String deviceMac, int power) {
+        registry.onBattery(deviceMac, power);
         WritableMap result = Arguments.createMap();
-        result.putString("deviceMac", profile.getDevice().mac);
-        result.putInt("newState", newState.ordinal());
-        sendEvent(getReactApplicationContext(), "STATE_CHANGED", result);
+        result.putString("deviceMac", deviceMac);
+        result.putInt("power", power);
+        sendEvent(getReactApplicationContext(), "POWER_CHANGED", result);
       }
+    }, scheduler);
 
+    bringUpCommands = new BringUp.Commands() {
       @Override
-      public void onSensorNotifyData(SensorProfile profile, SensorData rawData) {
-        sendSensorData(context, rawData);
+      public BLEDevice.State getDeviceState(String deviceMac) {
+        ReplaySensor replay = replays.get(deviceMac);
+        if (replay != null){
+          return replay.getDeviceState();
+        }
+        SensorProfile sensor = registry.getSensor(deviceMac);
+        return sensor != null ? sensor.getDeviceState() : null;
+      }
+
+      @Override
+      public boolean connect(String deviceMac) {
+        ReplaySensor replay = replays.get(deviceMac);
+        if (replay != null){
+          return replay.connect();
+        }
+        return registry.getSensor(deviceMac).connect();
+      }
+
+      @Override
+      public void initDataTransfer(String deviceMac, boolean isGetFeature, SensorProfile.Callback callback) {
+        ReplaySensor replay = replays.get(deviceMac);
+        if (replay != null){
+          callback.gotResult(isGetFeature ? replay.getFeatureMap() : 1, "nothing to replay");
+          return;
+        }
+        registry.getSensor(deviceMac).initDataTransfer(isGetFeature, pendingCommands.timeoutOf(deviceMac, "initDataTransfer"), callback);
+      }
+
+      @Override
+      public void initData(String deviceMac, int dataType, int packageSampleCount, SensorProfile.Callback callback) {
+        ReplaySensor replay = replays.get(deviceMac);
+        if (replay != null){
+          callback.gotResult(replay.getChannelCount(dataType), "not in recording");
+          return;
+        }
+        SensorProfile sensor = registry.getSensor(deviceMac);
+        if (dataType == SensorData.NTF_EEG){
+          sensor.initEEG(packageSampleCount, pendingCommands.timeoutOf(deviceMac, "initEEG"), callback);
+        }else if (dataType == SensorData.NTF_ECG){
+          sensor.initECG(packageSampleCount, pendingCommands.timeoutOf(deviceMac, "initECG"), callback);
+        }else if (dataType == SensorData.NTF_ACC_DATA){
+          sensor.initIMU(packageSampleCount, pendingCommands.timeoutOf(deviceMac, "initIMU"), callback);
+        }else{
+          sensor.initBRTH(packageSampleCount, pendingCommands.timeoutOf(deviceMac, "initBRTH"), callback);
+        }
+      }
+
+      @Override
+      public void fetchDeviceInfo(String deviceMac, BringUp.DeviceInfoCallback callback) {
+        ReplaySensor replay = replays.get(deviceMac);
+        if (replay != null){
+          callback.gotResult(replayDeviceInfo(replay, false), null);
+          return;
+        }
+        SensorProfile sensor = registry.getSensor(deviceMac);
+        sensor.fetchDeviceInfo(false, pendingCommands.timeoutOf(deviceMac, "getDeviceInfo"), new SensorProfile.Callback() {
+          @Override
+          public void gotResult(int result, String errorMsg) {
+            if (result > 0){
+              registry.onDeviceInfo(deviceMac, sensor.getDeviceInfo(), false);
+              callback.gotResult(deviceInfo(sensor.getDeviceInfo(), false), null);
+            }else{
+              callback.gotResult(null, errorMsg);
+            }
+          }
+        });
+      }
+
+      @Override
+      public void startDataNotification(String deviceMac, SensorProfile.Callback callback) {
+        ReplaySensor replay = replays.get(deviceMac);
+        if (replay != null){
+          replay.setNotifying(true);
+          callback.gotResult(1, null);
+          return;
+        }
+        SensorProfile sensor = registry.getSensor(deviceMac);
+        sensor.startDataNotification(new SensorProfile.Callback() {
+          @Override
+          public void gotResult(int result, String errorMsg) {
+            callback.gotResult(sensor.hasStartDataNotification() ? 1 : 0, errorMsg);
+          }
+        });
       }
     };
   }
@@ -186,6 +782,37 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
   public String getName() {
     return NAME;
   }
+
+  @Override
+  public void invalidate() {
+    pipeline.stop();
+    poller.stop();
+    ContinuousScan scan = continuousScan;
+    if (scan != null){
+      scan.stop();
+    }
+    pendingCommands.cancelAll("module invalidated");
+    scheduler.shutdown();
+    for (SampleRecorder recorder : recorders.values()){
+      recorder.stop(null);
+    }
+    recorders.clear();
+    for (EdfWriter edfWriter : edfWriters.values()){
+      edfWriter.stop(null);
+    }
+    edfWriters.clear();
+    StreamOutlet currentOutlet = outlet;
+    if (currentOutlet != null){
+      currentOutlet.stop();
+      outlet = null;
+    }
+    for (ReplaySensor replay : replays.values()){
+      replay.disconnect();
+      replay.index.close();
+    }
+    replays.clear();
+    super.invalidate();
+  }
   @ReactMethod
   @DoNotStrip
   public void startScan(double _periodInMS, Promise promise){
@@ -193,6 +820,11 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("startScan", "please search after search return");
       return;
     }
+    ContinuousScan scan = continuousScan;
+    if (scan != null && scan.isRunning()){
+      promise.reject("startScan", "please stopContinuousScan first");
+      return;
+    }
     int periodInMS = (int) _periodInMS;
     Log.d(NAME, "timeout:" + periodInMS);
 
@@ -210,6 +842,75 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
   @ReactMethod
   @DoNotStrip
   @Override
+  public synchronized void startContinuousScan(ReadableMap options, Promise promise){
+    ContinuousScan.Options scanOptions;
+    try {
+      scanOptions = ContinuousScan.Options.parse(options);
+    } catch (IllegalArgumentException e){
+      promise.reject("startContinuousScan", e.getMessage());
+      return;
+    }
+    if (continuousScan != null){
+      continuousScan.stop();
+      continuousScan = null;
+    }
+    if (isScaning()){
+      promise.reject("startContinuousScan", "please search after search return");
+      return;
+    }
+    continuousScan = new ContinuousScan(scanOptions, new ContinuousScan.Scanner() {
+      @Override
+      public boolean startScan(int windowMs) {
+        return sensorScaner.startScan(windowMs);
+      }
+
+      @Override
+      public void stopScan() {
+        sensorScaner.stopScan();
+      }
+
+      @Override
+      public void reconnect(String deviceMac) {
+        scheduler.schedule(new Runnable() {
+          @Override
+          public void run() {
+            SensorProfile sensor = registry.getSensor(deviceMac);
+            if (sensor != null && sensor.getDeviceState() == Disconnected){
+              Log.d(NAME, "reconnect:" + deviceMac);
+              sensor.connect();
+            }
+          }
+        }, 0);
+      }
+    }, scheduler);
+    continuousScan.start();
+    promise.resolve(true);
+  }
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public synchronized void stopContinuousScan(Promise promise){
+    if (continuousScan != null){
+      continuousScan.stop();
+      continuousScan = null;
+    }
+    promise.resolve(null);
+  }
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setScanOptions(ReadableMap options, Promise promise){
+    try {
+      scanTable.setOptions(ScanTable.Options.parse(options));
+    } catch (IllegalArgumentException e){
+      promise.reject("setScanOptions", e.getMessage());
+      return;
+    }
+    promise.resolve(true);
+  }
+  @ReactMethod
+  @DoNotStrip
+  @Override
   public void stopScan(Promise promise) {
     if (isScaning()){
       sensorScaner.stopScan();
@@ -236,7 +937,10 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
     if (deviceMac == null || deviceMac.isEmpty()){
       return false;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
+    if (replays.get(deviceMac) != null){
+      return true;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
     if (sensor == null){
       return false;
     }
@@ -254,7 +958,12 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("connect","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      promise.resolve(replay.connect());
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
     promise.resolve(sensor.connect());
   }
   @ReactMethod
@@ -265,7 +974,13 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("disconnect","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      replay.disconnect();
+      promise.resolve(true);
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
     sensor.disconnect();
     promise.resolve(true);
   }
@@ -277,17 +992,23 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("startDataNotification","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      promise.resolve(replay.setNotifying(true));
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
     if (sensor.getDeviceState() != Ready){
       promise.resolve(false);
       return;
     }
-    sensor.startDataNotification(new SensorProfile.Callback() {
+    int timeout = pendingCommands.timeoutOf(deviceMac, "startDataNotification");
+    sensor.startDataNotification(pendingCommands.track(deviceMac, timeout, new PendingCommands.Command("startDataNotification", promise) {
       @Override
-      public void gotResult(int result, String errorMsg) {
+      void onResult(int result, String errorMsg) {
         promise.resolve(sensor.hasStartDataNotification());
       }
-    });
+    }));
   }
   @ReactMethod
   @DoNotStrip
@@ -297,13 +1018,24 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("stopDataNotification","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.stopDataNotification(new SensorProfile.Callback() {
-      @Override
-      public void gotResult(int result, String errorMsg) {
-        promise.resolve(!sensor.hasStartDataNotification());
-      }
-    });
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      replay.setNotifying(false);
+      promise.resolve(!replay.hasStartDataNotification());
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (sensor.getDeviceState() != Ready){
+      promise.resolve(!sensor.hasStartDataNotification());
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "stopDataNotification");
+    sensor.stopDataNotification(pendingCommands.track(deviceMac, timeout, new PendingCommands.Command("stopDataNotification", promise) {
+      @Override
+      void onResult(int result, String errorMsg) {
+        promise.resolve(!sensor.hasStartDataNotification());
+      }
+    }));
   }
   @ReactMethod
   @DoNotStrip
@@ -314,17 +1046,17 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("initEEG","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.initEEG(inPackageSampleCount, TIMEOUT, new SensorProfile.Callback() {
-      @Override
-      public void gotResult(int result, String errorMsg) {
-        if (result > 0){
-          promise.resolve(result);
-        }else{
-          promise.reject("initEEG", errorMsg);
-        }
-      }
-    });
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      resolveReplayInit(replay, SensorData.NTF_EEG, "initEEG", promise);
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (!checkConnected(sensor, "initEEG", promise)){
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "initEEG");
+    sensor.initEEG(inPackageSampleCount, timeout, pendingCommands.track(deviceMac, timeout, positiveResult("initEEG", promise)));
   }
   @ReactMethod
   @DoNotStrip
@@ -335,17 +1067,17 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("initECG","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.initECG(inPackageSampleCount, TIMEOUT, new SensorProfile.Callback() {
-      @Override
-      public void gotResult(int result, String errorMsg) {
-        if (result > 0){
-          promise.resolve(result);
-        }else{
-          promise.reject("initECG", errorMsg);
-        }
-      }
-    });
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      resolveReplayInit(replay, SensorData.NTF_ECG, "initECG", promise);
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (!checkConnected(sensor, "initECG", promise)){
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "initECG");
+    sensor.initECG(inPackageSampleCount, timeout, pendingCommands.track(deviceMac, timeout, positiveResult("initECG", promise)));
   }
   @ReactMethod
   @DoNotStrip
@@ -356,17 +1088,17 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("initIMU","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.initIMU(inPackageSampleCount, TIMEOUT, new SensorProfile.Callback() {
-      @Override
-      public void gotResult(int result, String errorMsg) {
-        if (result > 0){
-          promise.resolve(result);
-        }else{
-          promise.reject("initIMU", errorMsg);
-        }
-      }
-    });
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      resolveReplayInit(replay, SensorData.NTF_ACC_DATA, "initIMU", promise);
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (!checkConnected(sensor, "initIMU", promise)){
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "initIMU");
+    sensor.initIMU(inPackageSampleCount, timeout, pendingCommands.track(deviceMac, timeout, positiveResult("initIMU", promise)));
   }
   @ReactMethod
   @DoNotStrip
@@ -377,17 +1109,17 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("initBrth","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.initBRTH(inPackageSampleCount, TIMEOUT, new SensorProfile.Callback() {
-      @Override
-      public void gotResult(int result, String errorMsg) {
-        if (result > 0){
-          promise.resolve(result);
-        }else{
-          promise.reject("initBrth", errorMsg);
-        }
-      }
-    });
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      resolveReplayInit(replay, SensorData.NTF_BRTH, "initBrth", promise);
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (!checkConnected(sensor, "initBrth", promise)){
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "initBRTH");
+    sensor.initBRTH(inPackageSampleCount, timeout, pendingCommands.track(deviceMac, timeout, positiveResult("initBRTH", promise)));
   }
   @ReactMethod
   @DoNotStrip
@@ -397,21 +1129,33 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("initDataTransfer","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      if (replay.getDeviceState() != Ready){
+        promise.resolve(false);
+      }else if (replay.getFeatureMap() != 0){
+        promise.resolve(replay.getFeatureMap());
+      }else{
+        promise.reject("initDataTransfer", "nothing to replay");
+      }
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
     if (sensor.getDeviceState() != Ready){
       promise.resolve(false);
       return;
     }
-    sensor.initDataTransfer(isGetFeature, TIMEOUT, new SensorProfile.Callback() {
+    int timeout = pendingCommands.timeoutOf(deviceMac, "initDataTransfer");
+    sensor.initDataTransfer(isGetFeature, timeout, pendingCommands.track(deviceMac, timeout, new PendingCommands.Command("initDataTransfer", promise) {
       @Override
-      public void gotResult(int result, String errorMsg) {
+      void onResult(int result, String errorMsg) {
         if (result != 0){
           promise.resolve(result);
         }else{
           promise.reject("initDataTransfer", errorMsg);
         }
       }
-    });
+    }));
   }
   @ReactMethod
   @DoNotStrip
@@ -421,17 +1165,27 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("getBatteryLevel","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.getBatteryLevel(TIMEOUT, new SensorProfile.Callback() {
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      promise.resolve(100);
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (!checkConnected(sensor, "getBatteryLevel", promise)){
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "getBatteryLevel");
+    sensor.getBatteryLevel(timeout, pendingCommands.track(deviceMac, timeout, new PendingCommands.Command("getBatteryLevel", promise) {
       @Override
-      public void gotResult(int result, String errorMsg) {
+      void onResult(int result, String errorMsg) {
         if (result > 0){
+          registry.onBattery(deviceMac, result);
           promise.resolve(result);
         }else{
           promise.reject("getBatteryLevel", errorMsg);
         }
       }
-    });
+    }));
   }
   @ReactMethod
   @DoNotStrip
@@ -441,28 +1195,34 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("getDeviceInfo","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.fetchDeviceInfo(onlyMTU, TIMEOUT, new SensorProfile.Callback() {
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      promise.resolve(replayDeviceInfo(replay, onlyMTU));
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (!checkConnected(sensor, "getDeviceInfo", promise)){
+      return;
+    }
+    // device info does not change while connected, only the first call after connecting reads it
+    DeviceRegistry.Entry entry = registry.get(deviceMac);
+    WritableMap cached = entry != null ? DeviceRegistry.deviceInfo(entry, onlyMTU) : null;
+    if (cached != null){
+      promise.resolve(cached);
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "getDeviceInfo");
+    sensor.fetchDeviceInfo(onlyMTU, timeout, pendingCommands.track(deviceMac, timeout, new PendingCommands.Command("getDeviceInfo", promise) {
       @Override
-      public void gotResult(int result2, String errorMsg) {
+      void onResult(int result2, String errorMsg) {
         if (result2 > 0){
-          SensorProfile.DeviceInfo info = sensor.getDeviceInfo();
-          WritableMap result = new WritableNativeMap();
-          result.putInt("MTUSize", info.MTUSize);
-          if (onlyMTU){
-            promise.resolve(result);
-            return;
-          }
-          result.putString("DeviceName", info.deviceName);
-          result.putString("ModelName", info.modelName);
-          result.putString("HardwareVersion", info.hardwareVersion);
-          result.putString("FirmwareVersion", info.firmwareVersion);
-          promise.resolve(result);
+          registry.onDeviceInfo(deviceMac, sensor.getDeviceInfo(), onlyMTU);
+          promise.resolve(deviceInfo(sensor.getDeviceInfo(), onlyMTU));
         }else{
           promise.reject("getBatteryLevel", errorMsg);
         }
       }
-    });
+    }));
   }
 
   @ReactMethod(isBlockingSynchronousMethod = true)
@@ -471,10 +1231,20 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
     if (deviceMac == null || deviceMac.isEmpty()){
       return "Invalid";
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
+    ReplaySensor replay = replays.get(deviceMac);
+    if (replay != null){
+      return replay.getDeviceState().name();
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
     return sensor.getDeviceStateString();
   }
 
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public WritableArray getAllDeviceSnapshots(){
+    return registry.snapshots();
+  }
+
   @ReactMethod
   @DoNotStrip
   public void setParam(String deviceMac, String key, String value, Promise promise){
@@ -482,13 +1252,701 @@ public class SynchronisdkModule extends com.synchronisdk.SynchronisdkSpec {
       promise.reject("getDeviceInfo","invalid device");
       return;
     }
-    SensorProfile sensor = sensorScaner.getSensor(deviceMac);
-    sensor.setParam(key, value, TIMEOUT, new SensorProfile.Callback() {
+    if (replays.get(deviceMac) != null){
+      promise.resolve("OK");
+      return;
+    }
+    SensorProfile sensor = registry.getSensor(deviceMac);
+    if (!checkConnected(sensor, "setParam", promise)){
+      return;
+    }
+    int timeout = pendingCommands.timeoutOf(deviceMac, "setParam");
+    sensor.setParam(key, value, timeout, pendingCommands.track(deviceMac, timeout, new PendingCommands.Command("setParam", promise) {
       @Override
-      public void gotResult(int result, String errorMsg) {
+      void onResult(int result, String errorMsg) {
         promise.resolve(errorMsg);
       }
+    }));
+
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setDataFormat(String deviceMac, double format, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setDataFormat","invalid device");
+      return;
+    }
+    int inFormat = (int) format;
+    if (inFormat != SamplePacker.FORMAT_COLUMNAR && inFormat != SamplePacker.FORMAT_SAMPLES){
+      promise.reject("setDataFormat","invalid format");
+      return;
+    }
+    dataFormats.put(deviceMac, inFormat);
+    promise.resolve(true);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setOverflowPolicy(String deviceMac, double policy, double capacity, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setOverflowPolicy","invalid device");
+      return;
+    }
+    int inPolicy = (int) policy;
+    if (inPolicy != PacketQueue.DROP_OLDEST && inPolicy != PacketQueue.DROP_NEWEST && inPolicy != PacketQueue.BLOCK){
+      promise.reject("setOverflowPolicy","invalid policy");
+      return;
+    }
+    pipeline.setOverflowPolicy(deviceMac, inPolicy, (int) capacity);
+    promise.resolve(true);
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  @Override
+  public WritableMap getStreamStats(String deviceMac){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      return Arguments.createMap();
+    }
+    return buildStreamStats(deviceMac, SystemClock.elapsedRealtimeNanos());
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setCommandTimeout(String deviceMac, ReadableMap timeouts, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setCommandTimeout","invalid device");
+      return;
+    }
+    try {
+      pendingCommands.setTimeouts(deviceMac, timeouts);
+    } catch (IllegalArgumentException e){
+      promise.reject("setCommandTimeout", e.getMessage());
+      return;
+    }
+    promise.resolve(true);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void cancelCommands(String deviceMac, String method, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("cancelCommands","invalid device");
+      return;
+    }
+    promise.resolve(pendingCommands.cancel(deviceMac, method, "cancelled"));
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void bringUp(ReadableArray deviceMacs, ReadableMap plan, Promise promise){
+    BringUp.Plan bringUpPlan;
+    try {
+      bringUpPlan = BringUp.Plan.parse(plan);
+    } catch (IllegalArgumentException e){
+      promise.reject("bringUp", e.getMessage());
+      return;
+    }
+    String[] macs = new String[deviceMacs.size()];
+    for (int i = 0; i < macs.length; ++i){
+      macs[i] = deviceMacs.getString(i);
+      if (macs[i] == null || macs[i].isEmpty()){
+        promise.reject("bringUp", "invalid device");
+        return;
+      }
+    }
+    BringUp bringUp = new BringUp(macs, bringUpPlan, bringUpCommands, scheduler, new BringUp.Listener() {
+      @Override
+      public void onDone(BringUp bringUp, WritableArray results) {
+        for (String deviceMac : bringUp.deviceMacs()){
+          bringUps.remove(deviceMac, bringUp);
+        }
+        promise.resolve(results);
+      }
     });
+    for (String deviceMac : bringUp.deviceMacs()){
+      if (bringUps.putIfAbsent(deviceMac, bringUp) != null){
+        for (String added : bringUp.deviceMacs()){
+          bringUps.remove(added, bringUp);
+        }
+        promise.reject("bringUp", deviceMac + " is already bringing up");
+        return;
+      }
+    }
+    bringUp.start();
+  }
 
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setPollingInterval(String deviceMac, double stateIntervalMs, double batteryIntervalMs, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setPollingInterval","invalid device");
+      return;
+    }
+    poller.setIntervals(deviceMac, (long) stateIntervalMs, (long) batteryIntervalMs);
+    promise.resolve(true);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setStatsInterval(String deviceMac, double intervalMs, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setStatsInterval","invalid device");
+      return;
+    }
+    if (intervalMs > 0){
+      statsIntervals.put(deviceMac, (long) (intervalMs * 1000000));
+    }else{
+      statsIntervals.remove(deviceMac);
+    }
+    pipeline.post(new Runnable() {
+      @Override
+      public void run() {
+        statsEmitNanos.remove(deviceMac);
+      }
+    });
+    promise.resolve(true);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setEventRate(String deviceMac, double maxEventsPerSecond, double maxLatencyMs, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setEventRate","invalid device");
+      return;
+    }
+    BatchPolicy policy = new BatchPolicy(maxEventsPerSecond, maxLatencyMs);
+    if (policy.isEnabled()){
+      batchPolicies.put(deviceMac, policy);
+    }else{
+      batchPolicies.remove(deviceMac);
+    }
+    promise.resolve(true);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setEventSubscriptions(String deviceMac, ReadableArray eventNames, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setEventSubscriptions","invalid device");
+      return;
+    }
+    try {
+      subscriptions.setDeviceEvents(deviceMac, eventNames);
+      promise.resolve(true);
+    } catch (IllegalArgumentException e){
+      promise.reject("setEventSubscriptions", e.getMessage());
+    }
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setFlowControl(String deviceMac, ReadableMap options, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setFlowControl","invalid device");
+      return;
+    }
+    if (options == null){
+      promise.resolve(flowControls.remove(deviceMac) != null);
+      return;
+    }
+    try {
+      flowControls.put(deviceMac, new FlowControl(FlowControl.Options.parse(options)));
+      promise.resolve(true);
+    } catch (IllegalArgumentException e){
+      promise.reject("setFlowControl", e.getMessage());
+    }
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void ackData(String deviceMac, double seq){
+    FlowControl flow = deviceMac != null ? flowControls.get(deviceMac) : null;
+    if (flow != null){
+      flow.ack((long) seq);
+    }
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  @Override
+  public boolean openSampleStream(String deviceMac, double dataType, double capacity){
+    if (deviceMac == null || deviceMac.isEmpty() || capacity <= 0){
+      return false;
+    }
+    String key = SensorStream.key(deviceMac, (int) dataType);
+    if (windows.get(key) == null){
+      windows.put(key, new SampleWindow((int) capacity));
+    }
+    return true;
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  @Override
+  public boolean closeSampleStream(String deviceMac, double dataType){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      return false;
+    }
+    return windows.remove(SensorStream.key(deviceMac, (int) dataType)) != null;
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  @Override
+  public WritableMap readSamples(String deviceMac, double dataType, double cursor, double maxSamples){
+    SampleWindow window = deviceMac != null ? windows.get(SensorStream.key(deviceMac, (int) dataType)) : null;
+    if (window == null){
+      WritableMap result = Arguments.createMap();
+      result.putDouble("cursor", cursor);
+      result.putDouble("skipped", 0);
+      result.putInt("sampleCount", 0);
+      return result;
+    }
+    return window.read((long) cursor, (int) maxSamples);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void startAggregation(String groupId, ReadableArray deviceMacs, double dataType, double windowMs, Promise promise){
+    if (groupId == null || groupId.isEmpty() || deviceMacs == null || deviceMacs.size() == 0){
+      promise.reject("startAggregation","invalid group");
+      return;
+    }
+    if (windowMs <= 0){
+      promise.reject("startAggregation","invalid window");
+      return;
+    }
+    String[] macs = new String[deviceMacs.size()];
+    for (int i = 0; i < macs.length; ++i){
+      macs[i] = deviceMacs.getString(i);
+      if (macs[i] == null || (registry.getSensor(macs[i]) == null && replays.get(macs[i]) == null)){
+        promise.reject("startAggregation","invalid device: " + macs[i]);
+        return;
+      }
+    }
+    long windowNanos = (long) (windowMs * 1000000);
+    aggregators.put(groupId, new FrameAggregator(groupId, macs, (int) dataType, windowNanos, SystemClock.elapsedRealtimeNanos()));
+    promise.resolve(true);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void stopAggregation(String groupId, Promise promise){
+    if (groupId == null || groupId.isEmpty()){
+      promise.reject("stopAggregation","invalid group");
+      return;
+    }
+    promise.resolve(aggregators.remove(groupId) != null);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setProcessingChain(String deviceMac, double dataType, ReadableArray config, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setProcessingChain","invalid device");
+      return;
+    }
+    String key = SensorStream.key(deviceMac, (int) dataType);
+    if (config == null || config.size() == 0){
+      chains.remove(key);
+      promise.resolve(true);
+      return;
+    }
+    try {
+      ProcessingChain chain = ProcessingChain.parse(config);
+      StreamTelemetry counters = telemetry.get(key);
+      if (counters != null && counters.sampleRate > 0){
+        chain.check(counters.sampleRate);
+      }
+      chains.put(key, chain);
+      promise.resolve(true);
+    } catch (IllegalArgumentException e){
+      promise.reject("setProcessingChain", e.getMessage());
+    }
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setGapPolicy(String deviceMac, double dataType, double policy, double maxGapMs, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setGapPolicy","invalid device");
+      return;
+    }
+    String key = SensorStream.key(deviceMac, (int) dataType);
+    if (policy < 0){
+      promise.resolve(trackers.remove(key) != null);
+      return;
+    }
+    try {
+      trackers.put(key, new SequenceTracker((int) policy, (long) maxGapMs));
+      promise.resolve(true);
+    } catch (IllegalArgumentException e){
+      promise.reject("setGapPolicy", e.getMessage());
+    }
+  }
+
+  /**
+   * Stamped here, on the calling JS thread, so the async bridge queue adds no jitter.
+   * Returns false if no data of deviceMac arrived yet.
+   */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  @Override
+  public boolean pushMarker(String deviceMac, double code){
+    final long elapsedNanos = SystemClock.elapsedRealtimeNanos();
+    if (deviceMac == null || deviceMac.isEmpty()){
+      return false;
+    }
+    final List<SensorStream> targets = new ArrayList<>();
+    for (SensorStream stream : streams.values()){
+      if (stream.deviceMac.equals(deviceMac)){
+        targets.add(stream);
+      }
+    }
+    if (targets.isEmpty()){
+      return false;
+    }
+    final int markerCode = (int) code;
+    pipeline.post(new Runnable() {
+      @Override
+      public void run() {
+        for (SensorStream stream : targets){
+          stream.markers.add(new MarkerQueue.Marker(stream.dataType, markerCode, elapsedNanos));
+        }
+      }
+    });
+    return true;
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void setFeatureExtraction(String deviceMac, double dataType, ReadableMap options, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("setFeatureExtraction","invalid device");
+      return;
+    }
+    int type = (int) dataType;
+    String key = SensorStream.key(deviceMac, type);
+    // orientation reads ACC and GYRO, it is registered under both
+    String pairKey = null;
+    if (type == SensorData.NTF_ACC_DATA || type == SensorData.NTF_GYO_DATA){
+      pairKey = SensorStream.key(deviceMac, type == SensorData.NTF_ACC_DATA ? SensorData.NTF_GYO_DATA : SensorData.NTF_ACC_DATA);
+    }
+    if (options == null){
+      FeatureExtractor removed = features.remove(key);
+      if (removed != null && pairKey != null){
+        features.remove(pairKey, removed);
+      }
+      promise.resolve(removed != null);
+      return;
+    }
+    try {
+      FeatureExtractor extractor = FeatureExtractor.create(deviceMac, type, FeatureExtractor.Options.parse(options));
+      features.put(key, extractor);
+      if (pairKey != null){
+        features.put(pairKey, extractor);
+      }
+      promise.resolve(true);
+    } catch (IllegalArgumentException e){
+      promise.reject("setFeatureExtraction", e.getMessage());
+    }
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void startRecording(String deviceMac, String path, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("startRecording","invalid device");
+      return;
+    }
+    if (path == null || path.isEmpty()){
+      promise.reject("startRecording","invalid path");
+      return;
+    }
+    if (recorders.get(deviceMac) != null){
+      promise.reject("startRecording","already recording");
+      return;
+    }
+    File file = resolveFile(path);
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists()){
+      parent.mkdirs();
+    }
+    SampleRecorder recorder;
+    try {
+      recorder = new SampleRecorder(deviceMac, file);
+    } catch (IOException e){
+      promise.reject("startRecording", e.getMessage());
+      return;
+    }
+    if (recorders.putIfAbsent(deviceMac, recorder) != null){
+      recorder.stop(null);
+      promise.reject("startRecording","already recording");
+      return;
+    }
+    recorder.start();
+    promise.resolve(file.getAbsolutePath());
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void stopRecording(String deviceMac, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("stopRecording","invalid device");
+      return;
+    }
+    SampleRecorder recorder = recorders.remove(deviceMac);
+    if (recorder == null){
+      promise.reject("stopRecording","not recording");
+      return;
+    }
+    recorder.stop(new SampleRecorder.Listener() {
+      @Override
+      public void onClosed(SampleRecorder recorder, IOException error) {
+        if (error != null){
+          promise.reject("stopRecording", error.getMessage());
+          return;
+        }
+        WritableMap result = Arguments.createMap();
+        result.putString("path", recorder.file.getAbsolutePath());
+        result.putDouble("packets", recorder.writtenPackets());
+        result.putDouble("bytes", recorder.writtenBytes());
+        result.putDouble("droppedPackets", recorder.droppedPackets.get());
+        promise.resolve(result);
+      }
+    });
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void startEdfExport(String deviceMac, String path, ReadableMap options, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("startEdfExport","invalid device");
+      return;
+    }
+    if (path == null || path.isEmpty()){
+      promise.reject("startEdfExport","invalid path");
+      return;
+    }
+    if (edfWriters.get(deviceMac) != null){
+      promise.reject("startEdfExport","already exporting");
+      return;
+    }
+    EdfWriter.Options exportOptions;
+    try {
+      exportOptions = EdfWriter.Options.parse(options);
+    } catch (IllegalArgumentException e){
+      promise.reject("startEdfExport", e.getMessage());
+      return;
+    }
+    File file = resolveFile(path);
+    File parent = file.getParentFile();
+    if (parent != null && !parent.exists()){
+      parent.mkdirs();
+    }
+    DeviceRegistry.Entry entry = registry.get(deviceMac);
+    EdfWriter edfWriter;
+    try {
+      edfWriter = new EdfWriter(deviceMac, file, exportOptions, entry != null ? entry.info : null);
+    } catch (IOException e){
+      promise.reject("startEdfExport", e.getMessage());
+      return;
+    }
+    if (edfWriters.putIfAbsent(deviceMac, edfWriter) != null){
+      edfWriter.stop(null);
+      promise.reject("startEdfExport","already exporting");
+      return;
+    }
+    edfWriter.start();
+    promise.resolve(file.getAbsolutePath());
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void stopEdfExport(String deviceMac, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("stopEdfExport","invalid device");
+      return;
+    }
+    EdfWriter edfWriter = edfWriters.remove(deviceMac);
+    if (edfWriter == null){
+      promise.reject("stopEdfExport","not exporting");
+      return;
+    }
+    edfWriter.stop(new EdfWriter.Listener() {
+      @Override
+      public void onClosed(EdfWriter writer, IOException error) {
+        if (error != null){
+          promise.reject("stopEdfExport", error.getMessage());
+          return;
+        }
+        WritableMap result = Arguments.createMap();
+        result.putString("path", writer.file.getAbsolutePath());
+        result.putDouble("records", writer.writtenRecords());
+        result.putDouble("bytes", writer.writtenBytes());
+        result.putDouble("lostSamples", writer.lostSamples());
+        result.putDouble("clippedSamples", writer.clippedSamples());
+        result.putDouble("droppedPackets", writer.droppedPackets.get());
+        promise.resolve(result);
+      }
+    });
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public synchronized void startOutlet(double port, ReadableMap options, Promise promise){
+    if (port < 0 || port > 65535){
+      promise.reject("startOutlet","invalid port");
+      return;
+    }
+    int maxClientBytes = StreamOutlet.DEFAULT_MAX_CLIENT_BYTES;
+    if (options != null && options.hasKey("maxClientBytes") && !options.isNull("maxClientBytes")){
+      maxClientBytes = options.getInt("maxClientBytes");
+      if (maxClientBytes < 64 * 1024){
+        promise.reject("startOutlet","maxClientBytes needs >= 65536");
+        return;
+      }
+    }
+    if (outlet != null){
+      promise.reject("startOutlet","already started");
+      return;
+    }
+    StreamOutlet created;
+    try {
+      created = new StreamOutlet((int) port, maxClientBytes);
+    } catch (IOException e){
+      promise.reject("startOutlet", e.getMessage());
+      return;
+    }
+    created.start();
+    outlet = created;
+    promise.resolve(created.port());
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public synchronized void stopOutlet(Promise promise){
+    StreamOutlet stopped = outlet;
+    outlet = null;
+    if (stopped == null){
+      promise.reject("stopOutlet","not started");
+      return;
+    }
+    stopped.stop();
+    WritableMap result = Arguments.createMap();
+    result.putDouble("acceptedClients", stopped.acceptedClients.get());
+    result.putDouble("droppedClients", stopped.droppedClients.get());
+    result.putDouble("sentFrames", stopped.sentFrames.get());
+    result.putDouble("sentBytes", stopped.sentBytes.get());
+    promise.resolve(result);
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void openReplay(String path, String deviceMac, double speed, boolean loop, Promise promise){
+    if (path == null || path.isEmpty()){
+      promise.reject("openReplay","invalid path");
+      return;
+    }
+    if (speed < 0){
+      promise.reject("openReplay","invalid speed");
+      return;
+    }
+    RecordingIndex index;
+    try {
+      index = new RecordingIndex(resolveFile(path));
+    } catch (IOException e){
+      promise.reject("openReplay", e.getMessage());
+      return;
+    }
+    if (deviceMac == null || deviceMac.isEmpty()){
+      deviceMac = "replay:" + index.deviceMac;
+    }
+    ReplaySensor replay = new ReplaySensor(deviceMac, index, speed, loop, replayListener);
+    if (registry.getSensor(deviceMac) != null || replays.putIfAbsent(deviceMac, replay) != null){
+      index.close();
+      promise.reject("openReplay","device exists: " + deviceMac);
+      return;
+    }
+    WritableMap result = Arguments.createMap();
+    result.putString("deviceMac", deviceMac);
+    result.putString("recordedMac", index.deviceMac);
+    result.putDouble("startTimeMs", index.startTimeMs);
+    result.putDouble("durationMs", index.durationNanos() / 1e6);
+    result.putInt("packetCount", index.size());
+    WritableArray dataTypes = Arguments.createArray();
+    for (Integer dataType : replay.getChannelCounts().keySet()){
+      dataTypes.pushInt(dataType);
+    }
+    result.putArray("dataTypes", dataTypes);
+    promise.resolve(result);
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  @Override
+  public boolean seekReplay(String deviceMac, double positionMs){
+    ReplaySensor replay = deviceMac != null ? replays.get(deviceMac) : null;
+    if (replay == null){
+      return false;
+    }
+    replay.seek((long) (positionMs * 1000000));
+    return true;
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  @Override
+  public boolean setReplaySpeed(String deviceMac, double speed){
+    ReplaySensor replay = deviceMac != null ? replays.get(deviceMac) : null;
+    if (replay == null || speed < 0){
+      return false;
+    }
+    replay.setSpeed(speed);
+    return true;
+  }
+
+  @ReactMethod
+  @DoNotStrip
+  @Override
+  public void closeReplay(String deviceMac, Promise promise){
+    if (deviceMac == null || deviceMac.isEmpty()){
+      promise.reject("closeReplay","invalid device");
+      return;
+    }
+    ReplaySensor replay = replays.remove(deviceMac);
+    if (replay == null){
+      promise.resolve(false);
+      return;
+    }
+    registry.remove(deviceMac);
+    replay.disconnect();
+    replay.index.close();
+    promise.resolve(true);
   }
 }
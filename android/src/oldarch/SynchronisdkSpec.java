@@ -5,6 +5,8 @@ import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 
@@ -81,4 +83,134 @@ abstract class SynchronisdkSpec extends ReactContextBaseJavaModule {
   @ReactMethod
   @DoNotStrip
   public abstract void setParam(String deviceMac, String key, String value, Promise promise);
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setDataFormat(String deviceMac, double format, Promise promise);
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setOverflowPolicy(String deviceMac, double policy, double capacity, Promise promise);
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract WritableMap getStreamStats(String deviceMac);
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setEventRate(String deviceMac, double maxEventsPerSecond, double maxLatencyMs, Promise promise);
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract boolean openSampleStream(String deviceMac, double dataType, double capacity);
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract boolean closeSampleStream(String deviceMac, double dataType);
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract WritableMap readSamples(String deviceMac, double dataType, double cursor, double maxSamples);
+  @ReactMethod
+  @DoNotStrip
+  public abstract void startAggregation(String groupId, ReadableArray deviceMacs, double dataType, double windowMs, Promise promise);
+  @ReactMethod
+  @DoNotStrip
+  public abstract void stopAggregation(String groupId, Promise promise);
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setProcessingChain(String deviceMac, double dataType, ReadableArray config, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void startRecording(String deviceMac, String path, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void stopRecording(String deviceMac, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void openReplay(String path, String deviceMac, double speed, boolean loop, Promise promise);
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract boolean seekReplay(String deviceMac, double positionMs);
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract boolean setReplaySpeed(String deviceMac, double speed);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void closeReplay(String deviceMac, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setStatsInterval(String deviceMac, double intervalMs, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setPollingInterval(String deviceMac, double stateIntervalMs, double batteryIntervalMs, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void bringUp(ReadableArray deviceMacs, ReadableMap plan, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setCommandTimeout(String deviceMac, ReadableMap timeouts, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void cancelCommands(String deviceMac, String method, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setScanOptions(ReadableMap options, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void startContinuousScan(ReadableMap options, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void stopContinuousScan(Promise promise);
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract WritableArray getAllDeviceSnapshots();
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setFeatureExtraction(String deviceMac, double dataType, ReadableMap options, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setFlowControl(String deviceMac, ReadableMap options, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void ackData(String deviceMac, double seq);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setEventSubscriptions(String deviceMac, ReadableArray eventNames, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void setGapPolicy(String deviceMac, double dataType, double policy, double maxGapMs, Promise promise);
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  @DoNotStrip
+  public abstract boolean pushMarker(String deviceMac, double code);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void startEdfExport(String deviceMac, String path, ReadableMap options, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void stopEdfExport(String deviceMac, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void startOutlet(double port, ReadableMap options, Promise promise);
+
+  @ReactMethod
+  @DoNotStrip
+  public abstract void stopOutlet(Promise promise);
 }
@@ -0,0 +1,54 @@
+package com.synchronisdk;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BiquadTest {
+  private static final double Q = 1 / Math.sqrt(2);
+
+  /**
+   * Compares the first samples of the impulse response of biquad with those of the filter b, a.
+   */
+  private static void assertImpulseResponse(double[] b, double[] a, Biquad biquad){
+    double x1 = 0, x2 = 0, y1 = 0, y2 = 0;
+    for (int n = 0; n < 32; ++n){
+      double x = n == 0 ? 1 : 0;
+      double y = b[0] * x + b[1] * x1 + b[2] * x2 - a[1] * y1 - a[2] * y2;
+      assertEquals("sample " + n, y, biquad.process(x), 1e-9);
+      x2 = x1;
+      x1 = x;
+      y2 = y1;
+      y1 = y;
+    }
+  }
+
+  @Test
+  public void lowPassMatchesButterworth(){
+    // second order Butterworth at 0.2 times Nyquist
+    assertImpulseResponse(new double[]{0.0674552738890719, 0.1349105477781438, 0.0674552738890719},
+      new double[]{1, -1.142980502539901, 0.4128015980961886}, Biquad.lowPass(1000, 100, Q));
+  }
+
+  @Test
+  public void highPassMatchesButterworth(){
+    assertImpulseResponse(new double[]{0.6389455251590224, -1.2778910503180447, 0.6389455251590224},
+      new double[]{1, -1.142980502539901, 0.4128015980961886}, Biquad.highPass(1000, 100, Q));
+  }
+
+  @Test
+  public void notchMatchesCookbook(){
+    assertImpulseResponse(new double[]{0.9843963899782295, -0.6083904274092423, 0.9843963899782295},
+      new double[]{1, -0.6083904274092423, 0.9687927799564593}, Biquad.notch(250, 50, 30));
+  }
+
+  @Test
+  public void lowPassHasUnityGainAtDc(){
+    Biquad biquad = Biquad.lowPass(250, 40, Q);
+    double y = 0;
+    for (int n = 0; n < 1000; ++n){
+      y = biquad.process(1);
+    }
+    assertEquals(1, y, 1e-9);
+  }
+}
@@ -0,0 +1,169 @@
+package com.synchronisdk;
+
+import com.sensor.SensorData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EdfWriterTest {
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+  private static final int SAMPLE_RATE = 250;
+  private static final int ANNOTATION_BYTES = 240;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Two EEG channels at +100 and -100 uV.
+   */
+  private static SamplePacket packet(int firstIndex, int sampleCount){
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_EEG, SAMPLE_RATE, 2, sampleCount, sampleCount,
+      TimeUnit.SECONDS.toNanos(1));
+    for (int i = 0; i < sampleCount; ++i){
+      packet.sampleIndex[i] = packet.sampleIndex[sampleCount + i] = firstIndex + i;
+      packet.data[i] = 100;
+      packet.data[sampleCount + i] = -100;
+    }
+    return packet;
+  }
+
+  private static EdfWriter.Options eegOnly(int format){
+    EdfWriter.Options options = new EdfWriter.Options();
+    options.format = format;
+    options.dataTypes = new int[]{SensorData.NTF_EEG};
+    return options;
+  }
+
+  private ByteBuffer export(EdfWriter.Options options, SamplePacket... packets) throws Exception {
+    File file = folder.newFile("test.edf");
+    EdfWriter writer = new EdfWriter("AA:BB", file, options, null);
+    writer.start();
+    for (SamplePacket packet : packets){
+      assertTrue(writer.offer(packet));
+    }
+    final CountDownLatch closed = new CountDownLatch(1);
+    final IOException[] error = new IOException[1];
+    writer.stop(new EdfWriter.Listener() {
+      @Override
+      public void onClosed(EdfWriter closedWriter, IOException e) {
+        error[0] = e;
+        closed.countDown();
+      }
+    });
+    assertTrue(closed.await(10, TimeUnit.SECONDS));
+    assertNull(error[0]);
+    assertEquals(file.length(), writer.writtenBytes());
+    byte[] bytes = new byte[(int) file.length()];
+    FileInputStream input = new FileInputStream(file);
+    try {
+      assertEquals(bytes.length, input.read(bytes));
+    } finally {
+      input.close();
+    }
+    return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static String field(ByteBuffer file, int offset, int width){
+    return text(file, offset, width).trim();
+  }
+
+  private static String text(ByteBuffer file, int offset, int width){
+    byte[] bytes = new byte[width];
+    for (int i = 0; i < width; ++i){
+      bytes[i] = file.get(offset + i);
+    }
+    return new String(bytes, ASCII);
+  }
+
+  /**
+   * A field of signal in the signal header, fields before it are width bytes per signal.
+   */
+  private static String signalField(ByteBuffer file, int signalCount, int before, int width, int signal){
+    return field(file, 256 + signalCount * before + signal * width, width);
+  }
+
+  @Test
+  public void writesHeaderAndRecords() throws Exception {
+    ByteBuffer file = export(eegOnly(EdfWriter.FORMAT_EDF), packet(0, 250), packet(250, 250));
+
+    assertEquals("0", field(file, 0, 8));
+    assertEquals(256 * 4, Integer.parseInt(field(file, 184, 8)));
+    assertEquals("EDF+C", field(file, 192, 44));
+    assertEquals("2", field(file, 236, 8));
+    assertEquals("1", field(file, 244, 8));
+    assertEquals("3", field(file, 252, 4));
+
+    assertEquals("EEG 1", signalField(file, 3, 0, 16, 0));
+    assertEquals("EEG 2", signalField(file, 3, 0, 16, 1));
+    assertEquals("EDF Annotations", signalField(file, 3, 0, 16, 2));
+    assertEquals("uV", signalField(file, 3, 16 + 80, 8, 0));
+    assertEquals("-3276.7", signalField(file, 3, 16 + 80 + 8, 8, 0));
+    assertEquals("3276.7", signalField(file, 3, 16 + 80 + 16, 8, 0));
+    assertEquals("-32767", signalField(file, 3, 16 + 80 + 24, 8, 0));
+    assertEquals("32767", signalField(file, 3, 16 + 80 + 32, 8, 0));
+    assertEquals("250", signalField(file, 3, 16 + 80 + 40 + 80, 8, 0));
+    assertEquals("120", signalField(file, 3, 16 + 80 + 40 + 80, 8, 2));
+
+    int recordSize = 2 * 250 * 2 + ANNOTATION_BYTES;
+    assertEquals(1024 + 2 * recordSize, file.capacity());
+    for (int record = 0; record < 2; ++record){
+      int offset = 1024 + record * recordSize;
+      // 10 digital units per uV
+      assertEquals(1000, file.getShort(offset));
+      assertEquals(1000, file.getShort(offset + 249 * 2));
+      assertEquals(-1000, file.getShort(offset + 250 * 2));
+      String annotation = text(file, offset + 1000, ANNOTATION_BYTES);
+      assertTrue(annotation.startsWith("+" + record));
+      assertTrue(annotation.contains("\u0014\u0014\u0000"));
+    }
+  }
+
+  @Test
+  public void annotatesSkippedSamples() throws Exception {
+    ByteBuffer file = export(eegOnly(EdfWriter.FORMAT_EDF), packet(0, 250), packet(260, 240));
+
+    assertEquals("2", field(file, 236, 8));
+    int second = 1024 + 1240;
+    // held at the last value
+    assertEquals(1000, file.getShort(second + 9 * 2));
+    String annotations = text(file, 1024 + 1000, ANNOTATION_BYTES) + text(file, second + 1000, ANNOTATION_BYTES);
+    assertTrue(annotations.contains("\u00150.04\u0014Lost EEG\u0014"));
+  }
+
+  @Test
+  public void padsLastRecord() throws Exception {
+    ByteBuffer file = export(eegOnly(EdfWriter.FORMAT_EDF), packet(0, 300));
+
+    assertEquals("2", field(file, 236, 8));
+    assertEquals(1000, file.getShort(1024 + 1240 + 49 * 2));
+  }
+
+  @Test
+  public void writesBdfSamplesInThreeBytes() throws Exception {
+    ByteBuffer file = export(eegOnly(EdfWriter.FORMAT_BDF), packet(0, 250));
+
+    assertEquals((byte) 0xff, file.get(0));
+    assertEquals("BIOSEMI", field(file, 1, 7));
+    assertEquals("BDF+C", field(file, 192, 44));
+    assertEquals("BDF Annotations", signalField(file, 3, 0, 16, 2));
+    assertEquals("8388607", signalField(file, 3, 16 + 80 + 32, 8, 0));
+    assertEquals("80", signalField(file, 3, 16 + 80 + 40 + 80, 8, 2));
+    assertEquals(1024 + 2 * 250 * 3 + ANNOTATION_BYTES, file.capacity());
+    int digital = (file.get(1024) & 0xff) | (file.get(1025) & 0xff) << 8 | file.get(1026) << 16;
+    assertEquals(Math.round(100 * 8388607 / 3276.7), digital);
+  }
+}
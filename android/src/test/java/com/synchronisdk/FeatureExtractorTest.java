@@ -0,0 +1,168 @@
+package com.synchronisdk;
+
+import com.sensor.SensorData;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureExtractorTest {
+  private static final int SAMPLE_RATE = 250;
+  private static final int DELTA = 0;
+  private static final int ALPHA = 2;
+  private static final int BETA = 3;
+
+  private static FeatureExtractor.BandPower bandPower(int channelCount){
+    FeatureExtractor.BandPower extractor = new FeatureExtractor.BandPower("AA:BB", SensorData.NTF_EEG,
+      new FeatureExtractor.Options());
+    extractor.reset(SAMPLE_RATE, channelCount);
+    return extractor;
+  }
+
+  /**
+   * A sine of amplitude and frequency on every channel, from sample first on.
+   */
+  private static SamplePacket sine(int channelCount, double amplitude, double frequency, int first, int sampleCount){
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_EEG, SAMPLE_RATE, channelCount, sampleCount,
+      sampleCount, 0);
+    for (int channel = 0; channel < channelCount; ++channel){
+      for (int i = 0; i < sampleCount; ++i){
+        int position = channel * sampleCount + i;
+        packet.sampleIndex[position] = first + i;
+        packet.data[position] = (float) (amplitude * Math.sin(2 * Math.PI * frequency * (first + i) / SAMPLE_RATE));
+      }
+    }
+    return packet;
+  }
+
+  @Test
+  public void sinePowerIsHalfAmplitudeSquared(){
+    FeatureExtractor.BandPower extractor = bandPower(1);
+    extractor.process(sine(1, 1, 10, 0, SAMPLE_RATE * 2));
+    double[] bands = extractor.bandPower()[0];
+
+    assertEquals(0.5, bands[ALPHA], 0.01);
+    for (int band = 0; band < bands.length; ++band){
+      if (band != ALPHA){
+        assertTrue("band " + band, bands[band] < 0.005);
+      }
+    }
+  }
+
+  @Test
+  public void bandsFollowTheSine(){
+    FeatureExtractor.BandPower extractor = bandPower(2);
+    extractor.process(sine(2, 2, 20, 0, SAMPLE_RATE * 2));
+    double[][] bands = extractor.bandPower();
+
+    assertEquals(2, bands[0][BETA], 0.04);
+    assertEquals(2, bands[1][BETA], 0.04);
+    assertTrue(bands[0][ALPHA] < 0.02);
+  }
+
+  @Test
+  public void waitsForTheWholeWindow(){
+    FeatureExtractor.BandPower extractor = bandPower(1);
+    // windowMs 2000 is 500 samples, zero-padded to 512
+    extractor.process(sine(1, 1, 10, 0, 499));
+    assertNull(extractor.bandPower());
+    extractor.process(sine(1, 1, 10, 499, 1));
+    assertNotNull(extractor.bandPower());
+  }
+
+  @Test
+  public void skipsNaNSamples(){
+    FeatureExtractor.BandPower extractor = bandPower(1);
+    SamplePacket packet = sine(1, 1, 10, 0, SAMPLE_RATE * 2);
+    for (int i = 100; i < 110; ++i){
+      packet.data[i] = Float.NaN;
+    }
+    extractor.process(packet);
+    double[] bands = extractor.bandPower()[0];
+
+    for (double power : bands){
+      assertTrue(!Double.isNaN(power));
+    }
+    assertEquals(0.5, bands[ALPHA], 0.05);
+  }
+
+  @Test
+  public void reportsMostlyMissingChannel(){
+    FeatureExtractor.BandPower extractor = bandPower(2);
+    SamplePacket packet = sine(2, 1, 10, 0, SAMPLE_RATE * 2);
+    for (int i = 0; i < SAMPLE_RATE + 1; ++i){
+      packet.data[packet.sampleCount + i] = Float.NaN;
+    }
+    extractor.process(packet);
+    double[][] bands = extractor.bandPower();
+
+    assertEquals(0.5, bands[0][ALPHA], 0.01);
+    assertEquals(-1, bands[1][DELTA], 0);
+    assertEquals(-1, bands[1][ALPHA], 0);
+  }
+
+  /**
+   * One channel at sampleRate from sample first on, an R-peak like spike every second.
+   */
+  private static SamplePacket ecg(int sampleRate, int first, int sampleCount){
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_ECG, sampleRate, 1, sampleCount, sampleCount, 0);
+    for (int i = 0; i < sampleCount; ++i){
+      int phase = (first + i) % sampleRate - sampleRate / 2;
+      packet.sampleIndex[i] = first + i;
+      packet.data[i] = (float) (1000 * Math.max(0, 1 - Math.abs(phase) / 10.0));
+    }
+    return packet;
+  }
+
+  /**
+   * Marks count samples from offset lost and NaN, as a FILL_NAN SequenceTracker leaves a gap.
+   */
+  private static void nanGap(SamplePacket packet, int offset, int count){
+    for (int i = offset; i < offset + count; ++i){
+      packet.lost[i] = true;
+      packet.data[i] = Float.NaN;
+    }
+  }
+
+  @Test
+  public void heartRateRecoversAfterNaNGap(){
+    int sampleRate = 250;
+    FeatureExtractor.HeartRate extractor = new FeatureExtractor.HeartRate("AA:BB", SensorData.NTF_ECG,
+      new FeatureExtractor.Options());
+    extractor.reset(sampleRate, 1);
+    extractor.process(ecg(sampleRate, 0, sampleRate * 10));
+    assertEquals(60, extractor.heartRate(), 1);
+
+    SamplePacket gap = ecg(sampleRate, sampleRate * 10, sampleRate);
+    nanGap(gap, 100, 100);
+    extractor.process(gap);
+    extractor.peaks.clear();
+    extractor.process(ecg(sampleRate, sampleRate * 11, sampleRate * 10));
+
+    assertEquals(10, extractor.peaks.size());
+    assertEquals(sampleRate * 11 + sampleRate / 2, (int) extractor.peaks.get(0));
+    assertEquals(60, extractor.heartRate(), 1);
+  }
+
+  @Test
+  public void breathingRateRecoversAfterNaNGap(){
+    int sampleRate = 50;
+    FeatureExtractor.BreathingRate extractor = new FeatureExtractor.BreathingRate("AA:BB", SensorData.NTF_BRTH,
+      new FeatureExtractor.Options());
+    extractor.reset(sampleRate, 1);
+    // 15 breaths per minute
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_BRTH, sampleRate, 1, 0, sampleRate * 120, 0);
+    for (int i = 0; i < packet.sampleCount; ++i){
+      packet.sampleIndex[i] = i;
+      packet.data[i] = (float) (100 * Math.sin(2 * Math.PI * 0.25 * i / sampleRate));
+    }
+    nanGap(packet, sampleRate * 60, sampleRate * 2);
+    extractor.process(packet);
+
+    assertTrue(extractor.breaths >= 25);
+    assertEquals(15, extractor.breathingRate(), 0.5);
+  }
+}
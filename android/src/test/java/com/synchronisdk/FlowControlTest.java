@@ -0,0 +1,96 @@
+package com.synchronisdk;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlowControlTest {
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static FlowControl flowControl(){
+    FlowControl.Options options = new FlowControl.Options();
+    options.maxInFlight = 2;
+    options.resumeInFlight = 0;
+    options.recoverNanos = 100 * MS;
+    options.coalesceNanos = 10 * MS;
+    options.ackTimeoutNanos = 1000 * MS;
+    return new FlowControl(options);
+  }
+
+  private static void send(FlowControl flow, int count){
+    for (int i = 0; i < count; ++i){
+      flow.sent(flow.nextSeq());
+    }
+  }
+
+  @Test
+  public void stepsDownAndBackUp(){
+    FlowControl flow = flowControl();
+    send(flow, 3);
+    assertTrue(flow.update(100 * MS));
+    assertEquals(FlowControl.MODE_COALESCED, flow.mode());
+    // a second step waits for coalesceMs
+    assertFalse(flow.update(105 * MS));
+    assertTrue(flow.update(110 * MS));
+    assertEquals(FlowControl.MODE_DECIMATED, flow.mode());
+
+    flow.ack(3);
+    assertFalse(flow.update(200 * MS));
+    assertTrue(flow.update(300 * MS));
+    assertEquals(FlowControl.MODE_COALESCED, flow.mode());
+  }
+
+  @Test
+  public void recoversFromSaturationOnAck(){
+    FlowControl flow = flowControl();
+    send(flow, 8);
+    assertTrue(flow.isSaturated(100 * MS));
+    flow.ack(1);
+    assertFalse(flow.isSaturated(200 * MS));
+    assertEquals(7, flow.inFlight());
+  }
+
+  @Test
+  public void recoversFromSaturationAfterAckTimeout(){
+    FlowControl flow = flowControl();
+    send(flow, 8);
+    assertTrue(flow.isSaturated(100 * MS));
+    assertTrue(flow.isSaturated(1099 * MS));
+    assertFalse(flow.isSaturated(1100 * MS));
+    assertEquals(0, flow.inFlight());
+
+    // the mode comes back up once the lag is gone
+    send(flow, 3);
+    assertTrue(flow.update(1200 * MS));
+    flow.ack(11);
+    assertFalse(flow.update(1300 * MS));
+    assertTrue(flow.update(1400 * MS));
+    assertEquals(FlowControl.MODE_FULL, flow.mode());
+  }
+
+  @Test
+  public void ackRestartsTimeout(){
+    FlowControl flow = flowControl();
+    send(flow, 9);
+    assertTrue(flow.isSaturated(100 * MS));
+    flow.ack(1);
+    assertTrue(flow.isSaturated(900 * MS));
+    assertTrue(flow.isSaturated(1800 * MS));
+    assertFalse(flow.isSaturated(1900 * MS));
+  }
+
+  @Test
+  public void resetForgetsEventsInFlight(){
+    FlowControl flow = flowControl();
+    send(flow, 8);
+    assertTrue(flow.isSaturated(100 * MS));
+    flow.reset();
+    assertEquals(0, flow.inFlight());
+    assertFalse(flow.isSaturated(200 * MS));
+    assertEquals(9, flow.nextSeq());
+  }
+}
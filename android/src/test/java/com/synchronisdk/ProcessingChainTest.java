@@ -0,0 +1,118 @@
+package com.synchronisdk;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.sensor.SensorData;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessingChainTest {
+  private static final int SAMPLE_RATE = 250;
+
+  private static ProcessingChain chain(JavaOnlyMap... stages){
+    return ProcessingChain.parse(JavaOnlyArray.of((Object[]) stages));
+  }
+
+  private static SamplePacket sine(double frequency, int sampleCount){
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_EEG, SAMPLE_RATE, 1, sampleCount, sampleCount, 0);
+    for (int i = 0; i < sampleCount; ++i){
+      packet.sampleIndex[i] = i;
+      packet.data[i] = (float) Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE);
+    }
+    return packet;
+  }
+
+  /**
+   * Peak amplitude of the last second of packet.
+   */
+  private static double tailAmplitude(SamplePacket packet){
+    double peak = 0;
+    for (int i = Math.max(0, packet.sampleCount - packet.sampleRate); i < packet.sampleCount; ++i){
+      peak = Math.max(peak, Math.abs(packet.data[i]));
+    }
+    return peak;
+  }
+
+  @Test
+  public void notchRemovesMains(){
+    ProcessingChain chain = chain(JavaOnlyMap.of("type", "notch", "frequency", 50.0, "q", 30.0));
+    assertTrue(tailAmplitude(chain.process(sine(50, SAMPLE_RATE * 4))) < 0.01);
+  }
+
+  @Test
+  public void bandpassKeepsPassbandAndCutsAbove(){
+    ProcessingChain pass = chain(JavaOnlyMap.of("type", "bandpass", "low", 1.0, "high", 40.0));
+    assertEquals(1, tailAmplitude(pass.process(sine(10, SAMPLE_RATE * 4))), 0.05);
+    ProcessingChain stop = chain(JavaOnlyMap.of("type", "bandpass", "low", 1.0, "high", 40.0));
+    assertTrue(tailAmplitude(stop.process(sine(100, SAMPLE_RATE * 4))) < 0.1);
+  }
+
+  @Test
+  public void decimateKeepsEveryFactorthSample(){
+    ProcessingChain chain = chain(JavaOnlyMap.of("type", "decimate", "factor", 5.0));
+    SamplePacket output = chain.process(sine(1, 100));
+    assertEquals(20, output.sampleCount);
+    assertEquals(SAMPLE_RATE / 5, output.sampleRate);
+    assertEquals(4, output.sampleIndex[0]);
+    assertEquals(99, output.sampleIndex[19]);
+  }
+
+  @Test
+  public void leavesInputUntouched(){
+    SamplePacket input = sine(10, 50);
+    float before = input.data[10];
+    chain(JavaOnlyMap.of("type", "dcRemoval", "cutoff", 0.5)).process(input);
+    assertEquals(before, input.data[10], 0);
+  }
+
+  @Test
+  public void acceptsFrequenciesBelowNyquist(){
+    chain(JavaOnlyMap.of("type", "notch", "frequency", 124.0)).check(SAMPLE_RATE);
+    chain(JavaOnlyMap.of("type", "decimate", "factor", 5.0),
+      JavaOnlyMap.of("type", "bandpass", "low", 1.0, "high", 20.0)).check(SAMPLE_RATE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNotchAtNyquist(){
+    chain(JavaOnlyMap.of("type", "notch", "frequency", 125.0)).check(SAMPLE_RATE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsBandpassAboveNyquist(){
+    chain(JavaOnlyMap.of("type", "bandpass", "low", 1.0, "high", 130.0)).check(SAMPLE_RATE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsBandpassAboveNyquistAfterDecimation(){
+    chain(JavaOnlyMap.of("type", "decimate", "factor", 5.0),
+      JavaOnlyMap.of("type", "bandpass", "low", 1.0, "high", 30.0)).check(SAMPLE_RATE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsDecimateNotDividingRate(){
+    chain(JavaOnlyMap.of("type", "decimate", "factor", 4.0)).check(SAMPLE_RATE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsChainNotFittingFirstPacket(){
+    chain(JavaOnlyMap.of("type", "notch", "frequency", 200.0)).process(sine(10, 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveQ(){
+    chain(JavaOnlyMap.of("type", "notch", "frequency", 50.0, "q", 0.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveCutoff(){
+    chain(JavaOnlyMap.of("type", "dcRemoval", "cutoff", 0.0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsInvertedBand(){
+    chain(JavaOnlyMap.of("type", "bandpass", "low", 40.0, "high", 1.0));
+  }
+}
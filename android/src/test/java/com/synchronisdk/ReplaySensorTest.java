@@ -0,0 +1,141 @@
+package com.synchronisdk;
+
+import com.sensor.BLEDevice;
+import com.sensor.SensorData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplaySensorTest {
+  private static final int SAMPLE_RATE = 250;
+  private static final int SAMPLE_COUNT = 10;
+  private static final int PACKET_COUNT = 5;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Two EEG channels, packet n is received at n * 40 ms + 1 s with its second sample lost.
+   */
+  private static SamplePacket packet(int n){
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_EEG, SAMPLE_RATE, 2, SAMPLE_COUNT, SAMPLE_COUNT,
+      TimeUnit.SECONDS.toNanos(1) + n * TimeUnit.MILLISECONDS.toNanos(40));
+    for (int i = 0; i < SAMPLE_COUNT; ++i){
+      int sampleIndex = n * SAMPLE_COUNT + i;
+      packet.sampleIndex[i] = packet.sampleIndex[SAMPLE_COUNT + i] = sampleIndex;
+      packet.data[i] = sampleIndex;
+      packet.data[SAMPLE_COUNT + i] = -sampleIndex;
+    }
+    packet.lost[1] = true;
+    return packet;
+  }
+
+  private File record(List<SamplePacket> packets) throws Exception {
+    File file = folder.newFile("test.synr");
+    SampleRecorder recorder = new SampleRecorder("AA:BB", file);
+    recorder.start();
+    for (SamplePacket packet : packets){
+      assertTrue(recorder.offer(packet));
+    }
+    final CountDownLatch closed = new CountDownLatch(1);
+    final IOException[] error = new IOException[1];
+    recorder.stop(new SampleRecorder.Listener() {
+      @Override
+      public void onClosed(SampleRecorder recorder, IOException e) {
+        error[0] = e;
+        closed.countDown();
+      }
+    });
+    assertTrue(closed.await(5, TimeUnit.SECONDS));
+    assertNull(error[0]);
+    return file;
+  }
+
+  private static List<SamplePacket> replay(File file, double speed) throws Exception {
+    final List<SamplePacket> packets = new ArrayList<>();
+    final CountDownLatch done = new CountDownLatch(1);
+    RecordingIndex index = new RecordingIndex(file);
+    ReplaySensor sensor = new ReplaySensor("CC:DD", index, speed, false, new ReplaySensor.Listener() {
+      @Override
+      public void onStateChange(ReplaySensor sensor, BLEDevice.State newState) {
+        if (newState == BLEDevice.State.Disconnected){
+          done.countDown();
+        }
+      }
+
+      @Override
+      public void onPacket(SamplePacket packet) {
+        packets.add(packet);
+      }
+
+      @Override
+      public void onError(ReplaySensor sensor, String errorMsg) {
+        done.countDown();
+      }
+    });
+    try {
+      assertTrue(sensor.connect());
+      assertTrue(sensor.setNotifying(true));
+      assertTrue(done.await(5, TimeUnit.SECONDS));
+    } finally {
+      index.close();
+    }
+    return packets;
+  }
+
+  @Test
+  public void replaysRecordedPacketsWithRecordedStamps() throws Exception {
+    List<SamplePacket> recorded = new ArrayList<>();
+    for (int n = 0; n < PACKET_COUNT; ++n){
+      recorded.add(packet(n));
+    }
+    File file = record(recorded);
+
+    List<SamplePacket> first = replay(file, 0);
+    List<SamplePacket> second = replay(file, 0);
+    assertEquals(PACKET_COUNT, first.size());
+    assertEquals(PACKET_COUNT, second.size());
+    for (int n = 0; n < PACKET_COUNT; ++n){
+      SamplePacket expected = recorded.get(n);
+      SamplePacket actual = first.get(n);
+      assertEquals("CC:DD", actual.deviceMac);
+      assertEquals(expected.dataType, actual.dataType);
+      assertEquals(expected.sampleRate, actual.sampleRate);
+      assertEquals(expected.channelCount, actual.channelCount);
+      assertArrayEquals(expected.data, actual.data, 0);
+      assertArrayEquals(expected.sampleIndex, actual.sampleIndex);
+      assertArrayEquals(expected.lost, actual.lost);
+      assertEquals(expected.receivedNanos, actual.receivedNanos);
+      assertEquals(actual.receivedNanos, second.get(n).receivedNanos);
+    }
+  }
+
+  @Test
+  public void stampsRecordedOffsetsOverSpeed() throws Exception {
+    List<SamplePacket> recorded = new ArrayList<>();
+    for (int n = 0; n < PACKET_COUNT; ++n){
+      recorded.add(packet(n));
+    }
+    List<SamplePacket> played = replay(record(recorded), 4);
+
+    assertEquals(PACKET_COUNT, played.size());
+    long baseNanos = played.get(0).receivedNanos;
+    for (int n = 0; n < PACKET_COUNT; ++n){
+      long recordedOffset = recorded.get(n).receivedNanos - recorded.get(0).receivedNanos;
+      assertEquals(recordedOffset / 4, played.get(n).receivedNanos - baseNanos);
+    }
+  }
+}
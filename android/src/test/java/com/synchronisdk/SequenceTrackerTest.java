@@ -0,0 +1,178 @@
+package com.synchronisdk;
+
+import com.sensor.SensorData;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SequenceTrackerTest {
+  private static final int SAMPLE_RATE = 100;
+
+  private static SamplePacket packet(int firstIndex, int sampleCount){
+    int[] sampleIndex = new int[sampleCount];
+    for (int i = 0; i < sampleCount; ++i){
+      sampleIndex[i] = firstIndex + i;
+    }
+    return packet(sampleIndex);
+  }
+
+  /**
+   * One channel, the data of a sample is its sampleIndex.
+   */
+  private static SamplePacket packet(int... sampleIndex){
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_EEG, SAMPLE_RATE, 1, sampleIndex.length,
+      sampleIndex.length, 0);
+    for (int i = 0; i < sampleIndex.length; ++i){
+      packet.sampleIndex[i] = sampleIndex[i];
+      packet.data[i] = sampleIndex[i];
+    }
+    return packet;
+  }
+
+  @Test
+  public void passesContinuousPacketsThrough(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_LINEAR, 1000);
+    SamplePacket first = packet(0, 5);
+    SamplePacket second = packet(5, 5);
+    assertSame(first, tracker.process(first));
+    assertSame(second, tracker.process(second));
+    assertEquals(0, tracker.drainGaps(9).length);
+    assertEquals(0, tracker.takeDiscontinuities());
+  }
+
+  @Test
+  public void fillsGapLinearly(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_LINEAR, 1000);
+    tracker.process(packet(0, 5));
+    SamplePacket filled = tracker.process(packet(8, 2));
+
+    assertEquals(5, filled.sampleCount);
+    assertArrayEquals(new int[]{5, 6, 7, 8, 9}, filled.sampleIndex);
+    assertArrayEquals(new boolean[]{true, true, true, false, false}, filled.lost);
+    assertArrayEquals(new float[]{5, 6, 7, 8, 9}, filled.data, 1e-6f);
+    assertArrayEquals(new int[]{5, 3}, tracker.drainGaps(9));
+  }
+
+  @Test
+  public void holdsGapWithHoldPolicy(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_HOLD, 1000);
+    tracker.process(packet(0, 5));
+    SamplePacket filled = tracker.process(packet(7, 1));
+
+    assertArrayEquals(new float[]{4, 4, 7}, filled.data, 1e-6f);
+  }
+
+  @Test
+  public void fillsGapWithNaN(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_NAN, 1000);
+    tracker.process(packet(0, 5));
+    SamplePacket filled = tracker.process(packet(6, 1));
+
+    assertTrue(Float.isNaN(filled.data[0]));
+    assertEquals(6, filled.data[1], 1e-6f);
+  }
+
+  @Test
+  public void reportsGapWithoutInsertingForFillNone(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_NONE, 1000);
+    tracker.process(packet(0, 5));
+    SamplePacket second = packet(8, 2);
+
+    assertSame(second, tracker.process(second));
+    assertArrayEquals(new int[]{5, 3}, tracker.drainGaps(9));
+  }
+
+  @Test
+  public void dropsDuplicates(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_LINEAR, 1000);
+    tracker.process(packet(0, 5));
+    SamplePacket overlapping = tracker.process(packet(3, 4));
+
+    assertEquals(2, overlapping.sampleCount);
+    assertArrayEquals(new int[]{5, 6}, overlapping.sampleIndex);
+    assertArrayEquals(new float[]{5, 6}, overlapping.data, 1e-6f);
+    assertFalse(overlapping.lost[0] || overlapping.lost[1]);
+    assertEquals(0, tracker.drainGaps(6).length);
+  }
+
+  @Test
+  public void returnsNullWhenEverySampleIsDuplicate(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_LINEAR, 1000);
+    tracker.process(packet(0, 5));
+
+    assertNull(tracker.process(packet(2, 3)));
+    assertEquals(0, tracker.drainGaps(4).length);
+    assertEquals(0, tracker.takeDiscontinuities());
+    // the sequence goes on where it was
+    assertEquals(5, tracker.process(packet(5, 1)).sampleIndex[0]);
+  }
+
+  @Test
+  public void countsLargeJumpAsDiscontinuity(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_LINEAR, 1000);
+    tracker.process(packet(0, 5));
+    SamplePacket jumped = packet(1000, 5);
+
+    assertSame(jumped, tracker.process(jumped));
+    assertEquals(1, tracker.takeDiscontinuities());
+    assertEquals(0, tracker.takeDiscontinuities());
+    assertEquals(0, tracker.drainGaps(1004).length);
+  }
+
+  @Test
+  public void wrapsAroundLikeInt(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_LINEAR, 1000);
+    tracker.process(packet(new int[]{Integer.MAX_VALUE - 1, Integer.MAX_VALUE}));
+    SamplePacket filled = tracker.process(packet(Integer.MIN_VALUE + 1));
+
+    assertArrayEquals(new int[]{Integer.MIN_VALUE, Integer.MIN_VALUE + 1}, filled.sampleIndex);
+    assertEquals(0, tracker.takeDiscontinuities());
+  }
+
+  @Test
+  public void drainsOnlyGapsUpToLastSampleIndex(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_NONE, 1000);
+    tracker.process(packet(0, 1));
+    tracker.process(packet(3, 1));
+    tracker.process(packet(10, 1));
+
+    assertArrayEquals(new int[]{1, 2}, tracker.drainGaps(3));
+    assertArrayEquals(new int[]{4, 6}, tracker.drainGaps(10));
+    assertEquals(0, tracker.drainGaps(10).length);
+  }
+
+  @Test
+  public void mergesLostSamplesIntoGaps(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_HOLD, 1000);
+    SamplePacket packet = packet(0, 5);
+    packet.lost[2] = true;
+    packet.lost[3] = true;
+    SamplePacket filled = tracker.process(packet);
+
+    assertArrayEquals(new float[]{0, 1, 1, 1, 4}, filled.data, 1e-6f);
+    // the recorder keeps the raw data
+    assertEquals(2, packet.data[2], 1e-6f);
+    assertArrayEquals(new int[]{2, 2}, tracker.drainGaps(4));
+  }
+
+  @Test
+  public void keepsGapsInOrderWhenLostRunPrecedesGap(){
+    SequenceTracker tracker = new SequenceTracker(SequenceTracker.FILL_HOLD, 1000);
+    SamplePacket packet = packet(new int[]{9, 10, 15});
+    packet.lost[1] = true;
+    tracker.process(packet);
+
+    assertArrayEquals(new int[]{10, 5}, tracker.drainGaps(15));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsUnknownPolicy(){
+    new SequenceTracker(4, 1000);
+  }
+}
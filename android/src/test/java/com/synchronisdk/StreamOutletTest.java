@@ -0,0 +1,181 @@
+package com.synchronisdk;
+
+import com.sensor.SensorData;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StreamOutletTest {
+  private static final long TIMEOUT_MS = 10000;
+
+  private StreamOutlet outlet;
+
+  @After
+  public void stopOutlet(){
+    if (outlet != null){
+      outlet.stop();
+    }
+  }
+
+  private StreamOutlet startOutlet(int maxClientBytes) throws IOException {
+    outlet = new StreamOutlet(0, maxClientBytes);
+    outlet.start();
+    return outlet;
+  }
+
+  private static Socket connect(StreamOutlet outlet, int receiveBufferSize) throws Exception {
+    Socket socket = new Socket();
+    if (receiveBufferSize > 0){
+      socket.setReceiveBufferSize(receiveBufferSize);
+    }
+    socket.setSoTimeout((int) TIMEOUT_MS);
+    socket.connect(new InetSocketAddress("127.0.0.1", outlet.port()));
+    return socket;
+  }
+
+  private static void awaitClients(StreamOutlet outlet, int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (outlet.clientCount() != count && System.currentTimeMillis() < deadline){
+      Thread.sleep(5);
+    }
+    assertEquals(count, outlet.clientCount());
+  }
+
+  private static ByteBuffer read(InputStream input, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    new DataInputStream(input).readFully(bytes);
+    return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Two channels of sampleCount samples, channel 1 holds the negated values of channel 0.
+   */
+  private static SamplePacket packet(int firstIndex, int sampleCount){
+    SamplePacket packet = new SamplePacket("AA:BB", SensorData.NTF_EEG, 250, 2, sampleCount, sampleCount, 0);
+    for (int i = 0; i < sampleCount; ++i){
+      packet.sampleIndex[i] = packet.sampleIndex[sampleCount + i] = firstIndex + i;
+      packet.data[i] = firstIndex + i;
+      packet.data[sampleCount + i] = -(firstIndex + i);
+    }
+    return packet;
+  }
+
+  @Test
+  public void sendsHelloThenDataFrames() throws Exception {
+    StreamOutlet outlet = startOutlet(StreamOutlet.DEFAULT_MAX_CLIENT_BYTES);
+    Socket socket = connect(outlet, 0);
+    try {
+      InputStream input = socket.getInputStream();
+      ByteBuffer hello = read(input, 6);
+      assertEquals(StreamOutlet.MAGIC, hello.getInt());
+      assertEquals(StreamOutlet.VERSION, hello.getShort());
+      awaitClients(outlet, 1);
+
+      SamplePacket packet = packet(100, 5);
+      packet.lost[1] = true;
+      packet.lost[8] = true;
+      outlet.publish(StreamOutlet.encodeData(packet, 1500.5, 4));
+
+      int length = read(input, 4).getInt();
+      ByteBuffer frame = read(input, length);
+      assertEquals(StreamOutlet.FRAME_DATA, frame.get());
+      byte[] mac = new byte[frame.getShort()];
+      frame.get(mac);
+      assertEquals("AA:BB", new String(mac, Charset.forName("UTF-8")));
+      assertEquals(SensorData.NTF_EEG, frame.getInt());
+      assertEquals(250, frame.getInt());
+      assertEquals(2, frame.getInt());
+      assertEquals(5, frame.getInt());
+      assertEquals(100, frame.getInt());
+      assertEquals(1500.5, frame.getDouble(), 0);
+      assertEquals(4, frame.getDouble(), 0);
+      for (int i = 0; i < 10; ++i){
+        assertEquals(packet.data[i], frame.getFloat(), 0);
+      }
+      // lost bitset of 10 samples, bits 1 and 8
+      assertEquals(0x02, frame.get());
+      assertEquals(0x01, frame.get());
+      assertFalse(frame.hasRemaining());
+      assertEquals(2, outlet.sentFrames.get());
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyPacket(){
+    StreamOutlet.encodeData(packet(0, 0), Double.NaN, Double.NaN);
+  }
+
+  @Test
+  public void dropsSlowClientOnly() throws Exception {
+    StreamOutlet outlet = startOutlet(256 * 1024);
+    Socket slow = connect(outlet, 4096);
+    Socket fast = connect(outlet, 0);
+    final AtomicLong fastBytes = new AtomicLong();
+    final InputStream fastInput = fast.getInputStream();
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        byte[] buffer = new byte[64 * 1024];
+        try {
+          int read;
+          while ((read = fastInput.read(buffer)) >= 0){
+            fastBytes.addAndGet(read);
+          }
+        } catch (IOException ignored){
+        }
+      }
+    });
+    reader.setDaemon(true);
+    reader.start();
+    try {
+      awaitClients(outlet, 2);
+      byte[] frame = StreamOutlet.encodeData(packet(0, 2000), Double.NaN, Double.NaN);
+      long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+      long published = 0;
+      while (outlet.droppedClients.get() == 0 && System.currentTimeMillis() < deadline){
+        outlet.publish(frame);
+        ++published;
+        Thread.sleep(1);
+      }
+      assertEquals(1, outlet.droppedClients.get());
+      awaitClients(outlet, 1);
+
+      // the slow client reads what was sent before the drop, then the end of the stream
+      InputStream slowInput = slow.getInputStream();
+      byte[] buffer = new byte[64 * 1024];
+      int read;
+      do {
+        read = slowInput.read(buffer);
+      } while (read >= 0);
+
+      // the fast client got everything published
+      long expected = 6 + published * frame.length;
+      deadline = System.currentTimeMillis() + TIMEOUT_MS;
+      while (fastBytes.get() < expected && System.currentTimeMillis() < deadline){
+        Thread.sleep(5);
+      }
+      assertEquals(expected, fastBytes.get());
+      assertTrue(outlet.sentBytes.get() >= expected);
+      assertEquals(2, outlet.acceptedClients.get());
+    } finally {
+      slow.close();
+      fast.close();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+import { NativeEventEmitter, Platform } from 'react-native';
+import type { EmitterSubscription } from 'react-native';
+import { Synchronisdk } from './ModuleResolver';
+
+//events of ios/Synchronisdk.mm supportedEvents, the others are android only
+const IOS_EVENTS = new Set<string>([
+  'GOT_ERROR',
+  'STATE_CHANGED',
+  'GOT_DATA',
+  'GOT_DEVICE_LIST',
+]);
+
+//a native event is listened to only while a JS callback takes it,
+//native skips building the events no one listens to
+export default class NativeListeners {
+  public static get Instance() {
+    return this._instance || (this._instance = new this());
+  }
+
+  //called for every event while it has a listener
+  public setHandler(event: string, handler: (payload: any) => void) {
+    this.handlers.set(event, handler);
+  }
+
+  //adds the native listener on the first subscriber of event
+  public retain(event: string) {
+    const count = (this.counts.get(event) || 0) + 1;
+    this.counts.set(event, count);
+    if (count === 1 && (Platform.OS === 'android' || IOS_EVENTS.has(event))) {
+      this.subscriptions.set(
+        event,
+        this.emitter.addListener(event, (payload: any) => {
+          const handler = this.handlers.get(event);
+          if (handler) {
+            handler(payload);
+          }
+        })
+      );
+    }
+  }
+
+  //removes the native listener after the last subscriber of event
+  public release(event: string) {
+    const count = (this.counts.get(event) || 0) - 1;
+    if (count > 0) {
+      this.counts.set(event, count);
+      return;
+    }
+    this.counts.delete(event);
+    const subscription = this.subscriptions.get(event);
+    if (subscription) {
+      subscription.remove();
+      this.subscriptions.delete(event);
+    }
+  }
+
+  //retains or releases event when a callback is set or cleared
+  public update(event: string, previous: unknown, next: unknown) {
+    if (!previous && next) {
+      this.retain(event);
+    } else if (previous && !next) {
+      this.release(event);
+    }
+  }
+
+  ////////////////////////////////////////////
+  private static _instance: NativeListeners;
+  private emitter: NativeEventEmitter;
+  private handlers: Map<string, (payload: any) => void>;
+  private counts: Map<string, number>;
+  private subscriptions: Map<string, EmitterSubscription>;
+
+  private constructor() {
+    this.emitter = new NativeEventEmitter(Synchronisdk);
+    this.handlers = new Map<string, (payload: any) => void>();
+    this.counts = new Map<string, number>();
+    this.subscriptions = new Map<string, EmitterSubscription>();
+  }
+}
@@ -19,6 +19,36 @@ export enum DataType {
   NTF_BRTH = 0x15,
 }
 
+export enum DataFormat {
+  Columnar = 0,
+  Samples = 1,
+}
+
+export enum OverflowPolicy {
+  DropOldest = 0,
+  DropNewest = 1,
+  Block = 2,
+}
+
+export enum GapPolicy {
+  None = 0, //only report gaps
+  HoldLast = 1,
+  Linear = 2,
+  NotANumber = 3,
+}
+
+export enum DeliveryMode {
+  Full = 0,
+  Coalesced = 1,
+  Decimated = 2,
+  Summary = 3,
+}
+
+export enum ExportFormat {
+  EDF = 0, //16 bit samples
+  BDF = 1, //24 bit samples
+}
+
 export type BLEDevice = {
   Name: string;
   Address: string;
@@ -45,6 +75,20 @@ export type EventResult = {
   newState: DeviceStateEx;
 };
 
+export type PowerResult = {
+  deviceMac: string;
+  power: number;
+};
+
+export type DeviceSnapshot = {
+  deviceMac: string;
+  state: DeviceStateEx;
+  battery: number; //-1 if not read since connected
+  MTUSize: number; //-1 if not read since connected
+  deviceInfo?: DeviceInfo; //only while Ready and once read
+  ageMs: number; //since the last update
+};
+
 export type Sample = {
   // rawData: number;
   data: number;
@@ -56,6 +100,14 @@ export type Sample = {
   isLost: boolean;
 };
 
+export type SampleColumns = {
+  data: Array<Float32Array>;
+  sampleIndex: Array<Int32Array>;
+  isLost: Array<Uint8Array>; //1 if sample is lost
+  impedance?: Array<Float32Array>; //only for NTF_IMPEDANCE
+  saturation?: Array<Float32Array>; //only for NTF_IMPEDANCE
+};
+
 export type SensorData = {
   deviceMac: string;
   dataType: DataType;
@@ -63,9 +115,271 @@ export type SensorData = {
   sampleRate: number;
   channelCount: number;
   // channelMask: number;
-  packageSampleCount: number;
+  packageSampleCount: number; //samples per channel in this event
+  packageCount?: number; //packages merged into this event
+  gaps?: Array<number>; //with a gap policy, [startSampleIndex, length, ...]
+  discontinuities?: number; //sequence restarts within this event
+  t0?: number; //host time of the first sample, ms since epoch (android only)
+  dt?: number; //ms between two samples, measured against the host clock
+  markers?: Array<number>; //[sampleIndex, code, ...] pushed with pushMarker
   // K: number;
   channelSamples: Array<Array<Sample>>; //First array is channel, second array is samples
+  columns?: SampleColumns; //set for DataFormat.Columnar, channelSamples is built lazily
+};
+
+export type RawSensorData = SensorData & {
+  format?: DataFormat;
+  buffer?: string; //base64 columnar payload
+  seq?: number; //set with flow control, acked after onDataCallback
+  deliveryMode?: DeliveryMode;
+};
+
+export type FlowControlOptions = {
+  maxInFlight?: number; //events not acked before stepping down, default 4
+  resumeInFlight?: number; //events not acked to step back up, default 1
+  recoverMs?: number; //time at resumeInFlight to step back up, default 1000
+  coalesceMs?: number; //event interval below full delivery, default 250
+  decimate?: number; //keeps every decimate-th sample, default 4
+  maxMode?: DeliveryMode; //lowest delivery, default Summary
+  ackTimeoutMs?: number; //events unacked this long count as acked, default 5000
+};
+
+export type DataSummary = {
+  deviceMac: string;
+  dataType: DataType;
+  sampleRate: number;
+  channelCount: number;
+  sampleCount: number;
+  firstSampleIndex: number;
+  lostSamples: number;
+  min: Array<number>; //per channel
+  max: Array<number>;
+  mean: Array<number>;
+  gaps?: Array<number>;
+  t0?: number;
+  dt?: number;
+  markers?: Array<number>;
+  seq: number;
+  deliveryMode: DeliveryMode;
+};
+
+export type DeliveryModeResult = {
+  deviceMac: string;
+  deliveryMode: DeliveryMode;
+  inFlight: number;
+};
+
+export type RawSampleChunk = {
+  cursor: number;
+  skipped: number;
+  sampleRate: number;
+  channelCount: number;
+  sampleCount: number;
+  buffer?: string; //same layout as columnar GOT_DATA
+};
+
+export type SampleChunk = {
+  cursor: number; //pass to next read
+  skipped: number; //samples overwritten before they were read
+  sampleRate: number;
+  channelCount: number;
+  sampleCount: number;
+  columns: SampleColumns | undefined;
+};
+
+export type FrameDevice = {
+  deviceMac: string;
+  sampleCount: number;
+  missing?: boolean; //no samples of this device in the window
+  sampleRate?: number;
+  channelCount?: number;
+  firstSampleIndex?: number;
+  offsetMs?: number; //time of first sample relative to frame start
+  gaps?: Array<number>; //lost sample runs as [start, length, ...]
+  buffer?: string;
+  columns?: SampleColumns;
+};
+
+export type AlignedFrame = {
+  groupId: string;
+  dataType: DataType;
+  frameIndex: number;
+  timeStampInMs: number; //frame start, android elapsedRealtime
+  windowMs: number;
+  devices: Array<FrameDevice>;
+};
+
+export type ProcessingStage =
+  | { type: 'notch'; frequency: number; q?: number }
+  | { type: 'bandpass'; low: number; high: number }
+  | { type: 'dcRemoval'; cutoff?: number }
+  | { type: 'movingAverage'; length: number }
+  | { type: 'decimate'; factor: number }; //factor must divide the sample rate
+
+export type FeatureOptions = {
+  intervalMs?: number; //default 250
+  windowMs?: number; //EEG FFT window, default 2000
+  timeConstant?: number; //seconds for ACC to correct GYRO drift, default 1
+  suppressData?: boolean; //stop sending the samples in onDataCallback
+};
+
+export type BandPower = {
+  delta: Array<number>; //per channel, 1-4 Hz, -1 if over half the window is missing
+  theta: Array<number>; //4-8 Hz
+  alpha: Array<number>; //8-13 Hz
+  beta: Array<number>; //13-30 Hz
+  gamma: Array<number>; //30-45 Hz
+};
+
+export type Features = {
+  deviceMac: string;
+  dataType: DataType;
+  sampleRate: number;
+  sampleIndex: number; //last sample of the interval
+  bandPower?: BandPower; //EEG
+  heartRate?: number; //ECG, bpm, -1 if unknown
+  rPeaks?: Array<number>; //ECG, sample indices since the last event
+  rrIntervalsMs?: Array<number>; //ECG
+  breathingRate?: number; //BRTH, per minute, -1 if unknown
+  breaths?: number; //BRTH, since the last event
+  pitch?: number; //ACC/GYRO, degrees
+  roll?: number;
+  yaw?: number; //from GYRO only, drifts
+};
+
+export type DataTypeStats = {
+  dataType: number;
+  packagesReceived: number;
+  samplesReceived: number;
+  samplesPerSecond: number;
+  lostSamples: number; //samples with any channel lost
+  emittedBatches: number;
+  droppedBatches: number; //GOT_DATA not sent, no JS listener
+  latencyP50Ms: number; //from notify to emit, upper bound of a power of 2 bucket
+  latencyP99Ms: number;
+  latencyMaxMs: number;
+};
+
+export type StreamStats = {
+  deviceMac: string;
+  queueDepth: number;
+  queueCapacity: number;
+  queueHighWater: number;
+  droppedPackets: number;
+  streams: Array<DataTypeStats>;
+};
+
+export type RecordingResult = {
+  path: string;
+  packets: number;
+  bytes: number;
+  droppedPackets: number;
+};
+
+export type EdfRange = {
+  dataType: DataType;
+  physicalMin: number;
+  physicalMax: number;
+};
+
+export type EdfExportOptions = {
+  format?: ExportFormat; //default EDF
+  dataTypes?: Array<DataType>; //default EEG, ECG, ACC, GYRO and BRTH
+  recordSeconds?: number; //data record duration, default 1
+  patientCode?: string;
+  patientName?: string;
+  ranges?: Array<EdfRange>; //samples outside are clipped
+};
+
+export type EdfExportResult = {
+  path: string;
+  records: number;
+  bytes: number;
+  lostSamples: number; //written as held samples with a Lost annotation
+  clippedSamples: number;
+  droppedPackets: number;
+};
+
+export type ReplayInfo = {
+  deviceMac: string;
+  recordedMac: string;
+  startTimeMs: number;
+  durationMs: number;
+  packetCount: number;
+  dataTypes: Array<number>;
+};
+
+export type ScanOptions = {
+  incremental?: boolean; //send GOT_DEVICE_DELTA instead of the whole list
+  rssiDelta?: number; //dB the smoothed RSSI moves before an update, default 6
+  rssiSmoothing?: number; //EMA weight of a new RSSI, default 0.3
+  minRssi?: number;
+  namePrefixes?: Array<string>; //case insensitive
+  removeAfterMs?: number; //default 10000
+};
+
+export type ContinuousScanOptions = {
+  windowMs?: number; //scan time per window, default 5000
+  //from window to window, default 30000, at least 6000 as android allows
+  //5 scan starts in 30 s
+  intervalMs?: number;
+};
+
+export type OutletOptions = {
+  maxClientBytes?: number; //unsent bytes before dropping a client, default 1MB
+};
+
+export type OutletResult = {
+  acceptedClients: number;
+  droppedClients: number; //too slow to read
+  sentFrames: number;
+  sentBytes: number;
+};
+
+export type DeviceDelta = {
+  added: Array<BLEDevice>;
+  updated: Array<BLEDevice>;
+  removed: Array<string>;
+};
+
+export type CommandTimeouts = {
+  default?: number;
+  initEEG?: number;
+  initECG?: number;
+  initIMU?: number;
+  initBRTH?: number;
+  initDataTransfer?: number;
+  getBatteryLevel?: number;
+  getDeviceInfo?: number;
+  setParam?: number;
+  startDataNotification?: number;
+  stopDataNotification?: number;
+};
+
+export type BringUpPlan = {
+  packageSampleCount: number;
+  dataTypes?: Array<number>; //default all the device has, NTF_ACC or NTF_GYRO for IMU
+  deviceInfo?: boolean; //default true
+  startDataNotification?: boolean; //default false
+  connectTimeoutMs?: number; //default 10000
+  retryCount?: number; //per command, default 3
+  powerRefreshInterval?: number; //set on the sensors that came up
+};
+
+export type BringUpResult = {
+  deviceMac: string;
+  success: boolean;
+  step: string; //connect, features, configure, transfer, notify or done
+  errMsg?: string;
+  featureMap?: number;
+  notifyFlag?: number;
+  deviceInfo?: DeviceInfo;
+  eegChannelCount?: number;
+  ecgChannelCount?: number;
+  imuChannelCount?: number;
+  brthChannelCount?: number;
+  notifying: boolean;
+  elapsedMs: number;
 };
 
 export interface Spec extends TurboModule {
@@ -90,6 +404,96 @@ export interface Spec extends TurboModule {
   getDeviceState(deviceMac: string): DeviceStateEx;
   // getParam(deviceMac: string, key: string): Promise<string>;
   setParam(deviceMac: string, key: string, value: string): Promise<string>;
+  //android only from here on, ios/Synchronisdk.mm doesn't implement them
+  setDataFormat?(deviceMac: string, format: number): Promise<boolean>;
+  setOverflowPolicy?(
+    deviceMac: string,
+    policy: number,
+    capacity: number
+  ): Promise<boolean>;
+  getStreamStats?(deviceMac: string): StreamStats;
+  getAllDeviceSnapshots?(): Array<DeviceSnapshot>;
+  setStatsInterval?(deviceMac: string, intervalMs: number): Promise<boolean>;
+  setScanOptions?(options: Object): Promise<boolean>;
+  startContinuousScan?(options: Object): Promise<boolean>;
+  stopContinuousScan?(): Promise<void>;
+  startOutlet?(port: number, options: Object | null): Promise<number>;
+  stopOutlet?(): Promise<OutletResult>;
+  setCommandTimeout?(deviceMac: string, timeouts: Object): Promise<boolean>;
+  cancelCommands?(deviceMac: string, method: string): Promise<number>;
+  bringUp?(
+    deviceMacs: Array<string>,
+    plan: Object
+  ): Promise<Array<BringUpResult>>;
+  setPollingInterval?(
+    deviceMac: string,
+    stateIntervalMs: number,
+    batteryIntervalMs: number
+  ): Promise<boolean>;
+  setEventRate?(
+    deviceMac: string,
+    maxEventsPerSecond: number,
+    maxLatencyMs: number
+  ): Promise<boolean>;
+  setEventSubscriptions?(
+    deviceMac: string,
+    eventNames: Array<string>
+  ): Promise<boolean>;
+  setFlowControl?(deviceMac: string, options: Object | null): Promise<boolean>;
+  ackData?(deviceMac: string, seq: number): void;
+  openSampleStream?(
+    deviceMac: string,
+    dataType: number,
+    capacity: number
+  ): boolean;
+  closeSampleStream?(deviceMac: string, dataType: number): boolean;
+  readSamples?(
+    deviceMac: string,
+    dataType: number,
+    cursor: number,
+    maxSamples: number
+  ): RawSampleChunk;
+  startAggregation?(
+    groupId: string,
+    deviceMacs: Array<string>,
+    dataType: number,
+    windowMs: number
+  ): Promise<boolean>;
+  stopAggregation?(groupId: string): Promise<boolean>;
+  setProcessingChain?(
+    deviceMac: string,
+    dataType: number,
+    config: Array<Object>
+  ): Promise<boolean>;
+  setGapPolicy?(
+    deviceMac: string,
+    dataType: number,
+    policy: number,
+    maxGapMs: number
+  ): Promise<boolean>;
+  pushMarker?(deviceMac: string, code: number): boolean;
+  setFeatureExtraction?(
+    deviceMac: string,
+    dataType: number,
+    options: Object | null
+  ): Promise<boolean>;
+  startRecording?(deviceMac: string, path: string): Promise<string>;
+  stopRecording?(deviceMac: string): Promise<RecordingResult>;
+  startEdfExport?(
+    deviceMac: string,
+    path: string,
+    options: Object | null
+  ): Promise<string>;
+  stopEdfExport?(deviceMac: string): Promise<EdfExportResult>;
+  openReplay?(
+    path: string,
+    deviceMac: string,
+    speed: number,
+    loop: boolean
+  ): Promise<ReplayInfo>;
+  seekReplay?(deviceMac: string, positionMs: number): boolean;
+  setReplaySpeed?(deviceMac: string, speed: number): boolean;
+  closeReplay?(deviceMac: string): Promise<boolean>;
 }
 
 export default TurboModuleRegistry.getEnforcing<Spec>('Synchronisdk');
@@ -1,13 +1,30 @@
 import { Alert, PermissionsAndroid, Platform } from 'react-native';
 import type { EmitterSubscription } from 'react-native';
 import { NativeEventEmitter } from 'react-native';
-import SensorProfile from './SensorProfile';
+import SensorProfile, { decodeColumns } from './SensorProfile';
+import NativeListeners from './NativeListeners';
 import { Synchronisdk } from './ModuleResolver';
 import {
+  DataType,
   DeviceStateEx,
+  type AlignedFrame,
   type BLEDevice,
+  type BringUpPlan,
+  type BringUpResult,
+  type ContinuousScanOptions,
+  type DataSummary,
+  type DeliveryModeResult,
+  type DeviceDelta,
+  type DeviceSnapshot,
   type EventResult,
-  type SensorData,
+  type Features,
+  type OutletOptions,
+  type OutletResult,
+  type PowerResult,
+  type RawSensorData,
+  type ReplayInfo,
+  type ScanOptions,
+  type StreamStats,
 } from './NativeSynchronisdk';
 
 export default class SensorController {
@@ -37,6 +54,126 @@ export default class SensorController {
     }
   }
 
+  //set before startScan, filters apply to onDeviceCallback too (android only)
+  public setScanOptions = async (options: ScanOptions): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setScanOptions(options);
+  };
+
+  //devices added, updated or removed, when ScanOptions.incremental is set
+  public set onDeviceDeltaCallback(callback: (delta: DeviceDelta) => void) {
+    if (this.onDeviceDelta !== undefined) this.onDeviceDelta.remove();
+    this.onDeviceDelta = undefined;
+    if (callback) {
+      this.onDeviceDelta = this.nativeEventEmitter.addListener(
+        'GOT_DEVICE_DELTA',
+        (delta: DeviceDelta) => {
+          callback(delta);
+        }
+      );
+    }
+  }
+
+  public set onFrameCallback(callback: (frame: AlignedFrame) => void) {
+    NativeListeners.Instance.update('GOT_FRAME', this.onFrame, callback);
+    this.onFrame = callback;
+  }
+
+  //merge dataType of sensors into one frame per windowMs (android only)
+  public startAggregation = async (
+    groupId: string,
+    sensors: SensorProfile[],
+    dataType: DataType,
+    windowMs: number
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.startAggregation(
+      groupId,
+      sensors.map((sensor) => sensor.BLEDevice.Address),
+      dataType,
+      windowMs
+    );
+  };
+
+  public stopAggregation = async (groupId: string): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.stopAggregation(groupId);
+  };
+
+  //connect and init sensors natively, all in parallel (android only)
+  public bringUp = async (
+    sensors: SensorProfile[],
+    plan: BringUpPlan
+  ): Promise<BringUpResult[] | undefined> => {
+    if (Platform.OS !== 'android') {
+      return undefined;
+    }
+    sensors.forEach((sensor) => sensor.emitBringUpStart());
+    let results: BringUpResult[];
+    try {
+      results = await Synchronisdk.bringUp(
+        sensors.map((sensor) => sensor.BLEDevice.Address),
+        plan
+      );
+    } catch (error) {
+      sensors.forEach((sensor) => sensor.emitBringUpResult(undefined));
+      throw error;
+    }
+    results.forEach((result) => {
+      const sensor = this.getSensor(result.deviceMac);
+      if (sensor) {
+        sensor.emitBringUpResult(result, plan.powerRefreshInterval);
+      }
+    });
+    return results;
+  };
+
+  //play a recording back as a sensor, speed 0 is unpaced (android only)
+  public openReplay = async (
+    path: string,
+    speed: number = 1,
+    loop: boolean = false,
+    deviceMac: string = ''
+  ): Promise<ReplayInfo | undefined> => {
+    if (Platform.OS !== 'android') {
+      return undefined;
+    }
+    const info = await Synchronisdk.openReplay(path, deviceMac, speed, loop);
+    this.requireSensor({
+      Name: 'Replay',
+      Address: info.deviceMac,
+      RSSI: 0,
+    });
+    return info;
+  };
+
+  public seekReplay = (sensor: SensorProfile, positionMs: number): boolean => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.seekReplay(sensor.BLEDevice.Address, positionMs);
+  };
+
+  public setReplaySpeed = (sensor: SensorProfile, speed: number): boolean => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setReplaySpeed(sensor.BLEDevice.Address, speed);
+  };
+
+  public closeReplay = async (sensor: SensorProfile): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.closeReplay(sensor.BLEDevice.Address);
+  };
+
   public startScan = async (periodInMs: number): Promise<boolean> => {
     return new Promise<boolean>(async (resolve) => {
       if (Platform.OS !== 'ios') {
@@ -69,6 +206,65 @@ export default class SensorController {
     return this._stopScan();
   };
 
+  //scan in windows natively, reconnect sensors seen disconnected (android only)
+  public startContinuousScan = async (
+    options: ContinuousScanOptions,
+    reconnectSensors: SensorProfile[] = []
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    try {
+      if (!(await this.requestPermissionAndroid())) {
+        return false;
+      }
+    } catch (error) {
+      console.log('request permisson fail');
+      return false;
+    }
+    this.autoReconnectSensors.forEach((sensor) =>
+      sensor.emitAutoReconnect(false)
+    );
+    this.autoReconnectSensors = reconnectSensors;
+    reconnectSensors.forEach((sensor) => sensor.emitAutoReconnect(true));
+    return Synchronisdk.startContinuousScan({
+      ...options,
+      reconnectDeviceMacs: reconnectSensors.map(
+        (sensor) => sensor.BLEDevice.Address
+      ),
+    });
+  };
+
+  public stopContinuousScan = async (): Promise<void> => {
+    if (Platform.OS !== 'android') {
+      return;
+    }
+    this.autoReconnectSensors.forEach((sensor) =>
+      sensor.emitAutoReconnect(false)
+    );
+    this.autoReconnectSensors = [];
+    return Synchronisdk.stopContinuousScan();
+  };
+
+  //serves the data sent to JS on 127.0.0.1:port to desktop tools, forward it
+  //with adb forward, 0 picks a free port that is returned (android only)
+  public startOutlet = async (
+    port: number,
+    options: OutletOptions | null = null
+  ): Promise<number> => {
+    if (Platform.OS !== 'android') {
+      return -1;
+    }
+    return Synchronisdk.startOutlet(port, options);
+  };
+
+  public stopOutlet = async (): Promise<OutletResult | undefined> => {
+    if (Platform.OS !== 'android') {
+      return undefined;
+    }
+    return Synchronisdk.stopOutlet();
+  };
+
   public requireSensor = (device: BLEDevice): SensorProfile | undefined => {
     if (!device || !device.Address || device.Address === '') {
       return undefined;
@@ -87,36 +283,61 @@ export default class SensorController {
     return this.sensorProfileMap.get(deviceMac);
   };
 
+  public getAllDeviceSnapshots = (): DeviceSnapshot[] => {
+    if (Platform.OS !== 'android') {
+      //snapshot from device state only (android only)
+      return this.sensorProfiles.map((item) => {
+        return {
+          deviceMac: item.BLEDevice.Address,
+          state: item.deviceState,
+          battery: -1,
+          MTUSize: -1,
+          ageMs: -1,
+        };
+      });
+    }
+    return Synchronisdk.getAllDeviceSnapshots();
+  };
+
   public getConnectedSensors = (): SensorProfile[] => {
+    const ready = this._readyDeviceMacs();
     let filterDevices = this.sensorProfiles.filter((item) => {
-      return item.deviceState === DeviceStateEx.Ready;
+      return ready.has(item.BLEDevice.Address);
     });
     return filterDevices;
   };
 
   public getConnectedDevices = (): BLEDevice[] => {
-    let devices = new Array<BLEDevice>(0);
-    this.sensorProfiles.filter((item) => {
-      if (item.deviceState === DeviceStateEx.Ready) {
-        devices.push(item.BLEDevice);
+    return this.getConnectedSensors().map((item) => item.BLEDevice);
+  };
+
+  private _readyDeviceMacs(): Set<string> {
+    const ready = new Set<string>();
+    this.getAllDeviceSnapshots().forEach((snapshot) => {
+      if (snapshot.state === DeviceStateEx.Ready) {
+        ready.add(snapshot.deviceMac);
       }
-      return false;
     });
-    return devices;
-  };
+    return ready;
+  }
 
   ////////////////////////////////////////////
   private static _instance: SensorController;
   private sensorProfiles: Array<SensorProfile>;
   private sensorProfileMap: Map<string, SensorProfile>;
+  private autoReconnectSensors: Array<SensorProfile>;
 
   protected nativeEventEmitter: NativeEventEmitter;
   private onDevice: EmitterSubscription | undefined;
+  private onDeviceDelta: EmitterSubscription | undefined;
+  private onFrame: ((frame: AlignedFrame) => void) | undefined;
 
   private constructor() {
     this.sensorProfileMap = new Map<string, SensorProfile>();
     this.sensorProfiles = new Array<SensorProfile>(0);
+    this.autoReconnectSensors = new Array<SensorProfile>(0);
     this.nativeEventEmitter = new NativeEventEmitter(Synchronisdk);
+    //state and power keep SensorProfile up to date, always listened
     this.nativeEventEmitter.addListener(
       'STATE_CHANGED',
       (state: EventResult) => {
@@ -125,13 +346,63 @@ export default class SensorController {
       }
     );
 
-    this.nativeEventEmitter.addListener('GOT_DATA', (data: SensorData) => {
+    //polled natively on android only, not a supported event on iOS
+    if (Platform.OS === 'android') {
+      this.nativeEventEmitter.addListener(
+        'POWER_CHANGED',
+        (result: PowerResult) => {
+          var device = this.getSensor(result.deviceMac);
+          if (device) {
+            device.emitPowerChanged(result.power);
+          }
+        }
+      );
+    }
+
+    //the others only while a callback takes them
+    const listeners = NativeListeners.Instance;
+    listeners.setHandler('GOT_DATA', (data: RawSensorData) => {
       this.dispatchData('GOT_DATA', data);
     });
 
-    this.nativeEventEmitter.addListener('GOT_ERROR', (error: EventResult) => {
+    listeners.setHandler('GOT_DATA_SUMMARY', (summary: DataSummary) => {
+      var device = this.getSensor(summary.deviceMac);
+      if (device) {
+        device.emitDataSummary(summary);
+      }
+    });
+
+    listeners.setHandler(
+      'DELIVERY_MODE_CHANGED',
+      (result: DeliveryModeResult) => {
+        var device = this.getSensor(result.deviceMac);
+        if (device) {
+          device.emitDeliveryModeChanged(result.deliveryMode);
+        }
+      }
+    );
+
+    listeners.setHandler('GOT_ERROR', (error: EventResult) => {
       this.dispatchEvent('GOT_ERROR', error);
     });
+
+    listeners.setHandler('GOT_FRAME', (frame: AlignedFrame) => {
+      this.dispatchFrame(frame);
+    });
+
+    listeners.setHandler('STREAM_STATS', (stats: StreamStats) => {
+      var device = this.getSensor(stats.deviceMac);
+      if (device) {
+        device.emitStreamStats(stats);
+      }
+    });
+
+    listeners.setHandler('GOT_FEATURES', (features: Features) => {
+      var device = this.getSensor(features.deviceMac);
+      if (device) {
+        device.emitFeatures(features);
+      }
+    });
   }
 
   private AddOnDeviceCallback(
@@ -236,7 +507,25 @@ export default class SensorController {
     }
   }
 
-  private dispatchData(_: String, sensorData: SensorData) {
+  private dispatchFrame(frame: AlignedFrame) {
+    if (!this.onFrame) {
+      return;
+    }
+    frame.devices.forEach((device) => {
+      if (device.buffer) {
+        device.columns = decodeColumns(
+          device.buffer,
+          device.channelCount!,
+          device.sampleCount,
+          frame.dataType === DataType.NTF_IMPEDANCE
+        );
+        device.buffer = undefined;
+      }
+    });
+    this.onFrame(frame);
+  }
+
+  private dispatchData(_: String, sensorData: RawSensorData) {
     var device = this.getSensor(sensorData.deviceMac);
     if (device) {
       device.emitOnData(sensorData);
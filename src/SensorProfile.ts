@@ -1,12 +1,227 @@
+import { Platform } from 'react-native';
 import { Synchronisdk } from './ModuleResolver';
+import NativeListeners from './NativeListeners';
 
 import {
+  DataFormat,
+  DataType,
   DeviceStateEx,
+  OverflowPolicy,
   type BLEDevice,
+  type BringUpResult,
+  type CommandTimeouts,
+  type DataSummary,
+  type DeliveryMode,
   type DeviceInfo,
+  type EdfExportOptions,
+  type EdfExportResult,
+  type FeatureOptions,
+  type FlowControlOptions,
+  type GapPolicy,
+  type Features,
+  type ProcessingStage,
+  type RawSensorData,
+  type RecordingResult,
+  type Sample,
+  type SampleChunk,
+  type SampleColumns,
   type SensorData,
+  type StreamStats,
 } from './NativeSynchronisdk';
 
+/* eslint-disable no-bitwise */
+const BASE64_LOOKUP = (() => {
+  const chars =
+    'ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/';
+  const lookup = new Uint8Array(128);
+  for (let i = 0; i < chars.length; ++i) {
+    lookup[chars.charCodeAt(i)] = i;
+  }
+  return lookup;
+})();
+
+function base64ToBytes(base64: string): Uint8Array {
+  let padding = 0;
+  if (base64.endsWith('==')) {
+    padding = 2;
+  } else if (base64.endsWith('=')) {
+    padding = 1;
+  }
+  const bytes = new Uint8Array((base64.length * 3) / 4 - padding);
+  let p = 0;
+  for (let i = 0; i < base64.length; i += 4) {
+    const a = BASE64_LOOKUP[base64.charCodeAt(i)]!;
+    const b = BASE64_LOOKUP[base64.charCodeAt(i + 1)]!;
+    const c = BASE64_LOOKUP[base64.charCodeAt(i + 2)]!;
+    const d = BASE64_LOOKUP[base64.charCodeAt(i + 3)]!;
+    bytes[p++] = (a << 2) | (b >> 4);
+    if (p < bytes.length) bytes[p++] = ((b & 15) << 4) | (c >> 2);
+    if (p < bytes.length) bytes[p++] = ((c & 3) << 6) | d;
+  }
+  return bytes;
+}
+
+//see SamplePacker.java for buffer layout
+export function decodeColumns(
+  buffer: string,
+  channelCount: number,
+  sampleCount: number,
+  hasImpedance: boolean
+): SampleColumns {
+  const bytes = base64ToBytes(buffer);
+  const total = channelCount * sampleCount;
+  const data = new Float32Array(bytes.buffer, 0, total);
+  const indexes = new Int32Array(bytes.buffer, total * 4, total);
+  let offset = total * 8;
+  let impedance: Float32Array | undefined;
+  let saturation: Float32Array | undefined;
+  if (hasImpedance) {
+    impedance = new Float32Array(bytes.buffer, offset, total);
+    saturation = new Float32Array(bytes.buffer, offset + total * 4, total);
+    offset += total * 8;
+  }
+
+  const columns: SampleColumns = { data: [], sampleIndex: [], isLost: [] };
+  if (hasImpedance) {
+    columns.impedance = [];
+    columns.saturation = [];
+  }
+  for (let channel = 0; channel < channelCount; ++channel) {
+    const begin = channel * sampleCount;
+    const end = begin + sampleCount;
+    columns.data.push(data.subarray(begin, end));
+    columns.sampleIndex.push(indexes.subarray(begin, end));
+    const lost = new Uint8Array(sampleCount);
+    for (let i = 0; i < sampleCount; ++i) {
+      const bit = begin + i;
+      lost[i] = (bytes[offset + (bit >> 3)]! >> (bit & 7)) & 1;
+    }
+    columns.isLost.push(lost);
+    if (impedance && saturation) {
+      columns.impedance!.push(impedance.subarray(begin, end));
+      columns.saturation!.push(saturation.subarray(begin, end));
+    }
+  }
+  return columns;
+}
+/* eslint-enable no-bitwise */
+
+function columnsToSamples(columns: SampleColumns): Array<Array<Sample>> {
+  return columns.data.map((data, channel) => {
+    const indexes = columns.sampleIndex[channel]!;
+    const lost = columns.isLost[channel]!;
+    const impedance = columns.impedance
+      ? columns.impedance[channel]
+      : undefined;
+    const saturation = columns.saturation
+      ? columns.saturation[channel]
+      : undefined;
+    const samples = new Array<Sample>(data.length);
+    for (let i = 0; i < data.length; ++i) {
+      samples[i] = {
+        data: data[i]!,
+        impedance: impedance ? impedance[i]! : 0,
+        saturation: saturation ? saturation[i]! : 0,
+        sampleIndex: indexes[i]!,
+        isLost: lost[i] === 1,
+      };
+    }
+    return samples;
+  });
+}
+
+export function decodeSensorData(raw: RawSensorData): SensorData {
+  if (raw.format !== DataFormat.Columnar || raw.buffer === undefined) {
+    return raw;
+  }
+  const columns = decodeColumns(
+    raw.buffer,
+    raw.channelCount,
+    raw.packageSampleCount,
+    raw.dataType === DataType.NTF_IMPEDANCE
+  );
+  let channelSamples: Array<Array<Sample>> | undefined;
+  const sensorData = {
+    deviceMac: raw.deviceMac,
+    dataType: raw.dataType,
+    sampleRate: raw.sampleRate,
+    channelCount: raw.channelCount,
+    packageSampleCount: raw.packageSampleCount,
+    packageCount: raw.packageCount,
+    gaps: raw.gaps,
+    discontinuities: raw.discontinuities,
+    t0: raw.t0,
+    dt: raw.dt,
+    markers: raw.markers,
+    columns: columns,
+  } as SensorData;
+  Object.defineProperty(sensorData, 'channelSamples', {
+    enumerable: true,
+    get: () => {
+      if (!channelSamples) {
+        channelSamples = columnsToSamples(columns);
+      }
+      return channelSamples;
+    },
+  });
+  return sensorData;
+}
+
+export class SampleSubscription {
+  public get dataType(): DataType {
+    return this._dataType;
+  }
+
+  public get isClosed(): boolean {
+    return this._closed;
+  }
+
+  //returns samples arrived since last read, maxSamples 0 means all
+  public read = (maxSamples: number = 0): SampleChunk => {
+    const raw = Synchronisdk.readSamples(
+      this._deviceMac,
+      this._dataType,
+      this._cursor,
+      maxSamples
+    );
+    this._cursor = raw.cursor;
+    return {
+      cursor: raw.cursor,
+      skipped: raw.skipped,
+      sampleRate: raw.sampleRate,
+      channelCount: raw.channelCount,
+      sampleCount: raw.sampleCount,
+      columns: raw.buffer
+        ? decodeColumns(
+            raw.buffer,
+            raw.channelCount,
+            raw.sampleCount,
+            this._dataType === DataType.NTF_IMPEDANCE
+          )
+        : undefined,
+    };
+  };
+
+  public close = (): void => {
+    if (!this._closed) {
+      this._closed = true;
+      Synchronisdk.closeSampleStream(this._deviceMac, this._dataType);
+    }
+  };
+
+  private _deviceMac: string;
+  private _dataType: DataType;
+  private _cursor: number;
+  private _closed: boolean;
+
+  constructor(deviceMac: string, dataType: DataType) {
+    this._deviceMac = deviceMac;
+    this._dataType = dataType;
+    this._cursor = -1;
+    this._closed = false;
+  }
+}
+
 export default class SensorProfile {
   //-----Callbacks-----//
   public set onStateChanged(
@@ -18,13 +233,16 @@ export default class SensorProfile {
   public set onErrorCallback(
     callback: (sensor: SensorProfile, reason: string) => void
   ) {
+    NativeListeners.Instance.update('GOT_ERROR', this._onError, callback);
     this._onError = callback;
   }
 
   public set onDataCallback(
     callback: (sensor: SensorProfile, signalData: SensorData) => void
   ) {
+    NativeListeners.Instance.update('GOT_DATA', this._onData, callback);
     this._onData = callback;
+    this._updateSubscriptions();
   }
 
   public set onPowerChanged(
@@ -33,6 +251,49 @@ export default class SensorProfile {
     this._onPowerChange = callback;
   }
 
+  public set onStreamStats(
+    callback: (sensor: SensorProfile, stats: StreamStats) => void
+  ) {
+    NativeListeners.Instance.update(
+      'STREAM_STATS',
+      this._onStreamStats,
+      callback
+    );
+    this._onStreamStats = callback;
+    this._updateSubscriptions();
+  }
+
+  public set onFeatures(
+    callback: (sensor: SensorProfile, features: Features) => void
+  ) {
+    NativeListeners.Instance.update('GOT_FEATURES', this._onFeatures, callback);
+    this._onFeatures = callback;
+    this._updateSubscriptions();
+  }
+
+  public set onDataSummary(
+    callback: (sensor: SensorProfile, summary: DataSummary) => void
+  ) {
+    NativeListeners.Instance.update(
+      'GOT_DATA_SUMMARY',
+      this._onDataSummary,
+      callback
+    );
+    this._onDataSummary = callback;
+    this._updateSubscriptions();
+  }
+
+  public set onDeliveryModeChanged(
+    callback: (sensor: SensorProfile, mode: DeliveryMode) => void
+  ) {
+    NativeListeners.Instance.update(
+      'DELIVERY_MODE_CHANGED',
+      this._onDeliveryModeChanged,
+      callback
+    );
+    this._onDeliveryModeChanged = callback;
+  }
+
   ////////////////////////////////////////////
   public get deviceState(): DeviceStateEx {
     let value = Synchronisdk.getDeviceState(this._device.Address);
@@ -64,6 +325,13 @@ export default class SensorProfile {
     return this._device;
   }
 
+  public get streamStats(): StreamStats | undefined {
+    if (Platform.OS !== 'android') {
+      return undefined;
+    }
+    return Synchronisdk.getStreamStats(this._device.Address);
+  }
+
   ////////////////////////////////////////////
   public connect = async (): Promise<boolean> => {
     if (
@@ -88,6 +356,7 @@ export default class SensorProfile {
         .then((value: boolean) => {
           if (value) {
             this._connectTick = new Date().getTime();
+            this._watchConnection();
           } else {
             this._onConnect(false);
           }
@@ -118,6 +387,7 @@ export default class SensorProfile {
         .then((value: boolean) => {
           if (value) {
             this._disConnectTick = new Date().getTime();
+            this._watchConnection();
           } else {
             this._onDisconnect(false);
           }
@@ -278,6 +548,204 @@ export default class SensorProfile {
     });
   };
 
+  //sends STREAM_STATS to onStreamStats every intervalMs, 0 to stop
+  public setStatsInterval = async (intervalMs: number): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setStatsInterval(this._device.Address, intervalMs);
+  };
+
+  //timeouts in ms by command name, {} for the default 50s (android only)
+  public setCommandTimeout = async (
+    timeouts: CommandTimeouts
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setCommandTimeout(this._device.Address, timeouts);
+  };
+
+  //rejects pending commands, all if method is empty (android only)
+  public cancelCommands = async (method: string = ''): Promise<number> => {
+    if (Platform.OS !== 'android') {
+      return 0;
+    }
+    return Synchronisdk.cancelCommands(this._device.Address, method);
+  };
+
+  //native state and power polling, events only on change (android only)
+  public setPollingInterval = async (
+    stateIntervalMs: number,
+    powerIntervalMs: number
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    this._statePollInterval = stateIntervalMs;
+    this._powerPollInterval = powerIntervalMs;
+    return Synchronisdk.setPollingInterval(
+      this._device.Address,
+      stateIntervalMs,
+      powerIntervalMs
+    );
+  };
+
+  public setDataFormat = async (format: DataFormat): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return format === DataFormat.Samples;
+    }
+    return Synchronisdk.setDataFormat(this._device.Address, format);
+  };
+
+  public setOverflowPolicy = async (
+    policy: OverflowPolicy,
+    capacity: number
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setOverflowPolicy(
+      this._device.Address,
+      policy,
+      capacity
+    );
+  };
+
+  public setEventRate = async (
+    maxEventsPerSecond: number,
+    maxLatencyMs: number
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setEventRate(
+      this._device.Address,
+      maxEventsPerSecond,
+      maxLatencyMs
+    );
+  };
+
+  //acks each event after onDataCallback, delivery steps down when JS lags
+  //null turns it off (android only)
+  public setFlowControl = async (
+    options: FlowControlOptions | null
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setFlowControl(this._device.Address, options);
+  };
+
+  //keeps the last capacity samples of dataType natively, pull them with read()
+  public subscribe = (
+    dataType: DataType,
+    capacity: number
+  ): SampleSubscription | undefined => {
+    if (Platform.OS !== 'android') {
+      console.warn('subscribe is only supported on android');
+      return undefined;
+    }
+    if (
+      !Synchronisdk.openSampleStream(this._device.Address, dataType, capacity)
+    ) {
+      return undefined;
+    }
+    return new SampleSubscription(this._device.Address, dataType);
+  };
+
+  //filters dataType natively before it's sent, empty stages removes the chain
+  public setProcessingChain = async (
+    dataType: DataType,
+    stages: Array<ProcessingStage>
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setProcessingChain(
+      this._device.Address,
+      dataType,
+      stages
+    );
+  };
+
+  //fills missing and lost samples of dataType natively and reports them as
+  //gaps, null stops it (android only)
+  public setGapPolicy = async (
+    dataType: DataType,
+    policy: GapPolicy | null,
+    maxGapMs: number = 10000
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setGapPolicy(
+      this._device.Address,
+      dataType,
+      policy === null ? -1 : policy,
+      maxGapMs
+    );
+  };
+
+  //stamps code natively now, it arrives with the sample it maps to in
+  //SensorData.markers and in the recording (android only)
+  public pushMarker = (code: number): boolean => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.pushMarker(this._device.Address, code);
+  };
+
+  //sends features of dataType to onFeatures, null options stops it
+  //ACC and GYRO share one orientation (android only)
+  public setFeatureExtraction = async (
+    dataType: DataType,
+    options: FeatureOptions | null
+  ): Promise<boolean> => {
+    if (Platform.OS !== 'android') {
+      return false;
+    }
+    return Synchronisdk.setFeatureExtraction(
+      this._device.Address,
+      dataType,
+      options
+    );
+  };
+
+  //records raw samples natively, a relative path is under the app files dir
+  public startRecording = async (path: string): Promise<string> => {
+    if (Platform.OS !== 'android') {
+      return '';
+    }
+    return Synchronisdk.startRecording(this._device.Address, path);
+  };
+
+  public stopRecording = async (): Promise<RecordingResult | undefined> => {
+    if (Platform.OS !== 'android') {
+      return undefined;
+    }
+    return Synchronisdk.stopRecording(this._device.Address);
+  };
+
+  //streams raw samples natively into an EDF+ or BDF+ file, a relative path is
+  //under the app files dir (android only)
+  public startEdfExport = async (
+    path: string,
+    options: EdfExportOptions | null = null
+  ): Promise<string> => {
+    if (Platform.OS !== 'android') {
+      return '';
+    }
+    return Synchronisdk.startEdfExport(this._device.Address, path, options);
+  };
+
+  public stopEdfExport = async (): Promise<EdfExportResult | undefined> => {
+    if (Platform.OS !== 'android') {
+      return undefined;
+    }
+    return Synchronisdk.stopEdfExport(this._device.Address);
+  };
+
   public setParam = async (key: string, value: string): Promise<string> => {
     if (this.deviceState !== DeviceStateEx.Ready) {
       console.warn('Please setParam after connected');
@@ -367,6 +835,8 @@ export default class SensorProfile {
   private _BRTHChannelCount: number;
   private _isConnecting: boolean;
   private _isDisconnecting: boolean;
+  private _isBringingUp: boolean;
+  private _isAutoReconnecting: boolean;
   private _hasInited: boolean;
   private _isIniting: boolean;
   private _isFetchingPower: boolean;
@@ -378,6 +848,8 @@ export default class SensorProfile {
   private _device: BLEDevice;
   private _powerTimer: NodeJS.Timeout | undefined;
   private _connectionTimer: NodeJS.Timeout | undefined;
+  private _statePollInterval: number;
+  private _powerPollInterval: number;
   private _connectTick: number;
   private _disConnectTick: number;
   private _onError:
@@ -392,6 +864,18 @@ export default class SensorProfile {
   private _onPowerChange:
     | ((sensor: SensorProfile, power: number) => void)
     | undefined;
+  private _onStreamStats:
+    | ((sensor: SensorProfile, stats: StreamStats) => void)
+    | undefined;
+  private _onFeatures:
+    | ((sensor: SensorProfile, features: Features) => void)
+    | undefined;
+  private _onDataSummary:
+    | ((sensor: SensorProfile, summary: DataSummary) => void)
+    | undefined;
+  private _onDeliveryModeChanged:
+    | ((sensor: SensorProfile, mode: DeliveryMode) => void)
+    | undefined;
 
   constructor(device: BLEDevice) {
     this._batteryPowerQueue = [];
@@ -408,11 +892,15 @@ export default class SensorProfile {
       this._isIniting =
       this._isConnecting =
       this._isDisconnecting =
+      this._isBringingUp =
+      this._isAutoReconnecting =
       this._isFetchingPower =
       this._isFetchingDeviceInfo =
       this._isSwitchDataTransfering =
         false;
     this._powerCache = this._connectTick = this._disConnectTick = -1;
+    this._statePollInterval = 1000;
+    this._powerPollInterval = 0;
 
     this._featureMap = 0;
     this._notifyFlag = 0;
@@ -428,11 +916,14 @@ export default class SensorProfile {
         'Invalid sensor profile: ' + device.Address + ' => ' + device.Name
       );
     }
-    try {
-      if (!this._connectionTimer) {
-        this._connectionTimer = setInterval(this._refreshConnection, 1000);
-      }
-    } catch (error) {}
+    if (Platform.OS === 'android') {
+      Synchronisdk.setPollingInterval(
+        device.Address,
+        this._statePollInterval,
+        0
+      ).catch(() => {});
+    }
+    this._updateSubscriptions();
   }
 
   private _reset(): void {
@@ -456,6 +947,9 @@ export default class SensorProfile {
       clearInterval(this._powerTimer);
       this._powerTimer = undefined;
     }
+    if (Platform.OS === 'android' && this._powerPollInterval > 0) {
+      this.setPollingInterval(this._statePollInterval, 0).catch(() => {});
+    }
   }
 
   emitStateChanged(newstate: DeviceStateEx) {
@@ -463,7 +957,12 @@ export default class SensorProfile {
       this._onDisconnect(true);
     } else if (newstate === DeviceStateEx.Ready) {
       this._onConnect(true);
-    } else if (newstate === DeviceStateEx.Connected && !this._isConnecting) {
+    } else if (
+      newstate === DeviceStateEx.Connected &&
+      !this._isConnecting &&
+      !this._isBringingUp &&
+      !this._isAutoReconnecting
+    ) {
       //for connect timeout
       this._onConnect(false);
       return;
@@ -479,9 +978,91 @@ export default class SensorProfile {
     }
   }
 
-  emitOnData(signalData: SensorData) {
-    if (this._onData) {
-      this._onData(this, signalData);
+  emitOnData(signalData: RawSensorData) {
+    try {
+      if (this._onData) {
+        this._onData(this, decodeSensorData(signalData));
+      }
+    } finally {
+      if (signalData.seq !== undefined) {
+        Synchronisdk.ackData(this._device.Address, signalData.seq);
+      }
+    }
+  }
+
+  emitDataSummary(summary: DataSummary) {
+    try {
+      if (this._onDataSummary) {
+        this._onDataSummary(this, summary);
+      }
+    } finally {
+      Synchronisdk.ackData(this._device.Address, summary.seq);
+    }
+  }
+
+  emitDeliveryModeChanged(mode: DeliveryMode) {
+    if (this._onDeliveryModeChanged) {
+      this._onDeliveryModeChanged(this, mode);
+    }
+  }
+
+  emitStreamStats(stats: StreamStats) {
+    if (this._onStreamStats) {
+      this._onStreamStats(this, stats);
+    }
+  }
+
+  emitFeatures(features: Features) {
+    if (this._onFeatures) {
+      this._onFeatures(this, features);
+    }
+  }
+
+  emitPowerChanged(power: number) {
+    this._powerCache = power;
+    if (this._onPowerChange) {
+      this._onPowerChange(this, power);
+    }
+  }
+
+  emitAutoReconnect(enabled: boolean) {
+    this._isAutoReconnecting = enabled;
+  }
+
+  emitBringUpStart() {
+    this._isBringingUp = true;
+  }
+
+  emitBringUpResult(
+    result: BringUpResult | undefined,
+    powerRefreshInterval?: number
+  ) {
+    this._isBringingUp = false;
+    if (!result || !result.success) {
+      return;
+    }
+    this._featureMap = result.featureMap || 0;
+    this._EEGChannelCount = result.eegChannelCount || 0;
+    this._ECGChannelCount = result.ecgChannelCount || 0;
+    this._IMUChannelCount = result.imuChannelCount || 0;
+    this._BRTHChannelCount = result.brthChannelCount || 0;
+    if (result.deviceInfo) {
+      this._deviceInfo = result.deviceInfo;
+      this._deviceInfo.EegChannelCount = this._EEGChannelCount;
+      this._deviceInfo.EcgChannelCount = this._ECGChannelCount;
+      this._deviceInfo.AccChannelCount = this._IMUChannelCount;
+      this._deviceInfo.GyroChannelCount = this._IMUChannelCount;
+      this._deviceInfo.BrthChannelCount = this._BRTHChannelCount;
+      this._deviceInfo.EmgChannelCount = this._EMGChannelCount;
+    }
+    this._notifyFlag = result.notifyFlag || 0;
+    this._hasInited = this._notifyFlag > 0;
+    this._isDataTransfering = result.notifying;
+    if (powerRefreshInterval && powerRefreshInterval > 0) {
+      this.setPollingInterval(
+        this._statePollInterval,
+        powerRefreshInterval
+      ).catch(() => {});
     }
   }
 
@@ -525,6 +1106,38 @@ export default class SensorProfile {
     }
   };
 
+  //native skips building the device events without a callback (android only)
+  private _updateSubscriptions(): void {
+    if (Platform.OS !== 'android') {
+      return;
+    }
+    const events: Array<string> = [];
+    if (this._onData) {
+      events.push('GOT_DATA');
+    }
+    if (this._onDataSummary) {
+      events.push('GOT_DATA_SUMMARY');
+    }
+    if (this._onFeatures) {
+      events.push('GOT_FEATURES');
+    }
+    if (this._onStreamStats) {
+      events.push('STREAM_STATS');
+    }
+    Synchronisdk.setEventSubscriptions(this._device.Address, events).catch(
+      () => {}
+    );
+  }
+
+  //runs only while a connect or disconnect is pending
+  private _watchConnection(): void {
+    try {
+      if (!this._connectionTimer) {
+        this._connectionTimer = setInterval(this._refreshConnection, 1000);
+      }
+    } catch (error) {}
+  }
+
   private _refreshConnection = (): void => {
     const TIMEOUT = 10000;
 
@@ -551,20 +1164,38 @@ export default class SensorProfile {
         }
       }
     }
+
+    if (
+      this._connectTick === -1 &&
+      this._disConnectTick === -1 &&
+      this._connectionTimer
+    ) {
+      clearInterval(this._connectionTimer);
+      this._connectionTimer = undefined;
+    }
   };
 
   private _doInit = async (
     packageSampleCount: number,
     powerRefreshInterval: number
   ): Promise<boolean> => {
-    try {
-      if (!this._powerTimer) {
-        this._powerTimer = setInterval(
-          this._refreshPower,
+    if (Platform.OS === 'android') {
+      try {
+        await this.setPollingInterval(
+          this._statePollInterval,
           powerRefreshInterval
         );
-      }
-    } catch (error) {}
+      } catch (error) {}
+    } else {
+      try {
+        if (!this._powerTimer) {
+          this._powerTimer = setInterval(
+            this._refreshPower,
+            powerRefreshInterval
+          );
+        }
+      } catch (error) {}
+    }
 
     var index: number;
     const RETRY_COUNT = 10;
@@ -1,13 +1,93 @@
-import { DeviceStateEx, DataType } from './NativeSynchronisdk';
+import {
+  DeviceStateEx,
+  DataType,
+  DataFormat,
+  OverflowPolicy,
+  DeliveryMode,
+  ExportFormat,
+  GapPolicy,
+} from './NativeSynchronisdk';
 
-import type { BLEDevice, Sample, SensorData } from './NativeSynchronisdk';
+import type {
+  AlignedFrame,
+  BandPower,
+  BLEDevice,
+  BringUpPlan,
+  BringUpResult,
+  CommandTimeouts,
+  ContinuousScanOptions,
+  DataSummary,
+  DataTypeStats,
+  DeliveryModeResult,
+  DeviceDelta,
+  DeviceSnapshot,
+  EdfExportOptions,
+  EdfExportResult,
+  EdfRange,
+  FeatureOptions,
+  Features,
+  FlowControlOptions,
+  FrameDevice,
+  OutletOptions,
+  OutletResult,
+  PowerResult,
+  ProcessingStage,
+  RecordingResult,
+  ReplayInfo,
+  Sample,
+  SampleChunk,
+  SampleColumns,
+  ScanOptions,
+  SensorData,
+  StreamStats,
+} from './NativeSynchronisdk';
 
-export { DeviceStateEx, DataType };
+export {
+  DeviceStateEx,
+  DataType,
+  DataFormat,
+  OverflowPolicy,
+  DeliveryMode,
+  ExportFormat,
+  GapPolicy,
+};
 
-export type { BLEDevice, Sample, SensorData };
+export type {
+  AlignedFrame,
+  BandPower,
+  BLEDevice,
+  BringUpPlan,
+  BringUpResult,
+  CommandTimeouts,
+  ContinuousScanOptions,
+  DataSummary,
+  DataTypeStats,
+  DeliveryModeResult,
+  DeviceDelta,
+  DeviceSnapshot,
+  EdfExportOptions,
+  EdfExportResult,
+  EdfRange,
+  FeatureOptions,
+  Features,
+  FlowControlOptions,
+  FrameDevice,
+  OutletOptions,
+  OutletResult,
+  PowerResult,
+  ProcessingStage,
+  RecordingResult,
+  ReplayInfo,
+  Sample,
+  SampleChunk,
+  SampleColumns,
+  ScanOptions,
+  SensorData,
+  StreamStats,
+};
 
-import SensorProfile from './SensorProfile';
-export { SensorProfile };
+import SensorProfile, { SampleSubscription } from './SensorProfile';
+export { SensorProfile, SampleSubscription };
 
 import SensorController from './SensorController';
 export { SensorController };